@@ -0,0 +1,221 @@
+package io.github.eb4j.tool;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import io.github.eb4j.EBException;
+
+/**
+ * ベンチマーク用の書籍の生成。
+ * <p>
+ * テスト用の書籍 (src/test/resources/data/epwing) を元に、本文ファイルを指定サイズに
+ * 拡大した書籍を生成します。本文は元の本文ページの制御記述子の並びを繰り返し、
+ * 文字を乱数で置き換えたデータです。生成した書籍と圧縮した書籍は一時ディレクトリに
+ * 保存し、同じサイズ、圧縮レベルのベンチマークで再利用します。
+ *
+ * @author Hiroshi Miura
+ */
+final class BenchmarkBooks {
+
+    /**
+     * 元にするテスト用の書籍
+     */
+    private static final String FIXTURE = "/data/epwing/";
+
+    /**
+     * ページサイズ
+     */
+    private static final int PAGE_SIZE = 2048;
+
+    /**
+     * 本文に使う文字数
+     */
+    private static final int VOCABULARY_SIZE = 3000;
+
+    /**
+     * 文字の出現頻度の偏り (小さいほど一部の文字に偏る)
+     */
+    private static final double VOCABULARY_SCALE = 400.0;
+
+    /**
+     * JIS X 0208の1区の文字数
+     */
+    private static final int JIS_ROW_SIZE = 94;
+
+    /**
+     * 本文に使う先頭の区 (ひらがな)
+     */
+    private static final int FIRST_CHAR_ROW = 0x24;
+
+    /**
+     * JIS X 0208の先頭の点
+     */
+    private static final int FIRST_CHAR_CELL = 0x21;
+
+    /**
+     * 生成した書籍の保存先
+     */
+    private static final File ROOT = new File(System.getProperty("java.io.tmpdir"), "eb4j-tools-jmh");
+
+    private BenchmarkBooks() {
+    }
+
+    /**
+     * 本文ファイルが指定サイズの書籍を返します。
+     *
+     * @param megabytes 本文ファイルのサイズ (MB)
+     * @return 書籍ディレクトリ
+     * @throws IOException 書籍の生成に失敗した場合
+     */
+    static synchronized File book(final int megabytes) throws IOException {
+        File dir = new File(ROOT, "book-" + megabytes);
+        File honmon = new File(dir, "test/DATA/HONMON");
+        long size = (long) megabytes << 20;
+        if (honmon.length() == size) {
+            return dir;
+        }
+        copy("CATALOGS", dir);
+        copy("chimei/DATA/HONMON", dir);
+        byte[] template = textTemplate(read("test/DATA/HONMON"));
+        Random random = new Random(megabytes);
+        byte[] page = new byte[PAGE_SIZE];
+        honmon.getParentFile().mkdirs();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(honmon.toPath()))) {
+            for (long pos = 0; pos < size; pos += PAGE_SIZE) {
+                fillPage(page, template, random);
+                out.write(page);
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * 本文ファイルが指定サイズの書籍を指定レベルで圧縮した書籍を返します。
+     *
+     * @param megabytes 本文ファイルのサイズ (MB)
+     * @param level 圧縮レベル
+     * @return 圧縮した書籍のディレクトリ
+     * @throws IOException 書籍の生成に失敗した場合
+     * @throws EBException 書籍の圧縮に失敗した場合
+     */
+    static synchronized File zipped(final int megabytes, final int level) throws IOException, EBException {
+        File dir = new File(ROOT, "zipped-" + megabytes + "-" + level);
+        if (new File(dir, "test/DATA/HONMON.ebz").exists()) {
+            return dir;
+        }
+        EBZip zip = zipper(book(megabytes), dir, level);
+        zip.actionZip = true;
+        zip.exec();
+        return dir;
+    }
+
+    /**
+     * 出力先のファイルを上書きするEBZipを返します。
+     *
+     * @param bookDir 書籍ディレクトリ
+     * @param outDir 出力先ディレクトリ
+     * @param level 圧縮レベル
+     * @return EBZip
+     */
+    static EBZip zipper(final File bookDir, final File outDir, final int level) {
+        EBZip zip = new EBZip();
+        zip.bookDir = bookDir;
+        zip.outDir = outDir.getPath();
+        zip.level = level;
+        zip.keep = true;
+        zip.quiet = true;
+        zip.overwrite = true;
+        zip.skips = Collections.emptyList();
+        return zip;
+    }
+
+    /**
+     * 指定されたディレクトリを削除します。
+     *
+     * @param dir ディレクトリ
+     */
+    static void delete(final File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * 元の本文の先頭の本文ページから、ページ末尾の0を除いた部分を返します。
+     */
+    private static byte[] textTemplate(final byte[] fixture) {
+        int end = 2 * PAGE_SIZE;
+        while (end > PAGE_SIZE && fixture[end - 1] == 0) {
+            end--;
+        }
+        return Arrays.copyOfRange(fixture, PAGE_SIZE, end);
+    }
+
+    /**
+     * 雛形の制御記述子はそのままに、文字を乱数で選んだ文字に置き換えてページを埋めます。
+     * <p>
+     * 文字は出現頻度に偏りを持たせた{@value #VOCABULARY_SIZE}文字から選ぶため、
+     * 実際の辞書の本文に近い圧縮率になります。
+     */
+    private static void fillPage(final byte[] page, final byte[] template, final Random random) {
+        int off = 0;
+        int i = 0;
+        while (off < PAGE_SIZE) {
+            int b = template[i] & 0xff;
+            if (b == 0x1f && i + 1 < template.length && off + 1 < PAGE_SIZE) {
+                // 制御記述子
+                page[off++] = template[i++];
+                page[off++] = template[i++];
+            } else if (isJisByte(b) && i + 1 < template.length && isJisByte(template[i + 1] & 0xff)
+                    && off + 1 < PAGE_SIZE) {
+                int c = (int) Math.min(VOCABULARY_SIZE - 1, -Math.log(1.0 - random.nextDouble()) * VOCABULARY_SCALE);
+                page[off++] = (byte) (FIRST_CHAR_ROW + c / JIS_ROW_SIZE);
+                page[off++] = (byte) (FIRST_CHAR_CELL + c % JIS_ROW_SIZE);
+                i += 2;
+            } else {
+                page[off++] = template[i++];
+            }
+            if (i >= template.length) {
+                i = 0;
+            }
+        }
+    }
+
+    private static boolean isJisByte(final int b) {
+        return b >= FIRST_CHAR_CELL && b < FIRST_CHAR_CELL + JIS_ROW_SIZE;
+    }
+
+    private static byte[] read(final String name) throws IOException {
+        try (InputStream in = BenchmarkBooks.class.getResourceAsStream(FIXTURE + name)) {
+            if (in == null) {
+                throw new IOException("fixture not found: " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    private static void copy(final String name, final File dir) throws IOException {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        try (InputStream in = BenchmarkBooks.class.getResourceAsStream(FIXTURE + name)) {
+            if (in == null) {
+                throw new IOException("fixture not found: " + name);
+            }
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
+
+// end of BenchmarkBooks.java
@@ -0,0 +1,134 @@
+package io.github.eb4j.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import io.github.eb4j.EBException;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 書籍の圧縮/伸張のベンチマーク。
+ * <p>
+ * 生成した書籍全体を{@code eb zip}と同じ経路で圧縮、伸張し、本文ファイルの
+ * 処理速度を{@code megabytes}カウンタ (MB/s) として報告します。
+ * 1操作あたりのアロケーションは{@code -prof gc}の{@code gc.alloc.rate.norm}で確認できます。
+ *
+ * @author Hiroshi Miura
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings({"checkstyle:designforextension", "checkstyle:visibilitymodifier"})
+public class EBZipBenchmark {
+
+    /**
+     * 圧縮レベル
+     */
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int level;
+
+    /**
+     * 本文ファイルのサイズ (MB)
+     */
+    @Param({"1", "64", "2048"})
+    public int megabytes;
+
+    private File book;
+    private File zipped;
+    private File out;
+
+    /**
+     * 書籍を準備します。
+     *
+     * @throws IOException 書籍の生成に失敗した場合
+     * @throws EBException 書籍の圧縮に失敗した場合
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, EBException {
+        book = BenchmarkBooks.book(megabytes);
+        zipped = BenchmarkBooks.zipped(megabytes, level);
+        out = Files.createTempDirectory("eb4j-tools-jmh").toFile();
+    }
+
+    /**
+     * 出力先を削除します。
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkBooks.delete(out);
+    }
+
+    /**
+     * 書籍を圧縮します。
+     *
+     * @param counter 処理量のカウンタ
+     * @throws EBException 書籍の初期化に失敗した場合
+     */
+    @Benchmark
+    public void zip(final Counter counter) throws EBException {
+        EBZip zip = BenchmarkBooks.zipper(book, out, level);
+        zip.actionZip = true;
+        zip.exec();
+        counter.add(megabytes);
+    }
+
+    /**
+     * 圧縮した書籍を伸張します。
+     *
+     * @param counter 処理量のカウンタ
+     * @throws EBException 書籍の初期化に失敗した場合
+     */
+    @Benchmark
+    public void unzip(final Counter counter) throws EBException {
+        EBZip zip = BenchmarkBooks.zipper(zipped, out, level);
+        zip.actionUnzip = true;
+        zip.exec();
+        counter.add(megabytes);
+    }
+
+    /**
+     * 処理した本文ファイルのサイズのカウンタ。
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counter {
+
+        private long total;
+
+        /**
+         * イテレーションごとにカウンタを初期化します。
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            total = 0;
+        }
+
+        void add(final long n) {
+            total += n;
+        }
+
+        /**
+         * 処理したサイズを返します。
+         *
+         * @return 処理したサイズ (MB)
+         */
+        public long megabytes() {
+            return total;
+        }
+    }
+}
+
+// end of EBZipBenchmark.java
@@ -0,0 +1,164 @@
+package io.github.eb4j.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import io.github.eb4j.tool.ebzip.CompressionSetting;
+import io.github.eb4j.tool.ebzip.SliceCompressor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * スライス圧縮器のベンチマーク。
+ * <p>
+ * メモリ上のデータを1スライスずつ圧縮し、{@link SliceCompressor}と、全て0のスライスと
+ * 同一のスライスの判定を持たないDeflaterだけの圧縮 (従来の処理) を比較します。
+ * データは次の2種類です。
+ * <ul>
+ * <li>padded: テスト用の書籍の本文 (10KiB) に0を14KiB、空白を8KiBつなげた32KiBの繰り返し</li>
+ * <li>text: テスト用の書籍の本文の繰り返し</li>
+ * </ul>
+ * 1操作でデータ全体を圧縮します。
+ *
+ * @author Hiroshi Miura
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@SuppressWarnings({"checkstyle:designforextension", "checkstyle:visibilitymodifier"})
+public class SliceCompressorBenchmark {
+
+    /**
+     * 本文の元にするテスト用の書籍のファイル
+     */
+    private static final String FIXTURE = "/data/epwing/chimei/DATA/HONMON";
+
+    /**
+     * paddedデータの0の長さ
+     */
+    private static final int ZERO_LENGTH = 14 * 1024;
+
+    /**
+     * paddedデータの空白の長さ
+     */
+    private static final int SPACE_LENGTH = 8 * 1024;
+
+    /**
+     * 圧縮レベル
+     */
+    @Param({"0", "3"})
+    public int level;
+
+    /**
+     * データの種類
+     */
+    @Param({"padded", "text"})
+    public String data;
+
+    /**
+     * データのサイズ (MB)
+     */
+    @Param({"16"})
+    public int megabytes;
+
+    private byte[] input;
+    private CompressionSetting setting;
+    private SliceCompressor compressor;
+    private Deflater deflater;
+    private ByteBuffer out;
+
+    /**
+     * データと圧縮器を準備します。
+     *
+     * @throws IOException テスト用の書籍の読み込みに失敗した場合
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] text;
+        try (InputStream in = SliceCompressorBenchmark.class.getResourceAsStream(FIXTURE)) {
+            if (in == null) {
+                throw new IOException("fixture not found: " + FIXTURE);
+            }
+            text = in.readAllBytes();
+        }
+        byte[] unit = text;
+        if (data.equals("padded")) {
+            unit = Arrays.copyOf(text, text.length + ZERO_LENGTH + SPACE_LENGTH);
+            Arrays.fill(unit, text.length + ZERO_LENGTH, unit.length, (byte) 0x20);
+        }
+        input = new byte[megabytes << 20];
+        for (int pos = 0; pos < input.length; pos += unit.length) {
+            System.arraycopy(unit, 0, input, pos, Math.min(unit.length, input.length - pos));
+        }
+        setting = CompressionSetting.of(level);
+        compressor = setting.newCompressor();
+        deflater = new Deflater(setting.getDeflateLevel());
+        deflater.setStrategy(setting.getStrategy());
+        out = ByteBuffer.allocate(setting.getSliceSize());
+    }
+
+    /**
+     * 圧縮器の資源を解放します。
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compressor.end();
+        deflater.end();
+    }
+
+    /**
+     * {@link SliceCompressor}で全スライスを圧縮します。
+     *
+     * @return 圧縮データの合計長
+     */
+    @Benchmark
+    public long compress() {
+        int sliceSize = setting.getSliceSize();
+        long total = 0;
+        for (int pos = 0; pos < input.length; pos += sliceSize) {
+            total += compressor.compress(ByteBuffer.wrap(input, pos, sliceSize), out);
+        }
+        return total;
+    }
+
+    /**
+     * Deflaterだけで全スライスを圧縮します。
+     *
+     * @return 圧縮データの合計長
+     */
+    @Benchmark
+    public long deflate() {
+        int sliceSize = setting.getSliceSize();
+        long total = 0;
+        for (int pos = 0; pos < input.length; pos += sliceSize) {
+            deflater.reset();
+            deflater.setInput(input, pos, sliceSize);
+            deflater.finish();
+            out.clear();
+            while (!deflater.finished() && out.position() < sliceSize) {
+                deflater.deflate(out, Deflater.SYNC_FLUSH);
+            }
+            if (!deflater.finished() || out.position() >= sliceSize) {
+                total += sliceSize;
+            } else {
+                total += out.position();
+            }
+        }
+        return total;
+    }
+}
+
+// end of SliceCompressorBenchmark.java
@@ -0,0 +1,216 @@
+package io.github.eb4j.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.github.eb4j.tool.ebzip.BufferPool;
+import io.github.eb4j.tool.ebzip.CompressionSetting;
+import io.github.eb4j.tool.ebzip.SliceCompressor;
+import io.github.eb4j.tool.ebzip.SliceInflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 圧縮/伸張のスライスごとの処理のアロケーションのベンチマーク。
+ * <p>
+ * ファイルの入出力を除いた{@code eb zip}の圧縮と伸張のループを、作業バッファと
+ * 圧縮器/伸張器を再利用する現在の処理と、スライスごとに配列、ラッパー、Deflater/Inflaterを
+ * 生成する処理 (従来の処理) で比較します。
+ * 1操作でデータ全体を処理します。アロケーションの差は{@code -prof gc}の
+ * {@code gc.alloc.rate.norm} (1操作あたりのバイト数) で確認します。
+ * <pre>
+ * ./gradlew jmh -PjmhIncludes=SliceLoopBenchmark
+ * </pre>
+ *
+ * @author Hiroshi Miura
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@SuppressWarnings({"checkstyle:designforextension", "checkstyle:visibilitymodifier"})
+public class SliceLoopBenchmark {
+
+    /**
+     * 本文の元にするテスト用の書籍のファイル
+     */
+    private static final String FIXTURE = "/data/epwing/chimei/DATA/HONMON";
+
+    /**
+     * 圧縮レベル
+     */
+    @Param({"0", "3"})
+    public int level;
+
+    /**
+     * データのサイズ (MB)
+     */
+    @Param({"16"})
+    public int megabytes;
+
+    private byte[] input;
+    private byte[][] compressed;
+    private int[] compressedLength;
+    private CompressionSetting setting;
+    private int sliceSize;
+    private BufferPool inputPool;
+    private BufferPool outputPool;
+    private SliceCompressor compressor;
+    private SliceInflater inflater;
+
+    /**
+     * データを準備し、伸張用に圧縮しておきます。
+     *
+     * @throws IOException テスト用の書籍の読み込みに失敗した場合
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] text;
+        try (InputStream in = SliceLoopBenchmark.class.getResourceAsStream(FIXTURE)) {
+            if (in == null) {
+                throw new IOException("fixture not found: " + FIXTURE);
+            }
+            text = in.readAllBytes();
+        }
+        input = new byte[megabytes << 20];
+        for (int pos = 0; pos < input.length; pos += text.length) {
+            System.arraycopy(text, 0, input, pos, Math.min(text.length, input.length - pos));
+        }
+        setting = CompressionSetting.of(level);
+        sliceSize = setting.getSliceSize();
+        inputPool = new BufferPool(1, sliceSize, false);
+        outputPool = new BufferPool(1, sliceSize, false);
+        compressor = setting.newCompressor();
+        inflater = new SliceInflater(sliceSize);
+        int slices = input.length / sliceSize;
+        compressed = new byte[slices][];
+        compressedLength = new int[slices];
+        ByteBuffer out = ByteBuffer.allocate(sliceSize);
+        for (int i = 0; i < slices; i++) {
+            compressedLength[i] = compressor.compress(ByteBuffer.wrap(input, i * sliceSize, sliceSize), out);
+            compressed[i] = new byte[sliceSize];
+            out.get(compressed[i], 0, compressedLength[i]);
+        }
+    }
+
+    /**
+     * 圧縮器と伸張器の資源を解放します。
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compressor.end();
+        inflater.end();
+    }
+
+    /**
+     * プールのバッファと1つの圧縮器で全スライスを圧縮します。
+     *
+     * @return 圧縮データの合計長
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Benchmark
+    public long zipPooled() throws InterruptedException {
+        long total = 0;
+        for (int pos = 0; pos < input.length; pos += sliceSize) {
+            ByteBuffer in = inputPool.take();
+            in.put(input, pos, sliceSize).flip();
+            ByteBuffer out = outputPool.take();
+            total += compressor.compress(in, out);
+            outputPool.release(out);
+            inputPool.release(in);
+        }
+        return total;
+    }
+
+    /**
+     * スライスごとに配列とDeflaterを生成して全スライスを圧縮します。
+     *
+     * @return 圧縮データの合計長
+     */
+    @Benchmark
+    public long zipAllocating() {
+        long total = 0;
+        for (int pos = 0; pos < input.length; pos += sliceSize) {
+            byte[] in = new byte[sliceSize];
+            System.arraycopy(input, pos, in, 0, sliceSize);
+            byte[] out = new byte[sliceSize];
+            Deflater deflater = new Deflater(setting.getDeflateLevel());
+            deflater.setStrategy(setting.getStrategy());
+            deflater.setInput(in);
+            deflater.finish();
+            int len = 0;
+            while (!deflater.finished() && len < sliceSize) {
+                len += deflater.deflate(out, len, sliceSize - len, Deflater.SYNC_FLUSH);
+            }
+            if (!deflater.finished() || len >= sliceSize) {
+                len = sliceSize;
+            }
+            deflater.end();
+            total += len;
+        }
+        return total;
+    }
+
+    /**
+     * 1つの伸張器で全スライスを伸張します。
+     *
+     * @return 伸張データのAdler-32値の合計
+     * @throws IOException 伸張に失敗した場合
+     */
+    @Benchmark
+    public long unzipReused() throws IOException {
+        long total = 0;
+        for (int i = 0; i < compressed.length; i++) {
+            inflater.inflate(compressed[i], compressedLength[i]);
+            total += inflater.checksum(sliceSize);
+        }
+        return total;
+    }
+
+    /**
+     * スライスごとに配列とInflaterを生成して全スライスを伸張します。
+     *
+     * @return 伸張データの先頭バイトの合計
+     * @throws Exception 伸張に失敗した場合
+     */
+    @Benchmark
+    public long unzipAllocating() throws Exception {
+        long total = 0;
+        for (int i = 0; i < compressed.length; i++) {
+            byte[] in = new byte[compressedLength[i]];
+            System.arraycopy(compressed[i], 0, in, 0, in.length);
+            byte[] out = new byte[sliceSize];
+            if (in.length == sliceSize) {
+                System.arraycopy(in, 0, out, 0, sliceSize);
+            } else {
+                Inflater inf = new Inflater();
+                inf.setInput(in);
+                int len = 0;
+                while (len < sliceSize) {
+                    int n = inf.inflate(out, len, sliceSize - len);
+                    if (n == 0) {
+                        break;
+                    }
+                    len += n;
+                }
+                inf.end();
+            }
+            total += out[0];
+        }
+        return total;
+    }
+}
+
+// end of SliceLoopBenchmark.java
@@ -0,0 +1,113 @@
+package io.github.eb4j.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.io.EBFile;
+import io.github.eb4j.io.EBFormat;
+import io.github.eb4j.tool.ebzip.CachedBookReader;
+import io.github.eb4j.tool.ebzip.SliceCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 圧縮した本文ファイルのランダムアクセスのベンチマーク。
+ * <p>
+ * {@link io.github.eb4j.io.EBZipInputStream}で乱数で選んだページを1ページずつ読み込みます。
+ * 検索や本文表示と同じく、ページごとにスライス全体の伸張が必要になります。
+ * 比較のため、{@link CachedBookReader}で伸張済みスライスのキャッシュを経由した読み込みも計測します。
+ *
+ * @author Hiroshi Miura
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@SuppressWarnings({"checkstyle:designforextension", "checkstyle:visibilitymodifier"})
+public class SliceReadBenchmark {
+
+    /**
+     * 圧縮レベル
+     */
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int level;
+
+    /**
+     * 本文ファイルのサイズ (MB)
+     */
+    @Param({"1", "64", "2048"})
+    public int megabytes;
+
+    private BookInputStream in;
+    private CachedBookReader reader;
+    private Random random;
+    private byte[] page;
+    private int pages;
+
+    /**
+     * 圧縮した本文ファイルを開きます。
+     *
+     * @throws IOException 書籍の生成に失敗した場合
+     * @throws EBException 書籍の圧縮またはファイルの読み込みに失敗した場合
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, EBException {
+        File zipped = BenchmarkBooks.zipped(megabytes, level);
+        EBFile file = new EBFile(new File(zipped, "test/DATA"), "honmon", EBFormat.FORMAT_PLAIN);
+        in = file.getInputStream();
+        reader = CachedBookReader.open(file, new SliceCache(SliceCache.DEFAULT_CAPACITY, false));
+        page = new byte[BookInputStream.PAGE_SIZE];
+        pages = (int) (in.getFileSize() / BookInputStream.PAGE_SIZE);
+        random = new Random(0);
+    }
+
+    /**
+     * 本文ファイルを閉じます。
+     *
+     * @throws IOException ファイルを閉じるのに失敗した場合
+     * @throws EBException ファイルを閉じるのに失敗した場合
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, EBException {
+        in.close();
+        reader.close();
+    }
+
+    /**
+     * 乱数で選んだページを読み込みます。
+     *
+     * @return 読み込んだバイト数
+     * @throws EBException 読み込みに失敗した場合
+     */
+    @Benchmark
+    public int readPage() throws EBException {
+        in.seek((long) random.nextInt(pages) * BookInputStream.PAGE_SIZE);
+        return in.read(page, 0, page.length);
+    }
+
+    /**
+     * 乱数で選んだページをスライスキャッシュを経由して読み込みます。
+     *
+     * @return 読み込んだバイト数
+     * @throws EBException 読み込みに失敗した場合
+     */
+    @Benchmark
+    public int readPageCached() throws EBException {
+        reader.readFully((long) random.nextInt(pages) * BookInputStream.PAGE_SIZE, page, 0, page.length);
+        return page.length;
+    }
+}
+
+// end of SliceReadBenchmark.java
@@ -6,10 +6,15 @@ import io.github.eb4j.Book;
 import io.github.eb4j.SubBook;
 import io.github.eb4j.EBException;
 import io.github.eb4j.io.BookInputStream;
-import io.github.eb4j.util.ByteUtil;
-import io.github.eb4j.util.HexUtil;
+import io.github.eb4j.tool.dump.HexDumper;
+import io.github.eb4j.tool.ebzip.CachedBookReader;
+import io.github.eb4j.tool.ebzip.SliceCache;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.concurrent.Callable;
 
 /**
@@ -44,11 +49,28 @@ public class EBDump implements Callable<Integer> {
 
     @CommandLine.Option(names = {"-d", "--dump"}, description = "dump size (HEX)",
             converter = HexNumberConverter.class)
-    int size = 0;
+    long size = 0L;
+
+    @CommandLine.Option(names = {"--cache-size"}, description = "size of decompressed slice cache in MB",
+            defaultValue = "32")
+    int cacheSize = 32;
+
+    @CommandLine.Option(names = {"--off-heap-cache"}, description = "keep cached slices outside the Java heap")
+    boolean offHeapCache;
+
+    @CommandLine.Option(names = {"-T", "--threads"}, description = "number of threads formatting the dump",
+            defaultValue = "1")
+    int threads = 1;
+
+    @CommandLine.Option(names = {"--verbose"}, description = "verbose output for debug")
+    boolean verbose;
 
     @CommandLine.Parameters(description = "book path", defaultValue = DEFAULT_BOOK_DIR)
     File path;
 
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
     /**
      * Computes a result, or throws an exception if unable to do so.
      *
@@ -57,10 +79,18 @@ public class EBDump implements Callable<Integer> {
      */
     @Override
     public Integer call() throws Exception {
+        if (cacheSize <= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "--cache-size must be a positive number of MB: " + cacheSize);
+        }
         if (pos < 0) {
             pos = BookInputStream.getPosition(page, off);
         }
+        SliceCache.configureShared((long) cacheSize << 20, offHeapCache);
         dump();
+        if (verbose) {
+            System.err.println(SliceCache.getShared());
+        }
         return 0;
     }
 
@@ -91,11 +121,15 @@ public class EBDump implements Callable<Integer> {
 
     /**
      * 書籍のデータを出力します。
+     * <p>
+     * 指定範囲を一定サイズずつ読み込んで整形し、標準出力にまとめて書き込みます。
+     * 複数のスレッドを指定した場合は並行に整形し、範囲の順に書き込みます。
      *
      * @throws EBException ファイル読み込み中にエラーが発生した場合
+     * @throws IOException 出力中にエラーが発生した場合
      */
-    protected void dump() throws EBException {
-        int dumpsize;
+    protected void dump() throws EBException, IOException {
+        long dumpsize;
         Book book = new Book(path);
 
         SubBook sub = book.getSubBook(subindex);
@@ -108,116 +142,40 @@ public class EBDump implements Callable<Integer> {
             dumpsize = size;
         }
 
-        BookInputStream bis = sub.getTextFile().getInputStream();
-        byte[] b = new byte[dumpsize];
-        try {
-            bis.seek(pos);
-            bis.readFully(b, 0, b.length);
-        } finally {
-            bis.close();
-        }
-
-        long page2 = BookInputStream.getPage(pos);
-        long pos2 = pos + dumpsize;
-        long start = pos - (pos & 0x0f);
-        long end = pos2;
-        if ((end % 16) > 0) {
-            end = end + (16 - (end % 16));
-        }
-
-        StringBuilder buf = new StringBuilder();
-        int idx = 0;
-        long i = 0L;
-        int j, k;
-        int offset, high, low;
-        for (i = start; i < end; i += 16) {
-            if (pos + idx >= page2 * BookInputStream.PAGE_SIZE) {
-                page2++;
-            }
-            buf.append(_toHexString(page2)).append(':');
-            offset = (int) (i % BookInputStream.PAGE_SIZE);
-            buf.append(_toHexString(offset)).append(' ');
-            k = 0;
-            for (j = 0; j < 16; j++) {
-                if (j == 8) {
-                    buf.append(' ');
-                }
-                buf.append(' ');
-                if (i + j >= pos && i + j < pos2) {
-                    buf.append(_toHexString(b[idx + k]));
-                    k++;
-                } else {
-                    buf.append("  ");
-                }
-            }
-            buf.append("  ");
-            for (j = 0; j < 16; j += 2) {
-                if (i + j >= pos && i + j < pos2) {
-                    high = b[idx++] & 0xff;
-                    if (i + j + 1 >= pos && i + j + 1 < pos2) {
-                        low = b[idx++] & 0xff;
-                        if (high > 0x20 && high < 0x7f
-                                && low > 0x20 && low < 0x7f) {
-                            // JIS X 0208
-                            buf.append(ByteUtil.jisx0208ToString(b, idx - 2, 2));
-                        } else if (high > 0x20 && high < 0x7f
-                                && low > 0xa0 && low < 0xff) {
-                            // GB 2312
-                            buf.append(ByteUtil.gb2312ToString(b, idx - 2, 2));
-                        } else if (high > 0xa0 && high < 0xff
-                                && low > 0x20 && low < 0x7f) {
-                            // 外字
-                            buf.append("??");
-                        } else {
-                            buf.append("..");
-                        }
-                    } else {
-                        buf.append(". ");
-                    }
-                } else {
-                    buf.append(' ');
-                    if (i + j + 1 >= pos && i + j + 1 < pos2) {
-                        idx++;
-                        buf.append('.');
-                    } else {
-                        buf.append(' ');
-                    }
-                }
-            }
-            System.out.println(buf.toString());
-            System.out.flush();
-            buf.delete(0, buf.length());
+        try (CachedBookReader reader = CachedBookReader.open(sub.getTextFile())) {
+            HexDumper dumper = new HexDumper(reader, pos, dumpsize);
+            dumper.checkRange(sub.getTextFile().getPath());
+            dumper.dump(new PrintStreamWriter(System.out), threads);
         }
     }
 
     /**
-     * 指定されたbyte値を16進数表現に変換ます。
-     *
-     * @param hex byte値
-     * @return 変換後の文字列
+     * 文字列をまとめて{@link PrintStream}に書き込む{@link Writer}。
+     * <p>
+     * 文字コードの変換と行ごとのフラッシュの有無は{@link PrintStream}に従います。
      */
-    private String _toHexString(final byte hex) {
-        return HexUtil.toHexString(hex);
-    }
+    private static final class PrintStreamWriter extends Writer {
 
-    /**
-     * 指定されたint値を16進数表現に変換ます。
-     *
-     * @param hex int値
-     * @return 変換後の文字列
-     */
-    private String _toHexString(final int hex) {
-        return HexUtil.toHexString(hex, 3);
-    }
+        private final PrintStream out;
 
-    /**
-     * 指定されたlong値を16進数表現に変換ます。
-     *
-     * @param hex long値
-     * @return 変換後の文字列
-     */
-    private String _toHexString(final long hex) {
-        return HexUtil.toHexString(hex, 5);
+        PrintStreamWriter(final PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            out.append(CharBuffer.wrap(cbuf, off, len));
+        }
+
+        @Override
+        public void flush() {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
     }
 }
 
@@ -0,0 +1,282 @@
+package io.github.eb4j.tool;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.eb4j.Book;
+import io.github.eb4j.SubBook;
+import io.github.eb4j.tool.appendix.Appendix;
+import io.github.eb4j.tool.appendix.SubAppendix;
+import io.github.eb4j.tool.ebzip.CachedBookReader;
+import io.github.eb4j.tool.export.Entry;
+import io.github.eb4j.tool.export.EntryReader;
+import io.github.eb4j.tool.export.GaijiMap;
+import io.github.eb4j.tool.search.BookShelf;
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 本文テキスト出力プログラム。
+ *
+ * @author Hiroshi Miura
+ */
+@CommandLine.Command(name = "export", mixinStandardHelpOptions = true,
+        description = "Export text of all entries in EPWING books")
+public class EBExport implements Callable<Integer> {
+
+    /**
+     * デフォルト読み込みディレクトリ
+     */
+    private static final String DEFAULT_BOOK_DIR = ".";
+
+    /**
+     * プログラム名
+     */
+    private static final String PROGRAM = EBExport.class.getName();
+
+    /**
+     * 出力待ちの項目数の上限
+     */
+    private static final int QUEUE_SIZE = 1024;
+
+    /**
+     * 副本の出力の終わりを表す印
+     */
+    private static final Object END_OF_SUBBOOK = new Object();
+
+    @CommandLine.Option(names = {"-o", "--output"}, description = "output file (default: standard output)")
+    File output;
+
+    @CommandLine.Option(names = {"--format"}, converter = ExportFormatConverter.class,
+            description = "output format: jsonl or text", defaultValue = "jsonl")
+    ExportFormat format = ExportFormat.JSONL;
+
+    @CommandLine.Option(names = {"-a", "--appendix"}, description = "appendix YAML file to map gaiji")
+    File appendixFile;
+
+    @CommandLine.Option(names = {"-T", "--threads"}, description = "number of subbooks processed concurrently")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Parameters(description = "book paths or directories containing books",
+            defaultValue = DEFAULT_BOOK_DIR)
+    List<File> paths;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Output formats.
+     */
+    enum ExportFormat {
+        JSONL,
+        TEXT,
+    }
+
+    /**
+     * Parse format parameter.
+     */
+    static class ExportFormatConverter implements CommandLine.ITypeConverter<ExportFormat> {
+
+        public ExportFormat convert(final String value) {
+            switch (value) {
+                case "jsonl":
+                    return ExportFormat.JSONL;
+                case "text":
+                    return ExportFormat.TEXT;
+                default:
+                    throw new CommandLine.TypeConversionException("invalid format: " + value);
+            }
+        }
+    }
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     *
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    @Override
+    public Integer call() throws Exception {
+        BookShelf shelf = BookShelf.open(paths);
+        if (shelf.size() == 0) {
+            System.err.println(PROGRAM + ": no books found");
+            return 1;
+        }
+        Appendix appendix = null;
+        if (appendixFile != null) {
+            appendix = EBAppendix.getAppendix(appendixFile);
+            if (appendix == null) {
+                return 1;
+            }
+        }
+        long count;
+        if (output == null) {
+            count = export(shelf, appendix, newWriter(System.out));
+        } else {
+            try (Writer writer = newWriter(Files.newOutputStream(output.toPath()))) {
+                count = export(shelf, appendix, writer);
+            }
+        }
+        System.err.println(count + " entries exported");
+        return 0;
+    }
+
+    private static Writer newWriter(final OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * すべての書籍の副本の項目を出力します。
+     * <p>
+     * 副本ごとのタスクを並行に実行し、項目ごとに整形した文字列を上限つきのキューを
+     * 経由して書き込みます。項目の順序は副本の中では本文の順序を保ちます。
+     *
+     * @param shelf 書籍
+     * @param appendix 付録定義、ない場合はnull
+     * @param writer 出力先
+     * @return 出力した項目数
+     * @throws Exception 読み込みまたは書き込みに失敗した場合
+     */
+    protected long export(final BookShelf shelf, final Appendix appendix, final Writer writer) throws Exception {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        List<Future<Void>> futures = new ArrayList<>();
+        long count = 0;
+        try {
+            for (int i = 0; i < shelf.size(); i++) {
+                Book book = shelf.getBook(i);
+                String bookName = shelf.getPath(i).getName();
+                boolean gb2312 = book.getCharCode() == Book.CHARCODE_JISX0208_GB2312;
+                for (SubBook sub : book.getSubBooks()) {
+                    SubAppendix subAppendix = findAppendix(appendix, sub);
+                    futures.add(executor.submit(() -> {
+                        try {
+                            exportSubBook(bookName, sub, subAppendix, gb2312, queue);
+                        } finally {
+                            queue.put(END_OF_SUBBOOK);
+                        }
+                        return null;
+                    }));
+                }
+            }
+            int running = futures.size();
+            while (running > 0) {
+                Object record = queue.take();
+                if (record == END_OF_SUBBOOK) {
+                    running--;
+                } else {
+                    writer.write((String) record);
+                    count++;
+                }
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * 副本の項目を順に読み込み、整形してキューに追加します。
+     */
+    private void exportSubBook(final String bookName, final SubBook sub, final SubAppendix subAppendix,
+                               final boolean gb2312, final BlockingQueue<Object> queue) throws Exception {
+        byte[] stopCode = getStopCode(subAppendix);
+        try (CachedBookReader reader = CachedBookReader.open(sub.getTextFile())) {
+            long[] range = EntryReader.findTextRange(reader);
+            EntryReader entries = new EntryReader(reader, range[0], range[1], new GaijiMap(subAppendix),
+                    gb2312, stopCode);
+            Entry entry;
+            while ((entry = entries.next()) != null) {
+                queue.put(format(bookName, sub.getName(), entry));
+            }
+        }
+    }
+
+    /**
+     * 項目を出力形式の文字列に変換します。
+     */
+    private String format(final String bookName, final String subName, final Entry entry) throws IOException {
+        if (format == ExportFormat.JSONL) {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("book", bookName);
+            record.put("subbook", subName);
+            record.put("position", entry.getPosition());
+            record.put("heading", entry.getHeading());
+            record.put("text", entry.getText());
+            return mapper.writeValueAsString(record) + "\n";
+        }
+        return "[" + bookName + "/" + subName + "] " + entry.getHeading() + "\n" + entry.getText() + "\n\n";
+    }
+
+    /**
+     * 副本に対応する付録定義を返します。
+     * <p>
+     * 副本名が一致する定義、付録定義が1つだけの場合はその定義を使います。
+     *
+     * @param appendix 付録定義、ない場合はnull
+     * @param sub 副本
+     * @return 副本の付録定義、ない場合はnull
+     */
+    static SubAppendix findAppendix(final Appendix appendix, final SubBook sub) {
+        if (appendix == null || appendix.getSubbook() == null) {
+            return null;
+        }
+        for (SubAppendix subAppendix : appendix.getSubbook()) {
+            if (subAppendix.name != null && subAppendix.name.equalsIgnoreCase(sub.getName())) {
+                return subAppendix;
+            }
+        }
+        if (appendix.getSubbook().size() == 1) {
+            return appendix.getSubbook().get(0);
+        }
+        return null;
+    }
+
+    /**
+     * 項目の区切りに使う付録の停止コードを返します。
+     *
+     * @param subAppendix 副本の付録定義、ない場合はnull
+     * @return 停止コード、ない場合はnull
+     */
+    static byte[] getStopCode(final SubAppendix subAppendix) {
+        if (subAppendix != null && subAppendix.hasStopCode()) {
+            return subAppendix.getStopCodeBytes();
+        }
+        return null;
+    }
+
+    /**
+     * Main function for EBExport command.
+     * @param args command line argument
+     */
+    public static void main(final String... args) {
+        System.exit(new CommandLine(new EBExport()).execute(args));
+    }
+}
+
+// end of EBExport.java
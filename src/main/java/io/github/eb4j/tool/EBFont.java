@@ -0,0 +1,295 @@
+package io.github.eb4j.tool;
+
+import io.github.eb4j.Book;
+import io.github.eb4j.EBException;
+import io.github.eb4j.ExtFont;
+import io.github.eb4j.SubBook;
+import io.github.eb4j.tool.ebzip.BookFinder;
+import io.github.eb4j.tool.font.FontAtlas;
+import io.github.eb4j.tool.font.GlyphSet;
+import io.github.eb4j.tool.search.BookShelf;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 外字画像出力プログラム。
+ * <p>
+ * 画像の出力にAWTとImage I/Oを使用します。GraalVMのネイティブイメージでの動作は
+ * 確認していないため、これらが使えない実行ファイルではエラーを表示して終了します。
+ *
+ * @author Hiroshi Miura
+ */
+@CommandLine.Command(name = "font", mixinStandardHelpOptions = true,
+        description = "Extract gaiji bitmaps of EPWING books as images")
+public class EBFont implements Callable<Integer> {
+
+    /**
+     * デフォルト読み込みディレクトリ
+     */
+    private static final String DEFAULT_BOOK_DIR = ".";
+
+    /**
+     * プログラム名
+     */
+    private static final String PROGRAM = EBFont.class.getName();
+
+    /**
+     * 外字のサイズの種類
+     */
+    private static final int FONT_SIZES = 4;
+
+    @CommandLine.Option(names = {"-o", "--output"}, description = "output directory", defaultValue = ".")
+    File outputDir = new File(".");
+
+    @CommandLine.Option(names = {"--format"}, converter = FontFormatConverter.class,
+            description = "output format: png, bmp or atlas", defaultValue = "png")
+    FontFormat format = FontFormat.PNG;
+
+    @CommandLine.Option(names = {"-s", "--size"}, split = ",",
+            description = "font heights to extract: 16, 24, 30 or 48 (default: all)")
+    List<Integer> sizes;
+
+    @CommandLine.Option(names = {"--columns"}, description = "number of glyphs per row of atlas images",
+            defaultValue = "64")
+    int columns = FontAtlas.DEFAULT_COLUMNS;
+
+    @CommandLine.Option(names = {"-T", "--threads"}, description = "number of fonts rendered concurrently")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Parameters(description = "book paths or directories containing books",
+            defaultValue = DEFAULT_BOOK_DIR)
+    List<File> paths;
+
+    /**
+     * Output formats.
+     */
+    enum FontFormat {
+        PNG,
+        BMP,
+        ATLAS,
+    }
+
+    /**
+     * Parse format parameter.
+     */
+    static class FontFormatConverter implements CommandLine.ITypeConverter<FontFormat> {
+
+        public FontFormat convert(final String value) {
+            switch (value) {
+                case "png":
+                    return FontFormat.PNG;
+                case "bmp":
+                    return FontFormat.BMP;
+                case "atlas":
+                    return FontFormat.ATLAS;
+                default:
+                    throw new CommandLine.TypeConversionException("invalid format: " + value);
+            }
+        }
+    }
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     *
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    @Override
+    public Integer call() throws Exception {
+        BookShelf shelf = BookShelf.open(paths);
+        if (shelf.size() == 0) {
+            System.err.println(PROGRAM + ": no books found");
+            return 1;
+        }
+        long count;
+        try {
+            count = render(shelf, outputDir);
+        } catch (LinkageError e) {
+            // GraalVMのネイティブイメージではAWTとImage I/Oが使えない場合がある
+            System.err.println(PROGRAM + ": image output is not available in this executable (" + e
+                    + "); run the font command on a Java runtime");
+            return 1;
+        }
+        System.err.println(count + " glyphs written to " + outputDir.getPath());
+        return 0;
+    }
+
+    /**
+     * すべての書籍の副本の外字を画像に書き出します。
+     * <p>
+     * 副本、外字のサイズ、半角と全角の組ごとのタスクを並行に実行します。
+     * 出力先は{@code <出力ディレクトリ>/<書籍>/<副本>/}の下で、画像ごとの形式では
+     * {@code <高さ>/narrow/<コード>.png}、アトラスでは{@code narrow-<高さ>.png}と
+     * 索引ファイル{@code narrow-<高さ>.idx}です (全角はwide)。
+     *
+     * @param shelf 書籍
+     * @param dir 出力ディレクトリ
+     * @return 書き出した外字の数
+     * @throws Exception 読み込みまたは書き込みに失敗した場合
+     */
+    protected long render(final BookShelf shelf, final File dir) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        List<Future<Integer>> futures = new ArrayList<>();
+        List<File> bookDirs = getBookDirs(shelf, dir);
+        long count = 0;
+        try {
+            for (int i = 0; i < shelf.size(); i++) {
+                Book book = shelf.getBook(i);
+                boolean iso8859 = book.getCharCode() == Book.CHARCODE_ISO8859_1;
+                File bookDir = bookDirs.get(i);
+                for (SubBook sub : book.getSubBooks()) {
+                    File subDir = new File(bookDir, sub.getName().toLowerCase(Locale.ROOT));
+                    for (int j = 0; j < FONT_SIZES; j++) {
+                        ExtFont font = sub.getFont(j);
+                        if (font == null || !font.hasFont()
+                                || sizes != null && !sizes.contains(font.getFontHeight())) {
+                            continue;
+                        }
+                        if (font.hasNarrowFont()) {
+                            GlyphSet glyphs = GlyphSet.narrow(font);
+                            futures.add(executor.submit(() -> renderFont(glyphs, iso8859, subDir)));
+                        }
+                        if (font.hasWideFont()) {
+                            GlyphSet glyphs = GlyphSet.wide(font);
+                            futures.add(executor.submit(() -> renderFont(glyphs, iso8859, subDir)));
+                        }
+                    }
+                }
+            }
+            for (Future<Integer> future : futures) {
+                count += future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof LinkageError) {
+                throw (LinkageError) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * 書籍ごとの出力ディレクトリを返します。
+     * <p>
+     * 出力ディレクトリの名前は書籍ディレクトリの名前です。別の場所にある同名の書籍は
+     * 同じディレクトリに書き出さないように、{@link BookFinder#uniqueName(String, Set)}で
+     * 接尾辞を付けます。
+     *
+     * @param shelf 書籍
+     * @param dir 出力ディレクトリ
+     * @return 書籍の順の出力ディレクトリ
+     */
+    List<File> getBookDirs(final BookShelf shelf, final File dir) {
+        List<File> bookDirs = new ArrayList<>(shelf.size());
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < shelf.size(); i++) {
+            String name = shelf.getPath(i).getName();
+            String unique = BookFinder.uniqueName(name, names);
+            if (!unique.equals(name)) {
+                System.err.println(PROGRAM + ": output of " + shelf.getPath(i).getPath() + " goes to " + unique);
+            }
+            bookDirs.add(new File(dir, unique));
+        }
+        return bookDirs;
+    }
+
+    /**
+     * 1つのフォントのすべての外字を書き出します。
+     * <p>
+     * 出力先のディレクトリは最初の外字を書き出すときに作成するため、
+     * 外字が1つもない場合は何も作成しません。
+     *
+     * @param glyphs 外字の集合
+     * @param iso8859 ISO 8859-1の書籍の場合はtrue
+     * @param subDir 副本の出力ディレクトリ
+     * @return 書き出した外字の数
+     * @throws EBException 読み込みに失敗した場合
+     * @throws IOException 書き込みに失敗した場合
+     */
+    int renderFont(final GlyphSet glyphs, final boolean iso8859, final File subDir)
+            throws EBException, IOException {
+        int width = glyphs.getWidth();
+        int height = glyphs.getHeight();
+        String kind = glyphs.getKind();
+        FontAtlas atlas = new FontAtlas(width, height, columns);
+        File glyphDir = new File(new File(subDir, Integer.toString(height)), kind);
+        int count = 0;
+        for (int code = glyphs.getStart(); code <= glyphs.getEnd(); code = nextCode(code, iso8859)) {
+            byte[] bitmap = glyphs.getGlyph(code);
+            if (bitmap == null) {
+                continue;
+            }
+            if (format == FontFormat.ATLAS) {
+                atlas.add(code, bitmap);
+            } else {
+                if (count == 0) {
+                    mkdirs(glyphDir);
+                }
+                String name = format.name().toLowerCase(Locale.ROOT);
+                FontAtlas.write(FontAtlas.toImage(bitmap, width, height), name,
+                        new File(glyphDir, String.format("%04X.%s", code, name)));
+            }
+            count++;
+        }
+        if (format == FontFormat.ATLAS && count > 0) {
+            mkdirs(subDir);
+            String base = kind + "-" + height;
+            FontAtlas.write(atlas.toImage(), "png", new File(subDir, base + ".png"));
+            atlas.writeIndex(new File(subDir, base + ".idx"));
+        }
+        return count;
+    }
+
+    /**
+     * 次の外字のコードを返します。
+     * <p>
+     * 下位バイトはISO 8859-1の書籍では0x01から0xfe、それ以外の書籍では0x21から0x7eの範囲です。
+     *
+     * @param code 外字のコード
+     * @param iso8859 ISO 8859-1の書籍の場合はtrue
+     * @return 次の外字のコード
+     */
+    static int nextCode(final int code, final boolean iso8859) {
+        int low = code & 0xff;
+        if (iso8859 && low >= 0xfe) {
+            return (code & 0xff00) + 0x101;
+        }
+        if (!iso8859 && low >= 0x7e) {
+            return (code & 0xff00) + 0x121;
+        }
+        return code + 1;
+    }
+
+    private static void mkdirs(final File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("cannot create directory: " + dir.getPath());
+        }
+    }
+
+    /**
+     * Main function for EBFont command.
+     * @param args command line argument
+     */
+    public static void main(final String... args) {
+        System.exit(new CommandLine(new EBFont()).execute(args));
+    }
+}
+
+// end of EBFont.java
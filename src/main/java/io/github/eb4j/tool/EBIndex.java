@@ -0,0 +1,271 @@
+package io.github.eb4j.tool;
+
+import io.github.eb4j.Book;
+import io.github.eb4j.SubBook;
+import io.github.eb4j.tool.appendix.Appendix;
+import io.github.eb4j.tool.appendix.SubAppendix;
+import io.github.eb4j.tool.ebzip.CachedBookReader;
+import io.github.eb4j.tool.export.Entry;
+import io.github.eb4j.tool.export.EntryReader;
+import io.github.eb4j.tool.export.GaijiMap;
+import io.github.eb4j.tool.index.Headword;
+import io.github.eb4j.tool.index.HeadwordIndex;
+import io.github.eb4j.tool.index.HeadwordIndexWriter;
+import io.github.eb4j.tool.search.BookShelf;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 見出し語索引プログラム。
+ *
+ * @author Hiroshi Miura
+ */
+@CommandLine.Command(name = "index", mixinStandardHelpOptions = true,
+        description = "Build and look up headword index files of EPWING books",
+        subcommands = {EBIndex.Build.class, EBIndex.Lookup.class})
+public class EBIndex implements Runnable {
+
+    /**
+     * プログラム名
+     */
+    private static final String PROGRAM = EBIndex.class.getName();
+
+    /**
+     * デフォルト読み込みディレクトリ
+     */
+    private static final String DEFAULT_BOOK_DIR = ".";
+
+    /**
+     * 書籍ディレクトリに作成する索引ファイルのデフォルト名
+     */
+    static final String DEFAULT_INDEX_NAME = "eb4j-headword.idx";
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    /**
+     * Show usage when running without subcommand.
+     */
+    @Override
+    public void run() {
+        spec.commandLine().usage(System.err);
+    }
+
+    /**
+     * 書籍の索引ファイルのデフォルトの場所を返します。
+     */
+    private static File defaultIndexFile(final File bookPath) {
+        return new File(bookPath, DEFAULT_INDEX_NAME);
+    }
+
+    /**
+     * 索引作成サブコマンド。
+     */
+    @CommandLine.Command(name = "build", mixinStandardHelpOptions = true,
+            description = "Build a headword index file of a book")
+    static class Build implements Callable<Integer> {
+
+        @CommandLine.Option(names = {"-o", "--output"},
+                description = "index file (default: " + DEFAULT_INDEX_NAME + " in the book directory)")
+        File output;
+
+        @CommandLine.Option(names = {"-a", "--appendix"},
+                description = "appendix YAML file to split entries and map gaiji as export does")
+        File appendixFile;
+
+        @CommandLine.Option(names = {"-T", "--threads"}, description = "number of subbooks processed concurrently")
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        @CommandLine.Parameters(description = "book path", defaultValue = DEFAULT_BOOK_DIR)
+        File bookPath;
+
+        /**
+         * Computes a result, or throws an exception if unable to do so.
+         *
+         * @return computed result
+         * @throws Exception if unable to compute a result
+         */
+        @Override
+        public Integer call() throws Exception {
+            Book book = new Book(bookPath);
+            Appendix appendix = null;
+            if (appendixFile != null) {
+                appendix = EBAppendix.getAppendix(appendixFile);
+                if (appendix == null) {
+                    return 1;
+                }
+            }
+            File file = output;
+            if (file == null) {
+                file = defaultIndexFile(bookPath);
+            }
+            int count = build(book, appendix, file);
+            System.err.println(count + " headwords written to " + file.getPath());
+            return 0;
+        }
+
+        /**
+         * 書籍のすべての副本の見出し語を読み込み、索引ファイルを作成します。
+         * <p>
+         * 見出し語は本文中の項目の見出しから取得します。項目は{@code export}と同じく付録の
+         * 停止コードで区切り、外字は付録の代替文字列に置き換えます。副本ごとのタスクを並行に実行し、
+         * 結果を副本番号の順に索引に追加します。
+         *
+         * @param book 書籍
+         * @param appendix 付録定義、ない場合はnull
+         * @param file 索引ファイル
+         * @return 索引に書き出した語数
+         * @throws Exception 読み込みまたは書き込みに失敗した場合
+         */
+        protected int build(final Book book, final Appendix appendix, final File file) throws Exception {
+            SubBook[] subs = book.getSubBooks();
+            List<String> names = new ArrayList<>();
+            for (SubBook sub : subs) {
+                names.add(sub.getName());
+            }
+            boolean gb2312 = book.getCharCode() == Book.CHARCODE_JISX0208_GB2312;
+            HeadwordIndexWriter writer = new HeadwordIndexWriter(names);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+            try {
+                List<Future<List<Headword>>> futures = new ArrayList<>();
+                for (int i = 0; i < subs.length; i++) {
+                    SubBook sub = subs[i];
+                    int subbook = i;
+                    SubAppendix subAppendix = EBExport.findAppendix(appendix, sub);
+                    futures.add(executor.submit(() -> readHeadings(sub, subbook, gb2312, subAppendix)));
+                }
+                for (Future<List<Headword>> future : futures) {
+                    for (Headword headword : future.get()) {
+                        writer.add(headword.getKey(), headword.getSubBook(), headword.getPosition());
+                    }
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            } finally {
+                executor.shutdownNow();
+            }
+            return writer.write(file);
+        }
+
+        /**
+         * 副本の項目を順に読み込み、見出しと本文位置を返します。
+         */
+        private static List<Headword> readHeadings(final SubBook sub, final int subbook, final boolean gb2312,
+                                                   final SubAppendix subAppendix) throws Exception {
+            List<Headword> headwords = new ArrayList<>();
+            try (CachedBookReader reader = CachedBookReader.open(sub.getTextFile())) {
+                long[] range = EntryReader.findTextRange(reader);
+                EntryReader entryReader = new EntryReader(reader, range[0], range[1], new GaijiMap(subAppendix),
+                        gb2312, EBExport.getStopCode(subAppendix));
+                Entry entry;
+                while ((entry = entryReader.next()) != null) {
+                    headwords.add(new Headword(entry.getHeading(), subbook, entry.getPosition()));
+                }
+            }
+            return headwords;
+        }
+    }
+
+    /**
+     * 索引検索サブコマンド。
+     */
+    @CommandLine.Command(name = "lookup", mixinStandardHelpOptions = true,
+            description = "Look up words in a headword index file")
+    static class Lookup implements Callable<Integer> {
+
+        @CommandLine.Option(names = {"-i", "--index"},
+                description = "index file (default: " + DEFAULT_INDEX_NAME + " in the book directory)")
+        File indexFile;
+
+        @CommandLine.Option(names = {"-p", "--prefix"}, description = "match headwords starting with the word")
+        boolean prefix;
+
+        @CommandLine.Option(names = {"-l", "--limit"}, description = "maximum number of results", defaultValue = "50")
+        int limit = 50;
+
+        @CommandLine.Option(names = {"--text"}, description = "output text of the entries read from the book")
+        boolean text;
+
+        @CommandLine.Parameters(index = "0", description = "word to look up")
+        String word;
+
+        @CommandLine.Parameters(index = "1", description = "book path", defaultValue = DEFAULT_BOOK_DIR)
+        File bookPath;
+
+        /**
+         * Computes a result, or throws an exception if unable to do so.
+         *
+         * @return computed result
+         * @throws Exception if unable to compute a result
+         */
+        @Override
+        public Integer call() throws Exception {
+            File file = indexFile;
+            if (file == null) {
+                file = defaultIndexFile(bookPath);
+            }
+            if (!file.isFile()) {
+                System.err.println(PROGRAM + ": index file not found: " + file.getPath());
+                return 1;
+            }
+            int count = lookup(file, System.out);
+            if (count == 0) {
+                return 1;
+            }
+            return 0;
+        }
+
+        /**
+         * 索引を検索し、結果を出力します。
+         *
+         * @param file 索引ファイル
+         * @param out 出力先
+         * @return 出力した件数
+         * @throws Exception 検索または本文の読み込みに失敗した場合
+         */
+        protected int lookup(final File file, final PrintStream out) throws Exception {
+            List<Headword> hits;
+            List<String> subbooks;
+            try (HeadwordIndex index = HeadwordIndex.open(file)) {
+                hits = index.lookup(word, prefix, limit);
+                subbooks = index.getSubBooks();
+            }
+            BookShelf shelf = null;
+            if (text && !hits.isEmpty()) {
+                shelf = BookShelf.open(Collections.singletonList(bookPath));
+            }
+            for (Headword hit : hits) {
+                out.println(subbooks.get(hit.getSubBook()) + "\t" + hit.getPosition() + "\t" + hit.getKey());
+                if (shelf != null) {
+                    out.println(shelf.getText(0, hit.getSubBook(), hit.getPosition()).trim());
+                    out.println();
+                }
+            }
+            out.flush();
+            return hits.size();
+        }
+    }
+
+    /**
+     * Main function for EBIndex command.
+     * @param args command line argument
+     */
+    public static void main(final String... args) {
+        System.exit(new CommandLine(new EBIndex()).execute(args));
+    }
+}
+
+// end of EBIndex.java
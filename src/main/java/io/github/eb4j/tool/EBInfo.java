@@ -1,14 +1,28 @@
 package io.github.eb4j.tool;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.eb4j.Book;
 import io.github.eb4j.SubBook;
 import io.github.eb4j.ExtFont;
 import io.github.eb4j.EBException;
+import io.github.eb4j.tool.ebzip.BookFinder;
+import io.github.eb4j.tool.info.BookInfo;
+import io.github.eb4j.tool.info.MetadataCache;
 import io.github.eb4j.util.HexUtil;
 import picocli.CommandLine;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 書籍情報表示プログラム。
@@ -22,13 +36,55 @@ public final class EBInfo implements Callable<Integer> {
     /** デフォルト読み込みディレクトリ */
     private static final String DEFAULT_BOOK_DIR = ".";
 
+    /** プログラム名 */
+    private static final String PROGRAM = EBInfo.class.getName();
+
     @picocli.CommandLine.Option(names = {"-m", "--multi-search"},
             description = "also output multi-search information")
     boolean multi = false;
 
-    @picocli.CommandLine.Parameters(description = "book path", defaultValue = DEFAULT_BOOK_DIR)
+    @picocli.CommandLine.Option(names = {"--format"}, converter = InfoFormatConverter.class,
+            description = "output format: text, json or ndjson", defaultValue = "text")
+    InfoFormat format = InfoFormat.TEXT;
+
+    @picocli.CommandLine.Option(names = {"-T", "--threads"}, description = "number of books opened concurrently")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @picocli.CommandLine.Option(names = {"--metadata-cache"},
+            description = "file to keep book information of json and ndjson output between runs")
+    File metadataCache;
+
+    @picocli.CommandLine.Parameters(description = "book path or directory containing books",
+            defaultValue = DEFAULT_BOOK_DIR)
     File path;
 
+    /**
+     * Output formats.
+     */
+    enum InfoFormat {
+        TEXT,
+        JSON,
+        NDJSON,
+    }
+
+    /**
+     * Parse format parameter.
+     */
+    static class InfoFormatConverter implements CommandLine.ITypeConverter<InfoFormat> {
+
+        public InfoFormat convert(final String value) {
+            switch (value) {
+                case "text":
+                    return InfoFormat.TEXT;
+                case "json":
+                    return InfoFormat.JSON;
+                case "ndjson":
+                    return InfoFormat.NDJSON;
+                default:
+                    throw new CommandLine.TypeConversionException("invalid format: " + value);
+            }
+        }
+    }
 
     /**
      * Computes a result, or throws an exception if unable to do so.
@@ -38,7 +94,37 @@ public final class EBInfo implements Callable<Integer> {
      */
     @Override
     public Integer call() throws Exception {
-        show();
+        List<File> books = new ArrayList<>();
+        BookFinder.find(path, books);
+        if (format != InfoFormat.TEXT) {
+            if (books.isEmpty()) {
+                System.err.println(PROGRAM + ": no books found");
+                return 1;
+            }
+            if (scan(books, System.out) > 0) {
+                return 1;
+            }
+            return 0;
+        }
+        if (books.isEmpty() || books.size() == 1 && books.get(0).equals(path)) {
+            show();
+            return 0;
+        }
+        int errors = 0;
+        for (File dir : books) {
+            System.out.println("book: " + dir.getPath());
+            try {
+                show(new Book(dir));
+            } catch (EBException | RuntimeException e) {
+                // 開けなかった書籍を報告して次の書籍に進む
+                System.err.println(PROGRAM + ": " + describeError(e) + " (" + dir.getPath() + ")");
+                errors++;
+            }
+            System.out.println("");
+        }
+        if (errors > 0) {
+            return 1;
+        }
         return 0;
     }
 
@@ -51,40 +137,139 @@ public final class EBInfo implements Callable<Integer> {
     }
 
 
+    /**
+     * 複数の書籍を並行に開き、書籍ごとの情報をJSON形式で出力します。
+     * <p>
+     * 書籍はスレッドプールで並行に開き、見つかった順に出力します。
+     * JSON形式では書籍の配列を1つ、NDJSON形式では1行に1冊ずつ出力します。
+     * 開けなかった書籍はパスとエラーメッセージを出力します。
+     * 書籍情報キャッシュを指定した場合は、ファイルが変更されていない書籍を開かずに
+     * キャッシュの情報を出力し、終了時にキャッシュを更新します。
+     *
+     * @param books 書籍ディレクトリ
+     * @param out 出力先
+     * @return 開けなかった書籍の数
+     * @throws Exception 出力に失敗した場合
+     */
+    protected int scan(final List<File> books, final PrintStream out) throws Exception {
+        MetadataCache cache = null;
+        if (metadataCache != null) {
+            try {
+                cache = MetadataCache.load(metadataCache);
+            } catch (IOException e) {
+                System.err.println(PROGRAM + ": ignore broken metadata cache " + metadataCache.getPath() + ": "
+                        + e.getMessage());
+                cache = MetadataCache.create(metadataCache);
+            }
+        }
+        return scan(books, out, cache);
+    }
+
+    /**
+     * 指定された書籍情報キャッシュを使って複数の書籍の情報を出力します。
+     *
+     * @param books 書籍ディレクトリ
+     * @param out 出力先
+     * @param cache 書籍情報キャッシュ、使わない場合はnull
+     * @return 開けなかった書籍の数
+     * @throws Exception 出力に失敗した場合
+     */
+    int scan(final List<File> books, final PrintStream out, final MetadataCache cache) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        List<Map<String, Object>> records = new ArrayList<>();
+        int errors = 0;
+        try {
+            List<Future<Map<String, Object>>> futures = new ArrayList<>(books.size());
+            for (File dir : books) {
+                futures.add(executor.submit(() -> describe(dir, cache)));
+            }
+            for (Future<Map<String, Object>> future : futures) {
+                Map<String, Object> record = future.get();
+                if (record.containsKey("error")) {
+                    errors++;
+                }
+                if (format == InfoFormat.NDJSON) {
+                    out.println(mapper.writeValueAsString(record));
+                } else {
+                    records.add(record);
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        if (format == InfoFormat.JSON) {
+            out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(records));
+        }
+        out.flush();
+        if (cache != null) {
+            cache.save();
+        }
+        return errors;
+    }
+
+    /**
+     * 書籍を開き、情報を返します。
+     */
+    private static Map<String, Object> describe(final File dir, final MetadataCache cache) {
+        try {
+            String fingerprint = null;
+            if (cache != null) {
+                fingerprint = MetadataCache.fingerprint(dir);
+                Map<String, Object> info = cache.get(dir, fingerprint);
+                if (info != null) {
+                    return info;
+                }
+            }
+            Map<String, Object> info = BookInfo.describe(dir, new Book(dir));
+            if (cache != null) {
+                cache.put(dir, fingerprint, info);
+            }
+            return info;
+        } catch (EBException | RuntimeException e) {
+            // 壊れた書籍で想定外の例外が発生しても、その書籍のエラーとして記録する
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("path", dir.getPath());
+            info.put("error", describeError(e));
+            return info;
+        }
+    }
+
+    /**
+     * 書籍を開けなかった理由を返します。
+     */
+    private static String describeError(final Exception e) {
+        if (e.getMessage() == null) {
+            return e.getClass().getName();
+        }
+        return e.getMessage();
+    }
+
     /**
      * 書籍の情報を出力します。
      */
     protected void show() throws EBException {
-        String text;
-        Book book = new Book(path);
+        show(new Book(path));
+    }
+
+    /**
+     * 書籍の情報を出力します。
+     *
+     * @param book 書籍
+     */
+    private void show(final Book book) {
         // 書籍の種類
         System.out.print("disc type: ");
-        if (book.getBookType() == Book.DISC_EB) {
-            text = "EB/EBG/EBXA/EBXA-C/S-EBXA";
-        } else if (book.getBookType() == Book.DISC_EPWING) {
-            text = "EPWING V" + book.getVersion();
-        } else {
-            text = "unknown";
-        }
-        System.out.println(text);
+        System.out.println(BookInfo.getDiscType(book));
 
         // 書籍の文字セット
         System.out.print("character code: ");
-        switch (book.getCharCode()) {
-            case Book.CHARCODE_ISO8859_1:
-                text = "ISO 8859-1";
-                break;
-            case Book.CHARCODE_JISX0208:
-                text = "JIS X 0208";
-                break;
-            case Book.CHARCODE_JISX0208_GB2312:
-                text = "JIS X 0208 + GB 2312";
-                break;
-            default:
-                text = "unknown";
-                break;
-        }
-        System.out.println(text);
+        System.out.println(BookInfo.getCharCode(book));
 
         // 書籍に含まれる副本数
         System.out.print("the number of subbooks: ");
@@ -104,32 +289,8 @@ public final class EBInfo implements Callable<Integer> {
 
             // 対応している検索方式
             System.out.print("  search methods:");
-            if (subs[i].hasWordSearch()) {
-                System.out.print(" word");
-            }
-            if (subs[i].hasEndwordSearch()) {
-                System.out.print(" endword");
-            }
-            if (subs[i].hasExactwordSearch()) {
-                System.out.print(" exactword");
-            }
-            if (subs[i].hasKeywordSearch()) {
-                System.out.print(" keyword");
-            }
-            if (subs[i].hasCrossSearch()) {
-                System.out.print(" cross");
-            }
-            if (subs[i].hasMultiSearch()) {
-                System.out.print(" multi");
-            }
-            if (subs[i].hasMenu()) {
-                System.out.print(" menu");
-            }
-            if (subs[i].hasImageMenu()) {
-                System.out.print(" image-menu");
-            }
-            if (subs[i].hasCopyright()) {
-                System.out.print(" copyright");
+            for (String method : BookInfo.getSearchMethods(subs[i])) {
+                System.out.print(" " + method);
             }
             System.out.println("");
 
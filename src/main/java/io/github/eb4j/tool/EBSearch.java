@@ -0,0 +1,164 @@
+package io.github.eb4j.tool;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.eb4j.tool.search.BookShelf;
+import io.github.eb4j.tool.search.ParallelSearcher;
+import io.github.eb4j.tool.search.SearchMethod;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 書籍検索プログラム。
+ *
+ * @author Hiroshi Miura
+ */
+@CommandLine.Command(name = "search", mixinStandardHelpOptions = true,
+        description = "Search words in EPWING books")
+public class EBSearch implements Callable<Integer> {
+
+    /**
+     * デフォルト読み込みディレクトリ
+     */
+    private static final String DEFAULT_BOOK_DIR = ".";
+
+    /**
+     * プログラム名
+     */
+    private static final String PROGRAM = EBSearch.class.getName();
+
+    @CommandLine.Option(names = {"-m", "--method"}, converter = SearchMethodConverter.class,
+            description = "search method: word, endword, exactword or keyword", defaultValue = "word")
+    SearchMethod method = SearchMethod.WORD;
+
+    @CommandLine.Option(names = {"-l", "--limit"}, description = "maximum number of results", defaultValue = "50")
+    int limit = 50;
+
+    @CommandLine.Option(names = {"-T", "--threads"}, description = "number of search threads")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"-r", "--rank"},
+            description = "collect results of all books and output them in ranked order")
+    boolean rank;
+
+    @CommandLine.Option(names = {"--heading-only"}, description = "output headings without text")
+    boolean headingOnly;
+
+    @CommandLine.Option(names = {"--json"}, description = "output one JSON object per result")
+    boolean json;
+
+    @CommandLine.Parameters(index = "0", description = "search word(s)")
+    String query;
+
+    @CommandLine.Parameters(index = "1..*", description = "book paths or directories containing books",
+            defaultValue = DEFAULT_BOOK_DIR)
+    List<File> paths;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     *
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    @Override
+    public Integer call() throws Exception {
+        BookShelf shelf = BookShelf.open(paths);
+        if (shelf.size() == 0) {
+            System.err.println(PROGRAM + ": no books found");
+            return 1;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        try {
+            search(shelf, executor, System.out);
+        } finally {
+            executor.shutdownNow();
+        }
+        return 0;
+    }
+
+    /**
+     * 書籍を検索し、結果を出力します。
+     *
+     * @param shelf 検索対象の書籍
+     * @param executor 検索タスクを実行するスレッドプール
+     * @param out 出力先
+     * @return 出力した件数
+     * @throws Exception 検索または出力に失敗した場合
+     */
+    int search(final BookShelf shelf, final ExecutorService executor, final PrintStream out)
+            throws Exception {
+        ParallelSearcher searcher = new ParallelSearcher(shelf, executor);
+        int count;
+        if (rank) {
+            List<Map<String, Object>> hits = searcher.searchRanked(method, query, limit, !headingOnly);
+            for (Map<String, Object> hit : hits) {
+                print(out, shelf, hit);
+            }
+            count = hits.size();
+        } else {
+            count = searcher.search(method, query, limit, !headingOnly, hit -> print(out, shelf, hit));
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * 検索結果を1件出力します。
+     */
+    private void print(final PrintStream out, final BookShelf shelf, final Map<String, Object> hit)
+            throws IOException {
+        if (json) {
+            out.println(mapper.writeValueAsString(hit));
+            return;
+        }
+        int book = (Integer) hit.get("book");
+        int sub = (Integer) hit.get("subbook");
+        out.println(shelf.getPath(book).getName() + "/" + shelf.getSubBook(book, sub).getName() + ": "
+                + String.valueOf(hit.get("heading")).trim());
+        Object text = hit.get("text");
+        if (text != null) {
+            out.println(text.toString().trim());
+            out.println();
+        }
+    }
+
+    /**
+     * Main function for EBSearch command.
+     * @param args command line argument
+     */
+    public static void main(final String... args) {
+        System.exit(new CommandLine(new EBSearch()).execute(args));
+    }
+
+    /**
+     * Parser for search method names.
+     */
+    static class SearchMethodConverter implements CommandLine.ITypeConverter<SearchMethod> {
+
+        /**
+         * Converts the specified command line argument value to some domain object.
+         *
+         * @param value the command line argument String value
+         * @return the resulting domain object
+         */
+        @Override
+        public SearchMethod convert(final String value) {
+            try {
+                return SearchMethod.of(value);
+            } catch (IllegalArgumentException e) {
+                throw new CommandLine.TypeConversionException("unknown search method: " + value);
+            }
+        }
+    }
+}
+
+// end of EBSearch.java
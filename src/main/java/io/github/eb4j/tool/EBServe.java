@@ -0,0 +1,93 @@
+package io.github.eb4j.tool;
+
+import io.github.eb4j.tool.search.BookShelf;
+import io.github.eb4j.tool.search.LookupServer;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 書籍検索サーバプログラム。
+ *
+ * @author Hiroshi Miura
+ */
+@CommandLine.Command(name = "serve", mixinStandardHelpOptions = true,
+        description = "Serve searches and text of EPWING books over local HTTP")
+public class EBServe implements Callable<Integer> {
+
+    /**
+     * デフォルト読み込みディレクトリ
+     */
+    private static final String DEFAULT_BOOK_DIR = ".";
+
+    /**
+     * プログラム名
+     */
+    private static final String PROGRAM = EBServe.class.getName();
+
+    /**
+     * 終了時に処理中のリクエストを待つ秒数
+     */
+    private static final int STOP_DELAY = 2;
+
+    @CommandLine.Option(names = {"-b", "--bind"}, description = "address to listen on", defaultValue = "127.0.0.1")
+    String bind = "127.0.0.1";
+
+    @CommandLine.Option(names = {"-p", "--port"}, description = "port to listen on (0: any free port)",
+            defaultValue = "8080")
+    int port = 8080;
+
+    @CommandLine.Option(names = {"-T", "--threads"}, description = "number of request threads")
+    int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+    @CommandLine.Option(names = {"-l", "--limit"}, description = "maximum number of search results",
+            defaultValue = "100")
+    int limit = LookupServer.DEFAULT_LIMIT;
+
+    @CommandLine.Parameters(description = "book paths or directories containing books",
+            defaultValue = DEFAULT_BOOK_DIR)
+    List<File> paths;
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     *
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    @Override
+    public Integer call() throws Exception {
+        BookShelf shelf = BookShelf.open(paths);
+        if (shelf.size() == 0) {
+            System.err.println(PROGRAM + ": no books found");
+            return 1;
+        }
+        LookupServer server = new LookupServer(shelf, new InetSocketAddress(bind, port),
+                Math.max(threads, 1), limit);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(STOP_DELAY);
+            stopped.countDown();
+        }));
+        server.start();
+        InetSocketAddress address = server.getAddress();
+        System.out.println("serving " + shelf.size() + " books on http://"
+                + address.getHostString() + ":" + address.getPort() + "/");
+        System.out.flush();
+        stopped.await();
+        return 0;
+    }
+
+    /**
+     * Main function for EBServe command.
+     * @param args command line argument
+     */
+    public static void main(final String... args) {
+        System.exit(new CommandLine(new EBServe()).execute(args));
+    }
+}
+
+// end of EBServe.java
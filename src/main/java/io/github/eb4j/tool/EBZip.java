@@ -1,21 +1,38 @@
 package io.github.eb4j.tool;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.RandomAccessFile;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.zip.Adler32;
-import java.util.zip.Deflater;
 
 
 import io.github.eb4j.Book;
@@ -27,6 +44,20 @@ import io.github.eb4j.io.EBFormat;
 import io.github.eb4j.io.BookInputStream;
 import io.github.eb4j.io.EBZipInputStream;
 import io.github.eb4j.io.EBZipConstants;
+import io.github.eb4j.tool.ebzip.BookFinder;
+import io.github.eb4j.tool.ebzip.Checkpoint;
+import io.github.eb4j.tool.ebzip.CompressionSetting;
+import io.github.eb4j.tool.ebzip.EBZipHeader;
+import io.github.eb4j.tool.ebzip.EBZipIndex;
+import io.github.eb4j.tool.ebzip.EBZipStream;
+import io.github.eb4j.tool.ebzip.EBZipVerifier;
+import io.github.eb4j.tool.ebzip.EBZipWriter;
+import io.github.eb4j.tool.ebzip.IncrementalBase;
+import io.github.eb4j.tool.ebzip.InfoReport;
+import io.github.eb4j.tool.ebzip.LevelSelector;
+import io.github.eb4j.tool.ebzip.MappedSliceSource;
+import io.github.eb4j.tool.ebzip.ParallelInflater;
+import io.github.eb4j.tool.ebzip.SEBXAIndexPage;
 
 import picocli.CommandLine;
 
@@ -69,6 +100,19 @@ public final class EBZip implements Callable<Integer> {
      * 情報モード
      */
     private static final int ACTION_INFO = 2;
+    /**
+     * 検査モード
+     */
+    private static final int ACTION_VERIFY = 3;
+    /**
+     * 変換モード
+     */
+    private static final int ACTION_TRANSCODE = 4;
+
+    /**
+     * ファイルごとに圧縮レベルを選択する
+     */
+    static final int LEVEL_AUTO = -1;
 
     /**
      * 上書き方法
@@ -87,16 +131,79 @@ public final class EBZip implements Callable<Integer> {
      */
     @CommandLine.Option(
             names = {"-l", "--level"},
-            description = "compression level: 0.." + EBZipConstants.EBZIP_MAX_LEVEL,
+            converter = LevelConverter.class,
+            description = "compression level: 0.." + EBZipConstants.EBZIP_MAX_LEVEL
+                    + ", or auto to select per file",
             defaultValue = "0") //EBZipConstants.EBZIP_DEFAULT_LEVEL
             int level;
 
+    /**
+     * 圧縮レベル自動選択の目標
+     */
+    @CommandLine.Option(names = {"--goal"}, converter = GoalConverter.class,
+            description = "goal of automatic level selection: size or read", defaultValue = "size")
+    LevelSelector.Goal goal = LevelSelector.Goal.SIZE;
+
     /**
      * 出力メッセージ抑止フラグ
      */
     @CommandLine.Option(names = {"-q", "--quiet"}, description = "suppress all warings")
     boolean quiet = false;
 
+    /**
+     * 圧縮/解凍スレッド数
+     */
+    @CommandLine.Option(names = {"-T", "--threads"}, description = "number of compression/decompression threads",
+            defaultValue = "1")
+    int threads = 1;
+
+    /**
+     * 同時に処理するファイル数
+     */
+    @CommandLine.Option(names = {"-j", "--jobs"}, description = "number of files processed concurrently",
+            defaultValue = "1")
+    int jobs = 1;
+
+    /**
+     * 圧縮パイプラインのキューの深さ
+     */
+    @CommandLine.Option(names = {"-Q", "--queue-depth"},
+            description = "read-ahead slices of compression pipeline (0: twice the number of threads)",
+            defaultValue = "0")
+    int queueDepth = 0;
+
+    /**
+     * 差分圧縮フラグ
+     */
+    @CommandLine.Option(names = {"--incremental"},
+            description = "update existing compressed files, recompressing changed slices only")
+    boolean incremental = false;
+
+    /**
+     * 中断した圧縮の再開フラグ
+     */
+    @CommandLine.Option(names = {"--resume"}, description = "resume interrupted compression from checkpoints")
+    boolean resume = false;
+
+    /**
+     * チェックポイントの間隔 (秒)、0の場合はチェックポイントを書き込まない
+     */
+    @CommandLine.Option(names = {"--checkpoint-interval"},
+            description = "write a compression checkpoint every given seconds (default: no checkpoints)")
+    double checkpointInterval = 0;
+
+    /**
+     * 無圧縮ファイルのメモリマッピング使用フラグ
+     */
+    @CommandLine.Option(names = {"--mmap"}, description = "memory-map uncompressed input files")
+    boolean mmap = false;
+
+    /**
+     * ダイレクトバッファ使用フラグ
+     */
+    @CommandLine.Option(names = {"--direct-buffers"}, description = "use direct buffers for compressed slices")
+    boolean directBuffers = false;
+
     /**
      * Types for skip option flags.
      */
@@ -140,6 +247,68 @@ public final class EBZip implements Callable<Integer> {
         }
     }
 
+    /**
+     * Output formats of information.
+     */
+    enum InfoFormat {
+        TEXT,
+        JSON,
+        CSV,
+    }
+
+    /**
+     * Parse format parameter.
+     */
+    static class InfoFormatConverter implements CommandLine.ITypeConverter<InfoFormat> {
+
+        public InfoFormat convert(final String value) {
+            switch (value) {
+                case "text":
+                    return InfoFormat.TEXT;
+                case "json":
+                    return InfoFormat.JSON;
+                case "csv":
+                    return InfoFormat.CSV;
+                default:
+                    throw new CommandLine.TypeConversionException("invalid format: " + value);
+            }
+        }
+    }
+
+    /**
+     * Parse level parameter.
+     */
+    static class LevelConverter implements CommandLine.ITypeConverter<Integer> {
+
+        public Integer convert(final String value) {
+            if (value.equals("auto")) {
+                return LEVEL_AUTO;
+            }
+            int level = Integer.parseInt(value);
+            if (level < 0 || level > EBZipConstants.EBZIP_MAX_LEVEL) {
+                throw new CommandLine.TypeConversionException("invalid compression level: " + value);
+            }
+            return level;
+        }
+    }
+
+    /**
+     * Parse goal parameter.
+     */
+    static class GoalConverter implements CommandLine.ITypeConverter<LevelSelector.Goal> {
+
+        public LevelSelector.Goal convert(final String value) {
+            switch (value) {
+                case "size":
+                    return LevelSelector.Goal.SIZE;
+                case "read":
+                    return LevelSelector.Goal.READ;
+                default:
+                    throw new CommandLine.TypeConversionException("invalid goal: " + value);
+            }
+        }
+    }
+
     @CommandLine.Option(
             names = {"-s", "--skip-content"},
             split = ",",
@@ -162,10 +331,32 @@ public final class EBZip implements Callable<Integer> {
     @CommandLine.Option(names = {"-u", "--uncompress"}, description = "uncompress files")
     boolean actionUnzip = false;
 
+    @CommandLine.Option(names = {"--verify"}, description = "verify compressed files without writing output")
+    boolean actionVerify = false;
+
+    @CommandLine.Option(names = {"--transcode"},
+            description = "compress files of any format directly, removing S-EBXA compression information")
+    boolean actionTranscode = false;
+
+    @CommandLine.Option(names = {"--stream"}, description = "compress or uncompress standard input to standard output")
+    boolean stream = false;
+
+    /**
+     * 情報の出力形式
+     */
+    @CommandLine.Option(names = {"--format"}, converter = InfoFormatConverter.class,
+            description = "output format of --information: text, json or csv", defaultValue = "text")
+    InfoFormat format = InfoFormat.TEXT;
+
+    /**
+     * 書籍ディレクトリ、または書籍を検索するディレクトリのリスト
+     */
+    @CommandLine.Parameters(description = "book paths, or directories to search for books", arity = "0..*")
+    List<File> bookPaths;
+
     /**
      * 書籍読み込みディレクトリ
      */
-    @CommandLine.Parameters(description = "book path", defaultValue = DEFAULT_BOOK_DIR)
     File bookDir;
 
     /**
@@ -174,6 +365,26 @@ public final class EBZip implements Callable<Integer> {
     @CommandLine.Option(names = {"-S", "--subbook"}, description = "target subbook")
     String[] subbooks;
 
+    /**
+     * 圧縮/解凍ワーカースレッド
+     */
+    private ExecutorService executor;
+
+    /**
+     * メッセージ出力先
+     */
+    private PrintStream stdout;
+
+    /**
+     * 処理結果の集計
+     */
+    private Summary summary;
+
+    /**
+     * テキスト以外の形式で出力するファイル情報
+     */
+    private List<Map<String, Object>> infoRecords;
+
     /**
      * Computes a result, or throws an exception if unable to do so.
      *
@@ -185,7 +396,14 @@ public final class EBZip implements Callable<Integer> {
         if (skips == null) {
             skips = Collections.emptyList();
         }
+        if (stream) {
+            return execStream(System.in, new BufferedOutputStream(System.out));
+        }
         exec();
+        // 失敗したファイルまたは書籍がある場合はエラーとする
+        if (summary.failures > 0) {
+            return 1;
+        }
         return 0;
     }
 
@@ -213,6 +431,254 @@ public final class EBZip implements Callable<Integer> {
         if (actionZip) {
             action = ACTION_ZIP;
         }
+        if (actionVerify) {
+            action = ACTION_VERIFY;
+        }
+        if (actionTranscode) {
+            action = ACTION_TRANSCODE;
+        }
+        if (stdout == null) {
+            stdout = System.out;
+        }
+        summary = new Summary();
+        infoRecords = Collections.synchronizedList(new ArrayList<>());
+        List<File> paths = bookPaths;
+        if (paths == null || paths.isEmpty()) {
+            if (bookDir == null) {
+                bookDir = new File(DEFAULT_BOOK_DIR);
+            }
+            paths = Collections.singletonList(bookDir);
+        }
+        // 書籍の検索
+        List<File> books = new ArrayList<>();
+        List<String> outDirs = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        boolean batch = paths.size() > 1;
+        for (File path : paths) {
+            List<File> found = new ArrayList<>();
+            BookFinder.find(path, found);
+            if (found.isEmpty() || (found.size() == 1 && found.get(0).equals(path))) {
+                if (paths.size() == 1) {
+                    books.add(path);
+                    outDirs.add(outDir);
+                    continue;
+                }
+                found = Collections.singletonList(path);
+            } else {
+                batch = true;
+            }
+            for (File dir : found) {
+                String name;
+                if (dir.equals(path)) {
+                    name = dir.getAbsoluteFile().toPath().normalize().getFileName().toString();
+                } else {
+                    name = path.toPath().relativize(dir.toPath()).toString();
+                }
+                // 同名の書籍ディレクトリは別の出力先にする
+                String unique = BookFinder.uniqueName(name, names);
+                if (!unique.equals(name)) {
+                    System.err.println(PROGRAM + ": output of " + dir.getPath() + " goes to " + unique);
+                }
+                books.add(dir);
+                outDirs.add(new File(outDir, unique).getPath());
+            }
+        }
+        boolean compress = action == ACTION_ZIP || action == ACTION_TRANSCODE;
+        if ((action != ACTION_INFO && threads > 1) || (compress && queueDepth > 0)) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        try {
+            List<FileTask> tasks = new ArrayList<>();
+            for (int i = 0; i < books.size(); i++) {
+                EBZip zip = this;
+                if (batch) {
+                    zip = _derive(books.get(i), outDirs.get(i), stdout);
+                } else {
+                    bookDir = books.get(i);
+                }
+                try {
+                    zip.exec(action, tasks);
+                } catch (EBException e) {
+                    if (!batch) {
+                        throw e;
+                    }
+                    System.err.println(PROGRAM + ": " + books.get(i).getPath() + ": " + e.getMessage());
+                    summary.fail();
+                }
+            }
+            _run(tasks);
+            if (action == ACTION_INFO && format != InfoFormat.TEXT) {
+                try {
+                    if (format == InfoFormat.JSON) {
+                        InfoReport.printJson(stdout, infoRecords);
+                    } else {
+                        InfoReport.printCsv(stdout, infoRecords);
+                    }
+                } catch (IOException e) {
+                    System.err.println(PROGRAM + ": " + e.getMessage());
+                }
+                return;
+            }
+            if (batch && !quiet) {
+                // 全書籍の集計結果の表示
+                stdout.println("==> summary <==");
+                stdout.println(books.size() + " books, " + tasks.size() + " files, "
+                        + summary.failures + " failed");
+                if (summary.inLength > 0) {
+                    double rate = (double) summary.outLength / (double) summary.inLength * 100.0;
+                    stdout.println(summary.inLength + " -> " + summary.outLength + " bytes ("
+                            + FMT.format(rate) + ")");
+                }
+                stdout.println("");
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * 同じオプションで指定された書籍を処理するインスタンスを返します。
+     *
+     * @param dir 書籍ディレクトリ
+     * @param dest 出力先ディレクトリ
+     * @param printStream メッセージ出力先
+     * @return インスタンス
+     */
+    private EBZip _derive(final File dir, final String dest, final PrintStream printStream) {
+        EBZip zip = new EBZip();
+        zip.overwrite = overwrite;
+        zip.keep = keep;
+        zip.level = level;
+        zip.goal = goal;
+        zip.quiet = quiet;
+        zip.threads = threads;
+        zip.jobs = jobs;
+        zip.queueDepth = queueDepth;
+        zip.incremental = incremental;
+        zip.resume = resume;
+        zip.checkpointInterval = checkpointInterval;
+        zip.mmap = mmap;
+        zip.directBuffers = directBuffers;
+        zip.skips = skips;
+        zip.subbooks = subbooks;
+        zip.outDir = dest;
+        zip.bookDir = dir;
+        zip.executor = executor;
+        zip.stdout = printStream;
+        zip.summary = summary;
+        zip.format = format;
+        zip.infoRecords = infoRecords;
+        return zip;
+    }
+
+    /**
+     * 収集したファイルの処理を実行します。
+     * <p>
+     * 同時に処理するファイル数が2以上の場合は、全書籍のファイルを大きい順に
+     * ワーカースレッドで処理します。スライスの圧縮/解凍スレッドは全ファイルで共有します。
+     * 各ファイルのメッセージと情報はファイルごとに保持し、処理の順序によらず
+     * 収集した順に出力します。
+     *
+     * @param tasks ファイルの処理のリスト
+     */
+    private void _run(final List<FileTask> tasks) {
+        if (jobs <= 1) {
+            for (FileTask task : tasks) {
+                task.action.accept(task.zip);
+            }
+            return;
+        }
+        List<Integer> sorted = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            sorted.add(i);
+        }
+        sorted.sort(Comparator.comparingLong((Integer i) -> tasks.get(i).size).reversed());
+        List<Future<byte[]>> futures = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        List<List<Map<String, Object>>> records = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            records.add(new ArrayList<>());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        try {
+            for (int i : sorted) {
+                FileTask task = tasks.get(i);
+                List<Map<String, Object>> taskRecords = records.get(i);
+                futures.set(i, pool.submit(() -> {
+                    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                    PrintStream ps = new PrintStream(buf);
+                    EBZip zip = task.zip._derive(task.zip.bookDir, task.zip.outDir, ps);
+                    zip.infoRecords = taskRecords;
+                    task.action.accept(zip);
+                    ps.flush();
+                    return buf.toByteArray();
+                }));
+            }
+            // 完了したファイルから収集した順に出力する
+            for (int i = 0; i < tasks.size(); i++) {
+                byte[] out;
+                try {
+                    out = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+                stdout.write(out, 0, out.length);
+                stdout.flush();
+                infoRecords.addAll(records.get(i));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * ファイルに対する処理。
+     */
+    private static final class FileTask {
+        private final EBZip zip;
+        private final long size;
+        private final Consumer<EBZip> action;
+
+        FileTask(final EBZip zip, final long size, final Consumer<EBZip> action) {
+            this.zip = zip;
+            this.size = size;
+            this.action = action;
+        }
+    }
+
+    /**
+     * 処理結果の集計。
+     */
+    private static final class Summary {
+        private long inLength = 0;
+        private long outLength = 0;
+        private int failures = 0;
+
+        synchronized void add(final long in, final long out) {
+            inLength += in;
+            outLength += out;
+        }
+
+        synchronized void fail() {
+            failures++;
+        }
+    }
+
+    /**
+     * 指定されたアクションを書籍の各ファイルに対して実行するよう、処理のリストに追加します。
+     *
+     * @param action アクション
+     * @param tasks 処理のリスト
+     * @throws EBException 書籍の初期化中に例外が発生した場合
+     */
+    private void exec(final int action, final List<FileTask> tasks) throws EBException {
         Book book = new Book(bookDir);
         File root = bookDir;
         SubBook[] sub = book.getSubBooks();
@@ -232,32 +698,34 @@ public final class EBZip implements Callable<Integer> {
                 }
             }
             if (book.getBookType() == Book.DISC_EB) {
-                file = aSub.getTextFile();
-                _act(action, file);
-                if (action == ACTION_UNZIP
-                        && file.getFormat() == EBFormat.FORMAT_SEBXA) {
-                    // SEBXA圧縮フラグの削除
-                    _fixSEBXA(_getOutFile(file, ".org"));
-                }
+                EBFile text = aSub.getTextFile();
+                tasks.add(new FileTask(this, text.getFile().length(), zip -> {
+                    zip._act(action, text);
+                    if (action == ACTION_UNZIP
+                            && text.getFormat() == EBFormat.FORMAT_SEBXA) {
+                        // SEBXA圧縮フラグの削除
+                        zip._fixSEBXA(zip._getOutFile(text, ".org"));
+                    }
+                }));
             } else {
                 // 本文ファイル
                 file = aSub.getTextFile();
-                _act(action, file);
+                _add(tasks, action, file);
                 if (file.getName().equalsIgnoreCase("honmon2")) {
                     // 音声、画像ファイル
                     if (skips.contains(SkipTypes.SOUND) && !file.getName().equalsIgnoreCase("honmon2")) {
                         file = aSub.getSoundFile();
                         if (file != null) {
-                            _act(action, file);
+                            _add(tasks, action, file);
                         }
                     }
                     if (!skips.contains(SkipTypes.GRAPHIC)) {
                         file = aSub.getGraphicFile();
                         if (file != null && !file.getName().equalsIgnoreCase("honmon2")) {
-                            if (action == ACTION_ZIP) {
-                                _copy(file);
+                            if (action == ACTION_ZIP || action == ACTION_TRANSCODE) {
+                                _addCopy(tasks, file);
                             } else {
-                                _act(action, file);
+                                _add(tasks, action, file);
                             }
                         }
                     }
@@ -268,20 +736,21 @@ public final class EBZip implements Callable<Integer> {
                         ExtFont font = aSub.getFont(j);
                         if (font.hasWideFont()) {
                             file = font.getWideFontFile();
-                            _act(action, file);
+                            _add(tasks, action, file);
                         }
                         if (font.hasNarrowFont()) {
                             file = font.getNarrowFontFile();
-                            _act(action, file);
+                            _add(tasks, action, file);
                         }
                     }
                 }
                 // 動画ファイル
-                if (!skips.contains(SkipTypes.MOVIE) && action != ACTION_INFO) {
+                if (!skips.contains(SkipTypes.MOVIE) && action != ACTION_INFO && action != ACTION_VERIFY) {
                     File[] files = aSub.getMovieFileList();
                     if (files != null) {
                         for (File file1 : files) {
-                            _copy(_getOutFile(file1, null), file1);
+                            tasks.add(new FileTask(this, file1.length(),
+                                    zip -> zip._copy(zip._getOutFile(file1, null), file1)));
                         }
                     }
                 }
@@ -290,25 +759,46 @@ public final class EBZip implements Callable<Integer> {
         if (book.getBookType() == Book.DISC_EB) {
             try {
                 file = new EBFile(root, "language", EBFormat.FORMAT_PLAIN);
-                _act(action, file);
+                _add(tasks, action, file);
             } catch (EBException ignored) {
             }
             file = new EBFile(root, "catalog", EBFormat.FORMAT_PLAIN);
-            if (action == ACTION_ZIP) {
-                _copy(file);
+            if (action == ACTION_ZIP || action == ACTION_TRANSCODE) {
+                _addCopy(tasks, file);
             } else {
-                _act(action, file);
+                _add(tasks, action, file);
             }
         } else {
             file = new EBFile(root, "catalogs", EBFormat.FORMAT_PLAIN);
-            if (action == ACTION_ZIP) {
-                _copy(file);
+            if (action == ACTION_ZIP || action == ACTION_TRANSCODE) {
+                _addCopy(tasks, file);
             } else {
-                _act(action, file);
+                _add(tasks, action, file);
             }
         }
     }
 
+    /**
+     * 指定されたアクションを処理のリストに追加します。
+     *
+     * @param tasks 処理のリスト
+     * @param action アクション
+     * @param file ファイル
+     */
+    private void _add(final List<FileTask> tasks, final int action, final EBFile file) {
+        tasks.add(new FileTask(this, file.getFile().length(), zip -> zip._act(action, file)));
+    }
+
+    /**
+     * 指定ファイルのコピーを処理のリストに追加します。
+     *
+     * @param tasks 処理のリスト
+     * @param file ファイル
+     */
+    private void _addCopy(final List<FileTask> tasks, final EBFile file) {
+        tasks.add(new FileTask(this, file.getFile().length(), zip -> zip._copy(file)));
+    }
+
     /**
      * 指定されたアクションを実行します。
      *
@@ -318,7 +808,10 @@ public final class EBZip implements Callable<Integer> {
     private void _act(final int action, final EBFile file) {
         switch (action) {
             case ACTION_ZIP:
-                _zip(file);
+                _zip(file, false);
+                break;
+            case ACTION_TRANSCODE:
+                _zip(file, file.getFormat() == EBFormat.FORMAT_SEBXA);
                 break;
             case ACTION_UNZIP:
                 _unzip(file);
@@ -326,6 +819,9 @@ public final class EBZip implements Callable<Integer> {
             case ACTION_INFO:
                 _info(file);
                 break;
+            case ACTION_VERIFY:
+                _verify(file);
+                break;
             default:
         }
     }
@@ -353,238 +849,180 @@ public final class EBZip implements Callable<Integer> {
      * index_length = (N + 1) * index_size
      *
      * @param file ファイル
+     * @param fixSEBXA インデックスページからS-EBXA圧縮情報を取り除く場合はtrue
      */
-    private void _zip(final EBFile file) throws SecurityException {
+    private void _zip(final EBFile file, final boolean fixSEBXA) throws SecurityException {
         _mkdir(file);
 
         File f = _getOutFile(file, ".ebz");
         if (!quiet) {
             // ファイル名の出力
-            System.out.println("==> compress " + file.getPath() + " <==");
-            System.out.println("output to " + f.getPath());
+            stdout.println("==> compress " + file.getPath() + " <==");
+            stdout.println("output to " + f.getPath());
         }
 
         if (f.equals(file.getFile())) {
             if (!quiet) {
-                System.out.println("the input and output files are the same, skipped.");
-                System.out.println("");
+                stdout.println("the input and output files are the same, skipped.");
+                stdout.println("");
             }
             return;
         }
 
-        if (f.exists() && !overwrite) {
+        // 差分圧縮では既存のファイルを参照しながら出力する
+        boolean update = incremental && f.exists();
+        if (f.exists() && !overwrite && !update) {
             return;
         }
+        // 一時ファイルに出力し、完了後に置き換える
+        File out = new File(f.getPath() + ".tmp");
+        File checkpointFile = new File(f.getPath() + ".ckpt");
 
         FileChannel channel = null;
+        MappedSliceSource source = null;
+        IncrementalBase base = null;
+        boolean completed = false;
         try (BookInputStream bis = file.getInputStream()) {
-            int sliceSize = BookInputStream.PAGE_SIZE << level;
             long fileSize = bis.getFileSize();
-            int indexSize = calcIndexSize(fileSize);
-            int totalSlice = (int) ((fileSize + sliceSize - 1) / sliceSize);
-            long indexLength = (long) (totalSlice + 1) * indexSize;
-            byte[] in = new byte[sliceSize];
-            byte[] out = new byte[sliceSize + 1024];
-            long slicePos = EBZipConstants.EBZIP_HEADER_SIZE + indexLength;
-
-            // ヘッダとインデックスのダミーデータを書き込む
-            channel = new FileOutputStream(f).getChannel();
-            fillZeroHeader(channel, sliceSize, slicePos);
-
-            long inTotalLength = 0;
-            long outTotalLength = 0;
-            int interval = 1024 >>> level;
-            if (((totalSlice + 999) / 1000) > interval) {
-                interval = (totalSlice + 999) / 1000;
+            Checkpoint checkpoint = null;
+            if (resume) {
+                checkpoint = Checkpoint.read(checkpointFile);
+                if (checkpoint != null && (!checkpoint.matches(file.getFile(), fileSize, level)
+                        || checkpoint.getSlices() == 0 || out.length() < checkpoint.getEndPosition())) {
+                    checkpoint = null;
+                }
             }
-            Adler32 crc32 = new Adler32();
-            Deflater def = new Deflater(Deflater.BEST_COMPRESSION);
-            for (int i = 0; i < totalSlice; i++) {
-                int inLen = readSliceData(bis, in, sliceSize, inTotalLength, crc32, file);
-                int outLen = compressAndOutputSliceData(in, inLen, def, channel, sliceSize);
-                long nextPos = slicePos + outLen;
-                if (indexSize >= 2 && indexSize <= 5) {
-                    toBigEndian(out, 0, slicePos, indexSize);
-                    toBigEndian(out, indexSize, nextPos, indexSize);
+            CompressionSetting setting = CompressionSetting.of(level);
+            if (checkpoint != null) {
+                setting = checkpoint.getSetting();
+            } else if (level == LEVEL_AUTO) {
+                setting = _selectSetting(bis, f, update);
+                if (!quiet) {
+                    stdout.println("selected " + setting);
                 }
-                // インデックス情報の書き込み
-                assert channel != null;
-                channel.position(EBZipConstants.EBZIP_HEADER_SIZE + (long) i * indexSize);
-                channel.write(ByteBuffer.wrap(out, 0, indexSize * 2));
+            }
+            int sliceSize = setting.getSliceSize();
 
-                inTotalLength += inLen;
-                outTotalLength += outLen + indexSize;
-                slicePos = nextPos;
+            // ヘッダとインデックスは全スライスの書き込み後にまとめて書き込む
+            if (checkpoint != null) {
+                channel = FileChannel.open(out.toPath(), StandardOpenOption.WRITE);
+                channel.truncate(checkpoint.getEndPosition());
+            } else {
+                Files.deleteIfExists(checkpointFile.toPath());
+                channel = new FileOutputStream(out).getChannel();
+            }
 
-                // 進捗の表示
-                if (!quiet && (i % interval) + 1 == interval) {
-                    double rate = (double) (i + 1) / (double) totalSlice * 100.0;
-                    System.out.println(FMT.format(rate) + " done ("
-                            + inTotalLength + " / "
-                            + fileSize + " bytes)");
+            EBZipWriter writer = new EBZipWriter(channel, file, setting, fileSize);
+            if (!quiet) {
+                writer.setProgress(stdout);
+            }
+            writer.setExecutor(executor, threads, queueDepth);
+            writer.setDirectBuffers(directBuffers);
+            writer.setFixSEBXA(fixSEBXA);
+            if (checkpointInterval > 0) {
+                writer.setCheckpoint(checkpointFile, (long) (checkpointInterval * 1_000_000_000L));
+            }
+            if (mmap && file.getFormat() == EBFormat.FORMAT_PLAIN) {
+                source = new MappedSliceSource(file.getFile(), sliceSize);
+                writer.setSource(source);
+            }
+            if (update) {
+                base = IncrementalBase.open(f, sliceSize, threads);
+                if (base == null && !quiet) {
+                    stdout.println("compression level differs from existing file, compress all slices.");
                 }
+                writer.setBase(base);
             }
-            def.end();
-            outputHeader(channel, fileSize, crc32);
+            if (checkpoint != null) {
+                try {
+                    writer.resumeFrom(bis, checkpoint);
+                } catch (EBException | IOException e) {
+                    // 再開できないチェックポイントは一時ファイルとともに削除する
+                    Files.deleteIfExists(checkpointFile.toPath());
+                    throw e;
+                }
+            }
+            writer.write(bis);
+            completed = true;
             long inRealFileSize = bis.getRealFileSize();
             // 結果の表示
-            outTotalLength += EBZipConstants.EBZIP_HEADER_SIZE + indexSize;
-            printZipResult(inTotalLength, outTotalLength, fileSize, inRealFileSize);
+            printZipResult(writer.getInTotalLength(), writer.getOutTotalLength(), fileSize, inRealFileSize);
+            summary.add(inRealFileSize, writer.getOutTotalLength());
+            if (base != null && !quiet) {
+                stdout.println(base.getReusedCount() + " / " + writer.getSliceCount()
+                        + " slices reused");
+            }
         } catch (EBException | IOException e) {
             System.err.println(PROGRAM + ": " + e.getMessage());
+            completed = false;
         } finally {
-            if (channel != null) {
-                try {
-                    channel.close();
-                } catch (IOException ignored) {
-                }
+            if (!completed) {
+                summary.fail();
             }
+            _close(channel);
+            _close(source);
+            _close(base);
         }
-        // オリジナルファイルの削除
-        if (!keep) {
-            _delete(file.getFile());
+        boolean renamed = false;
+        if (completed) {
+            renamed = _rename(out, f);
+            if (!renamed) {
+                summary.fail();
+            }
+        }
+        if (renamed) {
+            if (checkpointFile.exists()) {
+                _delete(checkpointFile);
+            }
+            // オリジナルファイルの削除
+            if (!keep) {
+                _delete(file.getFile());
+            }
+        } else if (checkpointFile.exists()) {
+            // 一時ファイルはチェックポイントから再開するために残す
+            System.err.println(PROGRAM + ": progress saved to " + checkpointFile.getPath()
+                    + ", run again with --resume to continue");
+        } else if (out.exists()) {
+            _delete(out);
         }
         if (!quiet) {
-            System.out.println("");
+            stdout.println("");
         }
     }
 
-    private void toBigEndian(final byte[] out, final int off, final long val, final int len) {
-        int shift = 0;
-        for (int i = len; i > 0; i--) {
-            out[off + i - 1] = (byte) ((val >>> shift) & 0xff);
-            shift += 8;
+    /**
+     * 標本を試し圧縮して、ファイルに適した圧縮設定を選択します。
+     * <p>
+     * 差分圧縮では、既存の圧縮ファイルのスライスを再利用できるよう、
+     * 既存ファイルの圧縮レベルの中からDeflaterの設定を選択します。
+     *
+     * @param bis 入力ストリーム
+     * @param f 既存の圧縮ファイル
+     * @param update 差分圧縮の場合はtrue
+     * @return 圧縮設定
+     */
+    private CompressionSetting _selectSetting(final BookInputStream bis, final File f, final boolean update)
+            throws EBException, IOException {
+        int min = 0;
+        int max = EBZipConstants.EBZIP_MAX_LEVEL;
+        if (update) {
+            try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                min = EBZipHeader.read(channel).getLevel();
+                max = min;
+            } catch (IOException ignored) {
+            }
         }
-    }
-
-    private int calcIndexSize(final long fileSize) {
-        if (fileSize < (1L << 16)) {
-            return 2;
-        } else if (fileSize < (1L << 24)) {
-            return 3;
-        } else if (fileSize < (1L << 32)) {
-            return 4;
-        }
-        return 5;
-    }
-
-    // ヘッダとインデックスのダミーデータを書き込む
-    private void fillZeroHeader(final FileChannel channel, final int sliceSize, final long off)
-            throws IOException {
-        byte[] out = new byte[sliceSize];
-        Arrays.fill(out, 0, out.length, (byte) 0);
-        long i;
-        for (i = off; i >= sliceSize; i = i - sliceSize) {
-            channel.write(ByteBuffer.wrap(out, 0, sliceSize));
-        }
-        if (i > 0) {
-            channel.write(ByteBuffer.wrap(out, 0, (int) i));
-        }
-    }
-
-    private int readSliceData(final BookInputStream bis, final byte[] in, final int sliceSize,
-                              final long inTotalLength, final Adler32 crc32, final EBFile file)
-            throws EBException {
-        bis.seek(inTotalLength);
-        int inLen = bis.read(in, 0, in.length);
-        if (inLen < 0) {
-            System.err.println(PROGRAM
-                    + ": failed to read the file ("
-                    + file.getPath() + ")");
-            return -1;
-        } else if (inLen == 0) {
-            System.err.println(PROGRAM + ": unexpected EOF ("
-                    + file.getPath() + ")");
-            return -1;
-        } else if (inLen != in.length) {
-            long fileSize = bis.getFileSize();
-            if (inTotalLength + inLen != fileSize) {
-                System.err.println(PROGRAM + ": unexpected EOF ("
-                        + file.getPath() + ")");
-                return -1;
-            }
-        }
-        crc32.update(in, 0, inLen);
-
-        // 最終スライスでスライスサイズに満たない場合は0で埋める
-        if (inLen < sliceSize) {
-            Arrays.fill(in, inLen, in.length, (byte) 0);
-            inLen = sliceSize;
-        }
-
-        return inLen;
-    }
-
-    private int compressAndOutputSliceData(final byte[] in, final int inLen, final Deflater def,
-                                           final FileChannel channel, final int sliceSize)
-            throws IOException {
-        byte[] out = new byte[sliceSize];
-        def.reset();
-        def.setInput(in, 0, inLen);
-        def.finish();
-        int outLen = 0;
-        while (!def.needsInput()) {
-            int n = def.deflate(out, outLen, out.length - outLen, Deflater.SYNC_FLUSH);
-            outLen += n;
-        }
-        // 圧縮スライスがオリジナルより大きい場合はオリジナルを書き込む
-        if (outLen >= sliceSize) {
-            System.arraycopy(in, 0, out, 0, sliceSize);
-            outLen = sliceSize;
-        }
-        // 圧縮したスライスデータの書き込み
-        // ファイルの末尾に追加
-        channel.position(channel.size());
-        channel.write(ByteBuffer.wrap(out, 0, outLen));
-        return outLen;
-    }
-
-    private void outputHeader(final FileChannel channel, final long fileSize, final Adler32 crc32)
-            throws IOException {
-        byte[] out = new byte[EBZipConstants.EBZIP_HEADER_SIZE];
-        // ヘッダ情報の作成
-        out[0] = (byte) 'E';
-        out[1] = (byte) 'B';
-        out[2] = (byte) 'Z';
-        out[3] = (byte) 'i';
-        out[4] = (byte) 'p';
-        if (fileSize < (1L << 32)) {
-            out[5] = (byte) ((1 << 4) | (level & 0x0f));
-        } else {
-            out[5] = (byte) ((2 << 4) | (level & 0x0f));
-        }
-        out[6] = (byte) 0;
-        out[7] = (byte) 0;
-        out[8] = (byte) 0;
-        out[9] = (byte) ((fileSize >>> 32) & 0xff);
-        out[10] = (byte) ((fileSize >>> 24) & 0xff);
-        out[11] = (byte) ((fileSize >>> 16) & 0xff);
-        out[12] = (byte) ((fileSize >>> 8) & 0xff);
-        out[13] = (byte) (fileSize & 0xff);
-        long crc = crc32.getValue();
-        out[14] = (byte) ((crc >>> 24) & 0xff);
-        out[15] = (byte) ((crc >>> 16) & 0xff);
-        out[16] = (byte) ((crc >>> 8) & 0xff);
-        out[17] = (byte) (crc & 0xff);
-        long mtime = System.currentTimeMillis();
-        out[18] = (byte) ((mtime >>> 24) & 0xff);
-        out[19] = (byte) ((mtime >>> 16) & 0xff);
-        out[20] = (byte) ((mtime >>> 8) & 0xff);
-        out[21] = (byte) (mtime & 0xff);
-
-        // ヘッダ情報の書き込み
-        channel.position(0);
-        channel.write(ByteBuffer.wrap(out, 0, EBZipConstants.EBZIP_HEADER_SIZE));
+        return new LevelSelector(goal).select(bis, min, max);
     }
 
     private void printZipResult(final long inTotalLength, final long outTotalLength,
                                 final long fileSize, final long inRealFileSize) {
         if (!quiet) {
-            System.out.println("completed (" + fileSize
+            stdout.println("completed (" + fileSize
                     + " / " + fileSize + " bytes)");
             if (inTotalLength != 0) {
                 double rate = (double) (outTotalLength) / (double) inRealFileSize * 100.0;
-                System.out.println(inRealFileSize + " -> "
+                stdout.println(inRealFileSize + " -> "
                         + outTotalLength + " bytes ("
                         + FMT.format(rate) + ")");
             }
@@ -612,26 +1050,73 @@ public final class EBZip implements Callable<Integer> {
         File f = _getOutFile(file, suffix);
         if (!quiet) {
             // ファイル名の出力
-            System.out.println("==> uncompress " + file.getPath() + " <==");
-            System.out.println("output to " + f.getPath());
+            stdout.println("==> uncompress " + file.getPath() + " <==");
+            stdout.println("output to " + f.getPath());
         }
 
         if (f.equals(file.getFile())) {
             if (!quiet) {
-                System.out.println("the input and output files are the same, skipped.");
-                System.out.println("");
+                stdout.println("the input and output files are the same, skipped.");
+                stdout.println("");
             }
             return;
         }
         if (f.exists() && !overwrite) {
             return;
         }
+        // 出力ファイルを作成する前にヘッダとインデックスの大きさを確認する
+        if (file.getFormat() == EBFormat.FORMAT_EBZIP) {
+            try (FileChannel in = FileChannel.open(file.getFile().toPath(), StandardOpenOption.READ)) {
+                EBZipHeader.read(in).checkIndexLength(in.size());
+            } catch (IOException e) {
+                System.err.println(PROGRAM + ": " + e.getMessage() + " (" + file.getPath() + ")");
+                summary.fail();
+                return;
+            }
+        }
+
+        // 一時ファイルに出力し、CRCの確認後に置き換える
+        File out = new File(f.getPath() + ".tmp");
+        boolean completed;
+        if (executor != null && file.getFormat() == EBFormat.FORMAT_EBZIP) {
+            completed = unzipParallel(file, out);
+        } else {
+            completed = unzipSequential(file, out);
+        }
+        if (completed) {
+            completed = _rename(out, f);
+        }
+        if (!completed) {
+            if (out.exists()) {
+                _delete(out);
+            }
+            summary.fail();
+            return;
+        }
+        summary.add(file.getFile().length(), f.length());
+        // オリジナルファイルの削除
+        if (!keep) {
+            _delete(file.getFile());
+        }
+        if (!quiet) {
+            stdout.println("");
+        }
+    }
 
+    /**
+     * 1スレッドでスライスを順に解凍します。
+     *
+     * @param file 入力ファイル
+     * @param f 出力ファイル
+     * @return 解凍とCRCの確認に成功した場合はtrue
+     */
+    private boolean unzipSequential(final EBFile file, final File f) {
         BookInputStream bis = null;
         FileChannel channel = null;
         try {
             bis = file.getInputStream();
             byte[] b = new byte[bis.getSliceSize()];
+            ByteBuffer buf = ByteBuffer.wrap(b);
             channel = new FileOutputStream(f).getChannel();
             long totalLength = 0;
             int totalSlice = (int) ((bis.getFileSize()
@@ -650,38 +1135,41 @@ public final class EBZip implements Callable<Integer> {
                     System.err.println(PROGRAM
                             + ": failed to read the file ("
                             + f.getPath() + ")");
-                    return;
+                    return false;
                 } else if (n == 0) {
                     System.err.println(PROGRAM + ": unexpected EOF ("
                             + f.getPath() + ")");
-                    return;
+                    return false;
                 } else if (n != b.length
                         && totalLength + n != bis.getFileSize()) {
                     System.err.println(PROGRAM + ": unexpected EOF ("
                             + f.getPath() + ")");
-                    return;
+                    return false;
                 }
                 // CRCの更新
                 if (bis instanceof EBZipInputStream) {
                     crc32.update(b, 0, n);
                 }
                 // データの書き込み
-                channel.write(ByteBuffer.wrap(b, 0, n));
+                buf.clear().limit(n);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
                 totalLength += n;
 
                 // 進捗の表示
                 if (!quiet && (i % interval) + 1 == interval) {
                     double rate = (double) (i + 1) / (double) totalSlice * 100.0;
-                    System.out.println(FMT.format(rate) + " done ("
+                    stdout.println(FMT.format(rate) + " done ("
                             + totalLength + " / "
                             + bis.getFileSize() + " bytes)");
                 }
             }
             // 結果の表示
             if (!quiet) {
-                System.out.println("completed (" + bis.getFileSize()
+                stdout.println("completed (" + bis.getFileSize()
                         + " / " + bis.getFileSize() + " bytes)");
-                System.out.println(bis.getRealFileSize() + " -> "
+                stdout.println(bis.getRealFileSize() + " -> "
                         + totalLength + " bytes");
             }
 
@@ -689,11 +1177,12 @@ public final class EBZip implements Callable<Integer> {
             if (bis instanceof EBZipInputStream) {
                 if (crc32.getValue() != ((EBZipInputStream) bis).getCRC()) {
                     System.err.println(PROGRAM + ": CRC error (" + f.getPath() + ")");
-                    return;
+                    return false;
                 }
             }
         } catch (EBException | IOException | SecurityException e) {
             System.err.println(PROGRAM + ": " + e.getMessage());
+            return false;
         } finally {
             if (bis != null) {
                 bis.close();
@@ -705,61 +1194,227 @@ public final class EBZip implements Callable<Integer> {
                 }
             }
         }
-        // オリジナルファイルの削除
-        if (!keep) {
-            _delete(file.getFile());
+        return true;
+    }
+
+    /**
+     * EBZIP形式のファイルをワーカースレッドで並列に解凍します。
+     * <p>
+     * インデックスを一度だけ読み込み、各スライスを伸張して出力ファイルの該当位置に直接書き込みます。
+     * CRCはスライスごとのAdler-32値を連結して確認します。
+     *
+     * @param file 入力ファイル
+     * @param f 出力ファイル
+     * @return 解凍とCRCの確認に成功した場合はtrue
+     */
+    private boolean unzipParallel(final EBFile file, final File f) {
+        try (FileChannel in = FileChannel.open(file.getFile().toPath(), StandardOpenOption.READ);
+             RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            EBZipHeader header = EBZipHeader.read(in);
+            EBZipIndex index = EBZipIndex.read(in, header);
+            long fileSize = header.getFileSize();
+            int totalSlice = index.getSliceCount();
+            // 出力ファイルの領域を確保
+            raf.setLength(fileSize);
+            FileChannel out = raf.getChannel();
+            int interval;
+            if (((totalSlice + 999) / 1000) > 1024) {
+                interval = (totalSlice + 999) / 1000;
+            } else {
+                interval = 1024;
+            }
+            long crc = new ParallelInflater(executor, threads).inflate(in, header, index,
+                    (inflater, pos, len) -> inflater.writeTo(out, pos, len),
+                    (done, totalLength) -> {
+                        // 進捗の表示
+                        if (!quiet && ((done - 1) % interval) + 1 == interval) {
+                            double rate = (double) done / (double) totalSlice * 100.0;
+                            stdout.println(FMT.format(rate) + " done ("
+                                    + totalLength + " / "
+                                    + fileSize + " bytes)");
+                        }
+                    });
+            // 結果の表示
+            if (!quiet) {
+                stdout.println("completed (" + fileSize
+                        + " / " + fileSize + " bytes)");
+                stdout.println(in.size() + " -> "
+                        + fileSize + " bytes");
+            }
+
+            // CRCの確認
+            if (crc != header.getCRC()) {
+                System.err.println(PROGRAM + ": CRC error (" + f.getPath() + ")");
+                return false;
+            }
+        } catch (IOException | SecurityException e) {
+            System.err.println(PROGRAM + ": " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println(PROGRAM + ": interrupted (" + f.getPath() + ")");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 指定されたファイルを出力せずに検査します。
+     * <p>
+     * EBZIP形式のファイルについて、ヘッダ、インデックスの整合性を確認した後、
+     * 全スライスを作業バッファに伸張してCRCを確認します。
+     *
+     * @param file ファイル
+     */
+    private void _verify(final EBFile file) {
+        if (!quiet) {
+            // ファイル名の出力
+            stdout.println("==> verify " + file.getPath() + " <==");
+        }
+        if (file.getFormat() != EBFormat.FORMAT_EBZIP) {
+            if (!quiet) {
+                stdout.println("not compressed with ebzip, skipped.");
+                stdout.println("");
+            }
+            return;
+        }
+        EBZipVerifier verifier = new EBZipVerifier(executor, threads);
+        try (FileChannel in = FileChannel.open(file.getFile().toPath(), StandardOpenOption.READ)) {
+            EBZipHeader header = verifier.verify(in);
+            if (!quiet) {
+                stdout.println("verified (" + header.getFileSize() + " bytes, " + header.getTotalSlice()
+                        + " slices, ebzip level " + header.getLevel() + ")");
+            }
+            summary.add(in.size(), header.getFileSize());
+        } catch (IOException | SecurityException e) {
+            System.err.println(PROGRAM + ": " + e.getMessage() + " (" + file.getPath() + ")");
+            summary.fail();
+            if (!quiet) {
+                stdout.println("failed: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            summary.fail();
         }
         if (!quiet) {
-            System.out.println("");
+            stdout.println("");
         }
     }
 
+    /**
+     * 入力ストリームのデータを圧縮または伸張して出力ストリームに書き込みます。
+     * <p>
+     * 出力ストリームにはデータのみを書き込み、エラーは標準エラー出力に表示します。
+     *
+     * @param in 入力ストリーム
+     * @param out 出力ストリーム
+     * @return 終了コード
+     */
+    int execStream(final InputStream in, final OutputStream out) {
+        if (actionInfo || actionVerify || (level == LEVEL_AUTO && (actionZip || !actionUnzip))) {
+            System.err.println(PROGRAM + ": --stream supports only compression with a fixed level and uncompression");
+            return 2;
+        }
+        try {
+            if (actionUnzip && !actionZip) {
+                EBZipStream.decompress(in, out);
+            } else {
+                EBZipStream.compress(in, out, CompressionSetting.of(level), EBZipStream.DEFAULT_SPOOL_MEMORY);
+            }
+        } catch (IOException e) {
+            System.err.println(PROGRAM + ": " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
     /**
      * 指定されたファイルの情報を出力します。
+     * <p>
+     * 無圧縮ファイルはファイルサイズを、EBZIP形式のファイルは先頭22バイトのヘッダのみを
+     * 読み込みます。その他の形式は入力ストリームを生成してサイズを取得します。
+     * テキスト以外の出力形式では、結果を記録して全ファイルの処理後にまとめて出力します。
      *
      * @param file ファイル
      */
     private void _info(final EBFile file) {
-        // ファイル名の出力
-        System.out.println("==> " + file.getPath() + " <==");
-        try (BookInputStream bis = file.getInputStream()) {
-            // ファイルサイズ、圧縮率の出力
-            StringBuilder buf = new StringBuilder();
-            String text = null;
+        if (format == InfoFormat.TEXT) {
+            // ファイル名の出力
+            stdout.println("==> " + file.getPath() + " <==");
+        }
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("book", bookDir.getPath());
+        info.put("file", file.getPath());
+        String text = null;
+        long size;
+        long real;
+        try {
             switch (file.getFormat()) {
                 case FORMAT_PLAIN:
-                    buf.append(bis.getFileSize());
-                    buf.append(" bytes (not compressed)");
+                    info.put("format", "plain");
+                    size = file.getFile().length();
+                    real = size;
                     break;
                 case FORMAT_EBZIP:
-                    text = "ebzip level " + ((EBZipInputStream) bis).getLevel() + " compression)";
-                    break;
-                case FORMAT_SEBXA:
-                    text = "S-EBXA compression)";
+                    info.put("format", "ebzip");
+                    try (FileChannel channel = FileChannel.open(file.getFile().toPath(), StandardOpenOption.READ)) {
+                        EBZipHeader header = EBZipHeader.read(channel);
+                        size = header.getFileSize();
+                        real = channel.size();
+                        info.put("level", header.getLevel());
+                        text = "ebzip level " + header.getLevel() + " compression)";
+                    }
                     break;
                 default:
-                    text = "EPWING compression)";
-            }
-            if (text != null) {
-                long size = bis.getFileSize();
-                long real = bis.getRealFileSize();
-                buf.append(size).append(" -> ");
-                buf.append(real).append(" bytes (");
-                if (size == 0) {
-                    System.out.print("empty original file, ");
-                } else {
-                    double rate = (double) real / (double) size * 100.0;
-                    buf.append(FMT.format(rate));
-                    buf.append(", ");
-                }
-                buf.append(text);
+                    if (file.getFormat() == EBFormat.FORMAT_SEBXA) {
+                        info.put("format", "sebxa");
+                        text = "S-EBXA compression)";
+                    } else {
+                        info.put("format", "epwing");
+                        text = "EPWING compression)";
+                    }
+                    try (BookInputStream bis = file.getInputStream()) {
+                        size = bis.getFileSize();
+                        real = bis.getRealFileSize();
+                    }
+                    break;
             }
-            System.out.println(buf.toString());
-            System.out.println("");
-        } catch (EBException e) {
+        } catch (EBException | IOException e) {
             System.err.println(PROGRAM + ": " + e.getMessage());
-            System.out.println("");
+            if (format == InfoFormat.TEXT) {
+                stdout.println("");
+            } else {
+                info.put("error", e.getMessage());
+                infoRecords.add(info);
+            }
+            summary.fail();
+            return;
+        }
+        info.put("size", size);
+        info.put("compressedSize", real);
+        if (format != InfoFormat.TEXT) {
+            infoRecords.add(info);
+            return;
         }
+        // ファイルサイズ、圧縮率の出力
+        StringBuilder buf = new StringBuilder();
+        if (text == null) {
+            buf.append(size);
+            buf.append(" bytes (not compressed)");
+        } else {
+            buf.append(size).append(" -> ");
+            buf.append(real).append(" bytes (");
+            if (size == 0) {
+                stdout.print("empty original file, ");
+            } else {
+                double rate = (double) real / (double) size * 100.0;
+                buf.append(FMT.format(rate));
+                buf.append(", ");
+            }
+            buf.append(text);
+        }
+        stdout.println(buf.toString());
+        stdout.println("");
     }
 
     /**
@@ -769,60 +1424,21 @@ public final class EBZip implements Callable<Integer> {
      */
     private void _fixSEBXA(final File file) {
         if (!quiet) {
-            System.out.println("==> fix " + file.getPath() + " <==");
+            stdout.println("==> fix " + file.getPath() + " <==");
         }
 
-        FileChannel channel = null;
         boolean err = false;
         try {
-            channel = new RandomAccessFile(file, "rw").getChannel();
-
-            // インデックスページをメモリにマッピング
-            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE,
-                    0, BookInputStream.PAGE_SIZE);
-
-            // 0x12/0x22のインデックスの取り除き
-            int indexCount = buf.get(1) & 0xff;
-            int removeCount = 0;
-            int inOff = 16;
-            int outOff = 16;
-            for (int i = 0; i < indexCount; i++) {
-                int index = buf.get(inOff) & 0xff;
-                if (index == 0x21 || index == 0x22) {
-                    removeCount++;
-                } else {
-                    if (inOff != outOff) {
-                        for (int j = 0; j < 16; j++) {
-                            buf.put(outOff + j, buf.get(inOff + j));
-                        }
-                    }
-                    outOff += 16;
-                }
-                inOff += 16;
-            }
-            for (int i = 0; i < removeCount; i++) {
-                for (int j = 0; j < 16; j++) {
-                    buf.put(outOff + j, (byte) 0);
-                }
-                outOff += 16;
-            }
-            buf.force();
+            SEBXAIndexPage.removeCompressionIndex(file);
         } catch (IOException | SecurityException e) {
             System.err.println(PROGRAM + ": " + e.getMessage());
             err = true;
-        } finally {
-            if (channel != null) {
-                try {
-                    channel.close();
-                } catch (IOException ignored) {
-                }
-            }
         }
         if (!quiet) {
             if (!err) {
-                System.out.println("complated");
+                stdout.println("complated");
             }
-            System.out.println("");
+            stdout.println("");
         }
     }
 
@@ -916,14 +1532,14 @@ public final class EBZip implements Callable<Integer> {
         _mkdir(file2);
         if (!quiet) {
             // ファイル名の出力
-            System.out.println("==> copy " + file1.getPath() + " <==");
-            System.out.println("output to " + file2.getPath());
+            stdout.println("==> copy " + file1.getPath() + " <==");
+            stdout.println("output to " + file2.getPath());
         }
 
         if (file1.equals(file2)) {
             if (!quiet) {
-                System.out.println("the input and output files are the same, skipped.");
-                System.out.println("");
+                stdout.println("the input and output files are the same, skipped.");
+                stdout.println("");
             }
             return;
         }
@@ -932,23 +1548,64 @@ public final class EBZip implements Callable<Integer> {
             return;
         }
 
+        boolean completed = false;
         try (FileChannel in = new FileInputStream(file1).getChannel();
              FileChannel out = new FileOutputStream(file2).getChannel()) {
             in.transferTo(0, (int) in.size(), out);
             // 結果の表示
             if (!quiet) {
-                System.out.println("completed (" + in.size()
+                stdout.println("completed (" + in.size()
                         + " / " + out.size() + " bytes)");
             }
+            summary.add(in.size(), out.size());
+            completed = true;
         } catch (IOException | SecurityException e) {
             System.err.println(PROGRAM + ": " + e.getMessage());
+            summary.fail();
         }
         // オリジナルファイルの削除
-        if (!keep) {
+        if (!keep && completed) {
             _delete(file1);
         }
         if (!quiet) {
-            System.out.println("");
+            stdout.println("");
+        }
+    }
+
+    /**
+     * 指定ファイルを指定ファイル名に置き換えます。
+     *
+     * @param from 新しいファイル
+     * @param to 置き換えるファイル
+     * @return 置き換えた場合はtrue
+     */
+    private boolean _rename(final File from, final File to) {
+        try {
+            try {
+                Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | SecurityException e) {
+            System.err.println(PROGRAM + ": failed to rename " + from.getPath() + " to " + to.getPath()
+                    + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 指定されたリソースを閉じます。エラーは無視します。
+     *
+     * @param closeable リソース
+     */
+    private static void _close(final AutoCloseable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) {
+            }
         }
     }
 
@@ -10,8 +10,10 @@ import picocli.CommandLine.HelpCommand;
 @Command(name = "eb",
         description = "EPWING ebook tools",
         mixinStandardHelpOptions = true,
-        subcommands = {HelpCommand.class, EBDump.class, EBZip.class, EBInfo.class, EBAppendix.class, EBMap.class},
-        synopsisSubcommandLabel = "[dump|info|zip]",
+        subcommands = {HelpCommand.class, EBDump.class, EBZip.class, EBInfo.class, EBAppendix.class, EBMap.class,
+                EBSearch.class, EBServe.class, EBExport.class, EBIndex.class,
+                EBFont.class},
+        synopsisSubcommandLabel = "[dump|zip|info|appendix|map|search|serve|export|index|font]",
         version = {"eb4j-tools",
                 "Version " + Main.VERSION,
                 "Copyright (c) 2002-2007 by Hisaya FUKUMOTO.",
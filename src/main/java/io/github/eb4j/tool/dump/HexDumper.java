@@ -0,0 +1,348 @@
+package io.github.eb4j.tool.dump;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.tool.ebzip.CachedBookReader;
+import io.github.eb4j.util.ByteUtil;
+import io.github.eb4j.util.HexUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 書籍データの16進ダンプ出力器。
+ * <p>
+ * ダンプする範囲を16バイトの行単位に広げ、ファイル中の位置で読み込み単位のサイズごとに
+ * 区切った読み込み単位に分けます。読み込み単位ごとにデータを読み込んで整形し、
+ * 整形した文字列をまとめて書き込むため、範囲の大きさによらず使用するメモリは
+ * 読み込み単位1つ分 (並行に整形する場合はスレッド数の2倍) です。
+ * 並行に整形する場合も、出力は読み込み単位の順に書き込みます。
+ * 各行は「ページ:ページ内位置」、16バイトの16進表示、2バイトずつJIS X 0208または
+ * GB 2312として変換した文字の順に出力します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class HexDumper {
+
+    /**
+     * デフォルトの読み込み単位のサイズ (ページサイズの倍数)
+     */
+    public static final int CHUNK_SIZE = BookInputStream.PAGE_SIZE * 16;
+
+    /**
+     * 1行のバイト数
+     */
+    private static final int LINE_SIZE = 16;
+
+    /**
+     * 行区切り
+     */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /**
+     * バイト値の16進表現
+     */
+    private static final String[] BYTE_HEX = new String[256];
+
+    /**
+     * ページ内の行位置の16進表現
+     */
+    private static final String[] OFFSET_HEX = new String[BookInputStream.PAGE_SIZE / LINE_SIZE];
+
+    static {
+        for (int i = 0; i < BYTE_HEX.length; i++) {
+            BYTE_HEX[i] = HexUtil.toHexString((byte) i);
+        }
+        for (int i = 0; i < OFFSET_HEX.length; i++) {
+            OFFSET_HEX[i] = HexUtil.toHexString(i * LINE_SIZE, 3);
+        }
+    }
+
+    private final CachedBookReader reader;
+    private final int chunkSize;
+    private final long pos;
+    private final long end;
+    private final long lineStart;
+    private final long lineEnd;
+
+    /**
+     * Constructor.
+     *
+     * @param reader 読み込み器
+     * @param pos ダンプ開始位置
+     * @param size ダンプするバイト数
+     */
+    public HexDumper(final CachedBookReader reader, final long pos, final long size) {
+        this(reader, pos, size, CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param reader 読み込み器
+     * @param pos ダンプ開始位置
+     * @param size ダンプするバイト数
+     * @param chunkSize 読み込み単位のサイズ (ページサイズの倍数)
+     */
+    public HexDumper(final CachedBookReader reader, final long pos, final long size, final int chunkSize) {
+        if (chunkSize <= 0 || chunkSize % BookInputStream.PAGE_SIZE != 0) {
+            throw new IllegalArgumentException("chunk size must be a multiple of page size: " + chunkSize);
+        }
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.pos = pos;
+        this.end = pos + size;
+        lineStart = pos - (pos & 0x0f);
+        long e = end;
+        if (e % LINE_SIZE > 0) {
+            e += LINE_SIZE - e % LINE_SIZE;
+        }
+        lineEnd = e;
+    }
+
+    /**
+     * 読み込み単位の数を返します。
+     *
+     * @return 読み込み単位の数
+     */
+    public int getChunkCount() {
+        if (lineEnd <= lineStart) {
+            return 0;
+        }
+        return (int) ((lineEnd - 1) / chunkSize - lineStart / chunkSize + 1);
+    }
+
+    /**
+     * ダンプする範囲がファイルの中にあることを確認します。
+     *
+     * @param path エラーメッセージに含めるファイルのパス
+     * @throws EBException 範囲がファイルの外にある場合
+     */
+    public void checkRange(final String path) throws EBException {
+        if (pos < 0 || end > reader.getFileSize()) {
+            throw new EBException(EBException.FAILED_READ_FILE, path);
+        }
+    }
+
+    /**
+     * 範囲全体を順に整形して書き込みます。
+     *
+     * @param out 出力先
+     * @throws EBException 読み込みに失敗した場合
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void dump(final Writer out) throws EBException, IOException {
+        Formatter formatter = newFormatter();
+        int count = getChunkCount();
+        for (int i = 0; i < count; i++) {
+            formatter.format(i);
+            formatter.writeTo(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * 範囲全体を並行に整形し、読み込み単位の順に書き込みます。
+     * <p>
+     * 整形中と書き込み待ちの読み込み単位をスレッド数の2倍までに制限し、
+     * 先頭の読み込み単位の整形が終わるごとに書き込んで次の読み込み単位を投入します。
+     *
+     * @param out 出力先
+     * @param threads 整形するスレッド数、1以下の場合は順に整形
+     * @throws EBException 読み込みに失敗した場合
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void dump(final Writer out, final int threads) throws EBException, IOException {
+        if (threads <= 1) {
+            dump(out);
+            return;
+        }
+        int window = threads * 2;
+        BlockingQueue<Formatter> formatters = new ArrayBlockingQueue<>(window);
+        for (int i = 0; i < window; i++) {
+            formatters.add(newFormatter());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<Formatter>> pending = new ArrayDeque<>(window);
+        int count = getChunkCount();
+        int next = 0;
+        try {
+            while (next < count || !pending.isEmpty()) {
+                while (next < count && pending.size() < window) {
+                    int chunk = next++;
+                    pending.add(executor.submit(() -> {
+                        Formatter formatter = formatters.take();
+                        try {
+                            formatter.format(chunk);
+                        } catch (EBException | RuntimeException e) {
+                            formatters.add(formatter);
+                            throw e;
+                        }
+                        return formatter;
+                    }));
+                }
+                Formatter formatter = pending.poll().get();
+                formatter.writeTo(out);
+                formatters.add(formatter);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EBException) {
+                throw (EBException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+    }
+
+    /**
+     * 読み込み単位の整形器を作成します。
+     *
+     * @return 整形器
+     */
+    public Formatter newFormatter() {
+        return new Formatter();
+    }
+
+    /**
+     * 読み込み単位ごとの整形器。
+     * <p>
+     * 読み込みバッファと文字バッファを持ち、読み込み単位ごとに再利用します。
+     * 整形器はスレッドセーフではありませんが、別々の整形器は並行に使えます。
+     */
+    public final class Formatter {
+
+        private final byte[] data = new byte[chunkSize];
+        private char[] text = new char[chunkSize / LINE_SIZE * 80];
+        private int length;
+
+        private Formatter() {
+        }
+
+        /**
+         * 読み込み単位を読み込んで整形します。
+         *
+         * @param chunk 読み込み単位の番号
+         * @throws EBException 読み込みに失敗した場合
+         */
+        public void format(final int chunk) throws EBException {
+            long base = lineStart / chunkSize * chunkSize;
+            long chunkStart = Math.max(lineStart, base + (long) chunk * chunkSize);
+            long chunkEnd = Math.min(lineEnd, base + (long) (chunk + 1) * chunkSize);
+            long dataStart = Math.max(chunkStart, pos);
+            long dataEnd = Math.min(chunkEnd, end);
+            if (dataEnd > dataStart) {
+                reader.readFully(dataStart, data, 0, (int) (dataEnd - dataStart));
+            }
+            length = 0;
+            String pageHex = null;
+            long lastPage = -1;
+            for (long i = chunkStart; i < chunkEnd; i += LINE_SIZE) {
+                long page = Math.max(i, pos) / BookInputStream.PAGE_SIZE + 1;
+                if (page != lastPage) {
+                    pageHex = HexUtil.toHexString(page, 5);
+                    lastPage = page;
+                }
+                line(i, dataStart, pageHex);
+            }
+        }
+
+        /**
+         * 整形した文字列を書き込みます。
+         *
+         * @param out 出力先
+         * @throws IOException 書き込みに失敗した場合
+         */
+        public void writeTo(final Writer out) throws IOException {
+            out.write(text, 0, length);
+        }
+
+        /**
+         * 1行を整形します。
+         */
+        private void line(final long i, final long dataStart, final String pageHex) {
+            append(pageHex);
+            append(':');
+            append(OFFSET_HEX[(int) (i % BookInputStream.PAGE_SIZE) / LINE_SIZE]);
+            append(' ');
+            for (int j = 0; j < LINE_SIZE; j++) {
+                if (j == 8) {
+                    append(' ');
+                }
+                append(' ');
+                if (i + j >= pos && i + j < end) {
+                    append(BYTE_HEX[data[(int) (i + j - dataStart)] & 0xff]);
+                } else {
+                    append("  ");
+                }
+            }
+            append("  ");
+            for (int j = 0; j < LINE_SIZE; j += 2) {
+                long a = i + j;
+                if (a >= pos && a < end) {
+                    if (a + 1 < end) {
+                        int idx = (int) (a - dataStart);
+                        int high = data[idx] & 0xff;
+                        int low = data[idx + 1] & 0xff;
+                        if (high > 0x20 && high < 0x7f && low > 0x20 && low < 0x7f) {
+                            // JIS X 0208
+                            append(ByteUtil.jisx0208ToString(data, idx, 2));
+                        } else if (high > 0x20 && high < 0x7f && low > 0xa0 && low < 0xff) {
+                            // GB 2312
+                            append(ByteUtil.gb2312ToString(data, idx, 2));
+                        } else if (high > 0xa0 && high < 0xff && low > 0x20 && low < 0x7f) {
+                            // 外字
+                            append("??");
+                        } else {
+                            append("..");
+                        }
+                    } else {
+                        append(". ");
+                    }
+                } else {
+                    append(' ');
+                    if (a + 1 >= pos && a + 1 < end) {
+                        append('.');
+                    } else {
+                        append(' ');
+                    }
+                }
+            }
+            append(NEWLINE);
+        }
+
+        private void append(final char c) {
+            ensure(1);
+            text[length++] = c;
+        }
+
+        private void append(final String s) {
+            int n = s.length();
+            ensure(n);
+            s.getChars(0, n, text, length);
+            length += n;
+        }
+
+        private void ensure(final int n) {
+            if (length + n > text.length) {
+                char[] grown = new char[Math.max(text.length * 2, length + n)];
+                System.arraycopy(text, 0, grown, 0, length);
+                text = grown;
+            }
+        }
+    }
+}
+
+// end of HexDumper.java
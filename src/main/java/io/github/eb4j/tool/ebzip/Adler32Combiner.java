@@ -0,0 +1,52 @@
+package io.github.eb4j.tool.ebzip;
+
+/**
+ * 個別に計算したAdler-32値を連結するユーティリティ。
+ * <p>
+ * zlibのadler32_combine()と同じ計算を行います。
+ *
+ * @author Hiroshi Miura
+ */
+public final class Adler32Combiner {
+
+    private static final long BASE = 65521L;
+
+    /**
+     * Adler-32の初期値
+     */
+    public static final long INITIAL = 1L;
+
+    private Adler32Combiner() {
+    }
+
+    /**
+     * 連続する2つのデータ列のAdler-32値を連結します。
+     *
+     * @param adler1 前半のAdler-32値
+     * @param adler2 後半のAdler-32値
+     * @param len2 後半のデータ長
+     * @return 連結したデータ列のAdler-32値
+     */
+    public static long combine(final long adler1, final long adler2, final long len2) {
+        long rem = len2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + BASE - rem;
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum2 >= (BASE << 1)) {
+            sum2 -= (BASE << 1);
+        }
+        if (sum2 >= BASE) {
+            sum2 -= BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+}
+
+// end of Adler32Combiner.java
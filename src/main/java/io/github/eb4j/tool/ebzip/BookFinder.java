@@ -0,0 +1,85 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 書籍ディレクトリの検索器。
+ * <p>
+ * CATALOG(S)ファイルを含むディレクトリを書籍ディレクトリとみなし、
+ * 指定されたディレクトリ以下をファイル名順に探索します。
+ * 書籍ディレクトリの下位とシンボリックリンクは探索しません。
+ *
+ * @author Hiroshi Miura
+ */
+public final class BookFinder {
+
+    private BookFinder() {
+    }
+
+    /**
+     * 指定されたディレクトリ以下の書籍ディレクトリを検索します。
+     *
+     * @param dir ディレクトリ
+     * @param books 見つかった書籍ディレクトリのリスト
+     */
+    public static void find(final File dir, final List<File> books) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isFile() && isCatalog(file.getName())) {
+                books.add(dir);
+                return;
+            }
+        }
+        for (File file : files) {
+            if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+                find(file, books);
+            }
+        }
+    }
+
+    /**
+     * 出力先の名前が他の書籍と重ならないようにします。
+     * <p>
+     * 使用済みの名前と大文字小文字を区別せずに一致する場合は、{@code -2}、{@code -3}...の
+     * 接尾辞を付けます。
+     *
+     * @param name 書籍の出力先の名前
+     * @param used 使用済みの名前の集合、返す名前を追加する
+     * @return 重ならない名前
+     */
+    public static String uniqueName(final String name, final Set<String> used) {
+        String unique = name;
+        for (int i = 2; !used.add(unique.toLowerCase(Locale.ROOT)); i++) {
+            unique = name + "-" + i;
+        }
+        return unique;
+    }
+
+    /**
+     * 指定されたファイル名がCATALOG(S)ファイルかどうかを判定します。
+     *
+     * @param name ファイル名
+     * @return CATALOG(S)ファイルの場合はtrue
+     */
+    public static boolean isCatalog(final String name) {
+        String s = name.toLowerCase(Locale.ENGLISH);
+        if (s.endsWith(";1")) {
+            s = s.substring(0, s.length() - 2);
+        }
+        if (s.endsWith(".")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s.equals("catalog") || s.equals("catalogs");
+    }
+}
+
+// end of BookFinder.java
@@ -0,0 +1,59 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * スライスバッファのプール。
+ * <p>
+ * 固定数のバッファを事前に確保し、スレッド間で使い回します。
+ * プールが空の場合、バッファが返却されるまで待機します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class BufferPool {
+
+    private final BlockingQueue<ByteBuffer> pool;
+
+    /**
+     * Constructor.
+     *
+     * @param count バッファ数
+     * @param size バッファサイズ
+     * @param direct ダイレクトバッファを使う場合はtrue
+     */
+    public BufferPool(final int count, final int size, final boolean direct) {
+        pool = new ArrayBlockingQueue<>(count);
+        for (int i = 0; i < count; i++) {
+            if (direct) {
+                pool.add(ByteBuffer.allocateDirect(size));
+            } else {
+                pool.add(ByteBuffer.allocate(size));
+            }
+        }
+    }
+
+    /**
+     * バッファを取り出します。
+     *
+     * @return クリアされたバッファ
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public ByteBuffer take() throws InterruptedException {
+        ByteBuffer buf = pool.take();
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * バッファをプールに返却します。
+     *
+     * @param buf バッファ
+     */
+    public void release(final ByteBuffer buf) {
+        pool.add(buf);
+    }
+}
+
+// end of BufferPool.java
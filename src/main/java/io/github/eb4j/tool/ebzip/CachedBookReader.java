@@ -0,0 +1,250 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.io.EBFile;
+import io.github.eb4j.io.EBFormat;
+
+/**
+ * 伸張済みスライスのキャッシュを経由する書籍ファイルの読み込み器。
+ * <p>
+ * EBZIP形式のファイルは必要なスライスだけを伸張し、{@link SliceCache}に保持します。
+ * 同じスライスを再び読み込む場合は伸張を省略します。
+ * 複数のスレッドが同時にキャッシュにないスライスを読み込む場合は、1つのスレッドだけが伸張し、
+ * 他のスレッドはその結果を待ちます。
+ * その他の形式のファイルは{@link BookInputStream}で読み込みます。
+ * 読み込み位置は伸張後のファイル上の位置で指定します。
+ * 複数のスレッドから同時に使用できます。
+ *
+ * @author Hiroshi Miura
+ */
+public final class CachedBookReader implements AutoCloseable {
+
+    private final EBFile file;
+    private final SliceCache cache;
+    private final FileChannel channel;
+    private final EBZipHeader header;
+    private final EBZipIndex index;
+    private final String key;
+    private final ConcurrentLinkedQueue<SliceInflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<Integer, CompletableFuture<ByteBuffer>> loading = new ConcurrentHashMap<>();
+    private BookInputStream bis;
+
+    private CachedBookReader(final EBFile file, final SliceCache cache, final FileChannel channel,
+                             final EBZipHeader header, final EBZipIndex index, final String key) {
+        this.file = file;
+        this.cache = cache;
+        this.channel = channel;
+        this.header = header;
+        this.index = index;
+        this.key = key;
+    }
+
+    /**
+     * 共有キャッシュを使って書籍ファイルを開きます。
+     *
+     * @param file 書籍ファイル
+     * @return 読み込み器
+     * @throws EBException 読み込みに失敗した場合
+     */
+    public static CachedBookReader open(final EBFile file) throws EBException {
+        return open(file, SliceCache.getShared());
+    }
+
+    /**
+     * 指定されたキャッシュを使って書籍ファイルを開きます。
+     *
+     * @param file 書籍ファイル
+     * @param cache スライスキャッシュ
+     * @return 読み込み器
+     * @throws EBException 読み込みに失敗した場合
+     */
+    public static CachedBookReader open(final EBFile file, final SliceCache cache) throws EBException {
+        if (file.getFormat() != EBFormat.FORMAT_EBZIP) {
+            return new CachedBookReader(file, cache, null, null, null, null);
+        }
+        File f = file.getFile();
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            EBZipHeader header = EBZipHeader.read(channel);
+            EBZipIndex index = EBZipIndex.read(channel, header);
+            index.validate(header, channel.size());
+            String key = f.getCanonicalPath() + ':' + f.lastModified() + ':' + f.length();
+            return new CachedBookReader(file, cache, channel, header, index, key);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                    // 読み込みのエラーを優先する
+                }
+            }
+            throw new EBException(EBException.FAILED_READ_FILE, f.getPath(), e);
+        }
+    }
+
+    /**
+     * 伸張後のファイルサイズを返します。
+     *
+     * @return ファイルサイズ
+     * @throws EBException 読み込みに失敗した場合
+     */
+    public long getFileSize() throws EBException {
+        if (header != null) {
+            return header.getFileSize();
+        }
+        synchronized (this) {
+            return stream().getFileSize();
+        }
+    }
+
+    /**
+     * 指定された位置から指定長のデータを読み込みます。
+     *
+     * @param pos 読み込み位置
+     * @param b 格納先
+     * @param off 格納先の開始位置
+     * @param len 読み込む長さ
+     * @throws EBException 読み込みに失敗した場合またはファイル末尾を越えた場合
+     */
+    public void readFully(final long pos, final byte[] b, final int off, final int len) throws EBException {
+        if (header == null) {
+            synchronized (this) {
+                BookInputStream in = stream();
+                in.seek(pos);
+                in.readFully(b, off, len);
+            }
+            return;
+        }
+        if (pos < 0 || pos + len > header.getFileSize()) {
+            throw new EBException(EBException.FAILED_READ_FILE, file.getPath());
+        }
+        int sliceSize = header.getSliceSize();
+        long p = pos;
+        int done = 0;
+        while (done < len) {
+            int slice = (int) (p / sliceSize);
+            int sliceOff = (int) (p % sliceSize);
+            ByteBuffer data = slice(slice);
+            int n = Math.min(len - done, sliceSize - sliceOff);
+            data.position(sliceOff);
+            data.get(b, off + done, n);
+            done += n;
+            p += n;
+        }
+    }
+
+    /**
+     * 指定されたスライスの伸張済みデータを返します。
+     */
+    private ByteBuffer slice(final int slice) throws EBException {
+        ByteBuffer data = cache.get(key, slice);
+        if (data != null) {
+            return data;
+        }
+        CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+        CompletableFuture<ByteBuffer> running = loading.putIfAbsent(slice, load);
+        if (running != null) {
+            // 他のスレッドが伸張中のスライスはその結果を使う
+            return await(running).duplicate();
+        }
+        try {
+            data = inflate(slice);
+            load.complete(data);
+            return data.duplicate();
+        } catch (EBException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(slice, load);
+        }
+    }
+
+    /**
+     * 他のスレッドによるスライスの伸張を待ちます。
+     */
+    private ByteBuffer await(final CompletableFuture<ByteBuffer> future) throws EBException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EBException(EBException.FAILED_READ_FILE, file.getPath(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EBException) {
+                throw (EBException) e.getCause();
+            }
+            throw new EBException(EBException.FAILED_READ_FILE, file.getPath(), e.getCause());
+        }
+    }
+
+    /**
+     * スライスを伸張してキャッシュに格納します。
+     */
+    private ByteBuffer inflate(final int slice) throws EBException {
+        SliceInflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new SliceInflater(header.getSliceSize());
+        }
+        try {
+            inflater.inflate(channel, index, slice);
+            return cache.put(key, slice, inflater.getOutput(), header.getSliceSize());
+        } catch (IOException e) {
+            throw new EBException(EBException.FAILED_READ_FILE, file.getPath(), e);
+        } finally {
+            inflaters.add(inflater);
+        }
+    }
+
+    /**
+     * EBZIP形式以外のファイルの入力ストリームを返します。
+     */
+    private BookInputStream stream() throws EBException {
+        if (bis == null) {
+            bis = file.getInputStream();
+        }
+        return bis;
+    }
+
+    /**
+     * ファイルを閉じ、資源を解放します。
+     * <p>
+     * キャッシュしたスライスは破棄しません。
+     *
+     * @throws EBException クローズに失敗した場合
+     */
+    @Override
+    public void close() throws EBException {
+        SliceInflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new EBException(EBException.FAILED_READ_FILE, file.getPath(), e);
+        } finally {
+            synchronized (this) {
+                if (bis != null) {
+                    bis.close();
+                    bis = null;
+                }
+            }
+        }
+    }
+}
+
+// end of CachedBookReader.java
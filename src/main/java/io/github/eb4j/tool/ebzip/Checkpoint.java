@@ -0,0 +1,217 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import io.github.eb4j.io.EBZipConstants;
+
+/**
+ * 圧縮処理のチェックポイント。
+ * <p>
+ * 一時ファイルに書き込み済みのスライス数と、それまでのインデックス情報を保持します。
+ * 書き込みは一時ファイルの内容をディスクに同期した後に行うため、チェックポイントが
+ * 示すスライスまでのデータは永続化されています。中断した圧縮はチェックポイントの
+ * 次のスライスから再開できます。
+ * チェックポイントファイル自体も別名で書き込んでから置き換えるため、書き込み中に
+ * 中断しても直前のチェックポイントが残ります。
+ *
+ * @author Hiroshi Miura
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x45425a43; // "EBZC"
+    private static final int VERSION = 1;
+
+    private final CompressionSetting setting;
+    private final long fileSize;
+    private final long inputLength;
+    private final long inputModified;
+    private final long[] positions;
+
+    /**
+     * Constructor.
+     *
+     * @param setting 圧縮設定
+     * @param fileSize 圧縮前のファイルサイズ
+     * @param input 入力ファイル
+     * @param index 書き込み済みスライスのインデックス
+     * @param slices 書き込み済みのスライス数
+     */
+    public Checkpoint(final CompressionSetting setting, final long fileSize, final File input,
+                      final EBZipIndex index, final int slices) {
+        this(setting, fileSize, input.length(), input.lastModified(), new long[slices + 1]);
+        for (int i = 0; i < slices; i++) {
+            positions[i] = index.getSliceStart(i);
+        }
+        if (slices > 0) {
+            positions[slices] = index.getSliceStart(slices - 1) + index.getSliceLength(slices - 1);
+        }
+    }
+
+    private Checkpoint(final CompressionSetting setting, final long fileSize, final long inputLength,
+                       final long inputModified, final long[] positions) {
+        this.setting = setting;
+        this.fileSize = fileSize;
+        this.inputLength = inputLength;
+        this.inputModified = inputModified;
+        this.positions = positions;
+    }
+
+    /**
+     * チェックポイントファイルを読み込みます。
+     *
+     * @param file チェックポイントファイル
+     * @return チェックポイント、ファイルが存在しないか壊れている場合はnull
+     */
+    public static Checkpoint read(final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            CompressionSetting setting = new CompressionSetting(in.readInt(), in.readInt(), in.readInt());
+            long fileSize = in.readLong();
+            long inputLength = in.readLong();
+            long inputModified = in.readLong();
+            int slices = in.readInt();
+            // スライス数は圧縮設定とファイルサイズから決まる数を超えない
+            if (!isValid(setting) || fileSize < 0 || slices < 0 || (long) (slices - 1) * setting.getSliceSize() >= fileSize) {
+                return null;
+            }
+            long[] positions = new long[slices + 1];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = in.readLong();
+            }
+            return new Checkpoint(setting, fileSize, inputLength, inputModified, positions);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 圧縮設定がチェックポイントから再開できる値かを判定します。
+     *
+     * @param setting 圧縮設定
+     * @return EBZIP圧縮レベル、Deflaterの圧縮レベルおよび圧縮戦略がいずれも有効な場合はtrue
+     */
+    private static boolean isValid(final CompressionSetting setting) {
+        if (setting.getLevel() < 0 || setting.getLevel() > EBZipConstants.EBZIP_MAX_LEVEL) {
+            return false;
+        }
+        if (setting.getDeflateLevel() < Deflater.DEFAULT_COMPRESSION
+                || setting.getDeflateLevel() > Deflater.BEST_COMPRESSION) {
+            return false;
+        }
+        switch (setting.getStrategy()) {
+            case Deflater.DEFAULT_STRATEGY:
+            case Deflater.FILTERED:
+            case Deflater.HUFFMAN_ONLY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * チェックポイントファイルを書き込みます。
+     *
+     * @param file チェックポイントファイル
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void write(final File file) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(48 + positions.length * 8);
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(setting.getLevel());
+            out.writeInt(setting.getDeflateLevel());
+            out.writeInt(setting.getStrategy());
+            out.writeLong(fileSize);
+            out.writeLong(inputLength);
+            out.writeLong(inputModified);
+            out.writeInt(positions.length - 1);
+            for (long position : positions) {
+                out.writeLong(position);
+            }
+        }
+        File tmp = new File(file.getPath() + ".new");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer b = ByteBuffer.wrap(buf.toByteArray());
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * チェックポイントが指定された入力ファイルと圧縮設定に対応するかを判定します。
+     *
+     * @param input 入力ファイル
+     * @param size 圧縮前のファイルサイズ
+     * @param level 要求されたEBZIP圧縮レベル、負の場合は任意
+     * @return 再開できる場合はtrue
+     */
+    public boolean matches(final File input, final long size, final int level) {
+        return inputLength == input.length() && inputModified == input.lastModified()
+                && fileSize == size && (level < 0 || level == setting.getLevel());
+    }
+
+    /**
+     * 圧縮設定を返します。
+     *
+     * @return 圧縮設定
+     */
+    public CompressionSetting getSetting() {
+        return setting;
+    }
+
+    /**
+     * 書き込み済みのスライス数を返します。
+     *
+     * @return スライス数
+     */
+    public int getSlices() {
+        return positions.length - 1;
+    }
+
+    /**
+     * 書き込み済みのスライスの終了位置を返します。
+     *
+     * @return 最後のスライスの終了位置
+     */
+    public long getEndPosition() {
+        return positions[positions.length - 1];
+    }
+
+    /**
+     * 書き込み済みのスライスのインデックス情報を設定します。
+     *
+     * @param index インデックス
+     */
+    public void restore(final EBZipIndex index) {
+        for (int i = 0; i < positions.length - 1; i++) {
+            index.setSlice(i, positions[i], positions[i + 1]);
+        }
+    }
+}
+
+// end of Checkpoint.java
@@ -0,0 +1,108 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.util.zip.Deflater;
+
+import io.github.eb4j.io.BookInputStream;
+
+/**
+ * EBZIP形式の圧縮設定。
+ * <p>
+ * EBZIP圧縮レベル (スライスサイズ) と、スライスの圧縮に使用するDeflaterの
+ * 圧縮レベルおよび圧縮戦略の組です。Deflaterの設定は圧縮ファイルには記録されず、
+ * 伸張には影響しません。
+ *
+ * @author Hiroshi Miura
+ */
+public final class CompressionSetting {
+
+    private final int level;
+    private final int deflateLevel;
+    private final int strategy;
+
+    /**
+     * Constructor.
+     *
+     * @param level EBZIP圧縮レベル
+     * @param deflateLevel Deflaterの圧縮レベル
+     * @param strategy Deflaterの圧縮戦略
+     */
+    public CompressionSetting(final int level, final int deflateLevel, final int strategy) {
+        this.level = level;
+        this.deflateLevel = deflateLevel;
+        this.strategy = strategy;
+    }
+
+    /**
+     * 指定されたEBZIP圧縮レベルの標準の設定を返します。
+     *
+     * @param level EBZIP圧縮レベル
+     * @return 最高圧縮のDeflaterを使用する設定
+     */
+    public static CompressionSetting of(final int level) {
+        return new CompressionSetting(level, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * EBZIP圧縮レベルを返します。
+     *
+     * @return EBZIP圧縮レベル
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Deflaterの圧縮レベルを返します。
+     *
+     * @return Deflaterの圧縮レベル
+     */
+    public int getDeflateLevel() {
+        return deflateLevel;
+    }
+
+    /**
+     * Deflaterの圧縮戦略を返します。
+     *
+     * @return Deflaterの圧縮戦略
+     */
+    public int getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * スライスサイズを返します。
+     *
+     * @return スライスサイズ
+     */
+    public int getSliceSize() {
+        return BookInputStream.PAGE_SIZE << level;
+    }
+
+    /**
+     * この設定の圧縮器を生成します。
+     *
+     * @return 圧縮器
+     */
+    public SliceCompressor newCompressor() {
+        return new SliceCompressor(getSliceSize(), deflateLevel, strategy);
+    }
+
+    @Override
+    public String toString() {
+        String name;
+        switch (strategy) {
+            case Deflater.FILTERED:
+                name = "filtered";
+                break;
+            case Deflater.HUFFMAN_ONLY:
+                name = "huffman only";
+                break;
+            default:
+                name = "default strategy";
+                break;
+        }
+        return "ebzip level " + level + " (deflate level " + deflateLevel + ", " + name + ")";
+    }
+}
+
+// end of CompressionSetting.java
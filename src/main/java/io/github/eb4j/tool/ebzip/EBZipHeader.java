@@ -0,0 +1,256 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.io.EBZipConstants;
+
+/**
+ * EBZIP形式のヘッダ情報。
+ * <pre>
+ * +-----+-----+-----+---------+--------+-------+
+ * |magic|mode |     |file size|Adler-32| mtime |
+ * |  5  |  1  |  3  |    5    |   4    |   4   |
+ * +-----+-----+-----+---------+--------+-------+
+ * </pre>
+ *
+ * @author Hiroshi Miura
+ */
+public final class EBZipHeader {
+
+    private final int zipMode;
+    private final int level;
+    private final long fileSize;
+    private final long crc;
+    private final long mtime;
+
+    /**
+     * Constructor.
+     *
+     * @param zipMode 圧縮モード
+     * @param level 圧縮レベル
+     * @param fileSize 圧縮前のファイルサイズ
+     * @param crc 圧縮前データのAdler-32値
+     * @param mtime 更新時刻
+     */
+    public EBZipHeader(final int zipMode, final int level, final long fileSize, final long crc, final long mtime) {
+        this.zipMode = zipMode;
+        this.level = level;
+        this.fileSize = fileSize;
+        this.crc = crc;
+        this.mtime = mtime;
+    }
+
+    /**
+     * 圧縮したファイルのヘッダ情報を作成します。
+     * <p>
+     * 圧縮前のファイルサイズが4GB以上の場合は圧縮モード2とし、更新時刻には現在時刻を設定します。
+     *
+     * @param level 圧縮レベル
+     * @param fileSize 圧縮前のファイルサイズ
+     * @param crc 圧縮前データのAdler-32値
+     * @return ヘッダ情報
+     */
+    public static EBZipHeader create(final int level, final long fileSize, final long crc) {
+        int zipMode = 1;
+        if (fileSize >= (1L << 32)) {
+            zipMode = 2;
+        }
+        return new EBZipHeader(zipMode, level, fileSize, crc, System.currentTimeMillis());
+    }
+
+    /**
+     * 指定されたチャネルの先頭からヘッダ情報を読み込みます。
+     *
+     * @param channel 入力チャネル
+     * @return ヘッダ情報
+     * @throws IOException 読み込みに失敗した場合またはEBZIP形式でない場合
+     */
+    public static EBZipHeader read(final FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(EBZipConstants.EBZIP_HEADER_SIZE);
+        long pos = 0;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0) {
+                throw new IOException("unexpected EOF in ebzip header");
+            }
+            pos += n;
+        }
+        return parse(buf.array());
+    }
+
+    /**
+     * バイト列からヘッダ情報を解析します。
+     *
+     * @param b ヘッダのバイト列
+     * @return ヘッダ情報
+     * @throws IOException EBZIP形式でない場合
+     */
+    public static EBZipHeader parse(final byte[] b) throws IOException {
+        if (b.length < EBZipConstants.EBZIP_HEADER_SIZE
+                || b[0] != 'E' || b[1] != 'B' || b[2] != 'Z' || b[3] != 'i' || b[4] != 'p') {
+            throw new IOException("bad ebzip header magic");
+        }
+        int zipMode = (b[5] >>> 4) & 0x0f;
+        int level = b[5] & 0x0f;
+        if (level > EBZipConstants.EBZIP_MAX_LEVEL) {
+            throw new IOException("unsupported ebzip level: " + level);
+        }
+        return new EBZipHeader(zipMode, level, toLong(b, 9, 5), toLong(b, 14, 4), toLong(b, 18, 4));
+    }
+
+    /**
+     * ヘッダ情報をバイト列に変換します。
+     *
+     * @return ヘッダのバイト列
+     */
+    public byte[] toBytes() {
+        byte[] out = new byte[EBZipConstants.EBZIP_HEADER_SIZE];
+        out[0] = (byte) 'E';
+        out[1] = (byte) 'B';
+        out[2] = (byte) 'Z';
+        out[3] = (byte) 'i';
+        out[4] = (byte) 'p';
+        out[5] = (byte) ((zipMode << 4) | (level & 0x0f));
+        toBigEndian(out, 9, fileSize, 5);
+        toBigEndian(out, 14, crc, 4);
+        toBigEndian(out, 18, mtime, 4);
+        return out;
+    }
+
+    /**
+     * 圧縮モードを返します。
+     *
+     * @return 圧縮モード
+     */
+    public int getZipMode() {
+        return zipMode;
+    }
+
+    /**
+     * 圧縮レベルを返します。
+     *
+     * @return 圧縮レベル
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * スライスサイズを返します。
+     *
+     * @return スライスサイズ
+     */
+    public int getSliceSize() {
+        return BookInputStream.PAGE_SIZE << level;
+    }
+
+    /**
+     * 圧縮前のファイルサイズを返します。
+     *
+     * @return ファイルサイズ
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 圧縮前データのAdler-32値を返します。
+     *
+     * @return Adler-32値
+     */
+    public long getCRC() {
+        return crc;
+    }
+
+    /**
+     * 更新時刻を返します。
+     *
+     * @return 更新時刻
+     */
+    public long getMtime() {
+        return mtime;
+    }
+
+    /**
+     * ヘッダの値が正しい範囲にあることを確認し、インデックスの長さを返します。
+     * <p>
+     * 圧縮モードが1または2であること、圧縮レベルが上限以下であること、
+     * ヘッダとインデックスが指定された長さに収まることを確認します。
+     * インデックスやスライスの領域を確保する前に呼び出します。
+     *
+     * @param limit ヘッダとインデックスを合わせた長さの上限 (圧縮ファイルのサイズ)
+     * @return インデックスの長さ
+     * @throws IOException ヘッダの値が範囲外の場合
+     */
+    public int checkIndexLength(final long limit) throws IOException {
+        if (zipMode != 1 && zipMode != 2) {
+            throw new IOException("unsupported ebzip mode: " + zipMode);
+        }
+        if (level < 0 || level > EBZipConstants.EBZIP_MAX_LEVEL) {
+            throw new IOException("unsupported ebzip level: " + level);
+        }
+        // インデックスの長さはint型に収まらない場合があるためlong型で計算する
+        long indexLength = ((long) getTotalSlice() + 1) * getIndexSize();
+        if (EBZipConstants.EBZIP_HEADER_SIZE + indexLength > Math.min(limit, Integer.MAX_VALUE)) {
+            throw new IOException("broken ebzip header: index of " + indexLength + " bytes for file size "
+                    + fileSize + " does not fit in " + limit + " bytes");
+        }
+        return (int) indexLength;
+    }
+
+    /**
+     * スライス数を返します。
+     *
+     * @return スライス数
+     */
+    public int getTotalSlice() {
+        return (int) ((fileSize + getSliceSize() - 1) / getSliceSize());
+    }
+
+    /**
+     * インデックス1件のサイズを返します。
+     *
+     * @return インデックスサイズ
+     */
+    public int getIndexSize() {
+        return getIndexSize(fileSize);
+    }
+
+    /**
+     * 指定されたファイルサイズに対するインデックス1件のサイズを返します。
+     *
+     * @param fileSize 圧縮前のファイルサイズ
+     * @return インデックスサイズ
+     */
+    public static int getIndexSize(final long fileSize) {
+        if (fileSize < (1L << 16)) {
+            return 2;
+        } else if (fileSize < (1L << 24)) {
+            return 3;
+        } else if (fileSize < (1L << 32)) {
+            return 4;
+        }
+        return 5;
+    }
+
+    static long toLong(final byte[] b, final int off, final int len) {
+        long val = 0L;
+        for (int i = 0; i < len; i++) {
+            val = (val << 8) | (b[off + i] & 0xff);
+        }
+        return val;
+    }
+
+    static void toBigEndian(final byte[] out, final int off, final long val, final int len) {
+        int shift = 0;
+        for (int i = len; i > 0; i--) {
+            out[off + i - 1] = (byte) ((val >>> shift) & 0xff);
+            shift += 8;
+        }
+    }
+}
+
+// end of EBZipHeader.java
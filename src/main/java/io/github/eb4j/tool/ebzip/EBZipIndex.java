@@ -0,0 +1,158 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import io.github.eb4j.io.EBZipConstants;
+
+/**
+ * EBZIP形式のスライスインデックス。
+ * <p>
+ * スライス数+1個の位置情報を保持し、スライスiのデータは
+ * [getSliceStart(i), getSliceStart(i + 1)) に格納されています。
+ *
+ * @author Hiroshi Miura
+ */
+public final class EBZipIndex {
+
+    private final long[] positions;
+
+    private EBZipIndex(final long[] positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * 書き込み用の空のインデックスを作成します。
+     *
+     * @param sliceCount スライス数
+     */
+    public EBZipIndex(final int sliceCount) {
+        this(new long[sliceCount + 1]);
+    }
+
+    /**
+     * ヘッダに続くインデックス情報を一括で読み込みます。
+     * <p>
+     * 読み込む前に、ヘッダから求めたインデックスがファイルに収まることを確認します。
+     *
+     * @param channel 入力チャネル
+     * @param header ヘッダ情報
+     * @return インデックス
+     * @throws IOException 読み込みに失敗した場合、ヘッダが壊れている場合
+     */
+    public static EBZipIndex read(final FileChannel channel, final EBZipHeader header) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(header.checkIndexLength(channel.size()));
+        long pos = EBZipConstants.EBZIP_HEADER_SIZE;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0) {
+                throw new IOException("unexpected EOF in ebzip index");
+            }
+            pos += n;
+        }
+        return parse(buf.array(), header);
+    }
+
+    /**
+     * ヘッダに続くインデックス情報のバイト列を解析します。
+     *
+     * @param b インデックスのバイト列
+     * @param header ヘッダ情報
+     * @return インデックス
+     */
+    public static EBZipIndex parse(final byte[] b, final EBZipHeader header) {
+        int indexSize = header.getIndexSize();
+        long[] positions = new long[header.getTotalSlice() + 1];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = EBZipHeader.toLong(b, i * indexSize, indexSize);
+        }
+        return new EBZipIndex(positions);
+    }
+
+    /**
+     * インデックスの整合性を検査します。
+     * <p>
+     * 先頭のスライスがインデックスの直後から始まること、各スライスの長さが
+     * 1以上スライスサイズ以下であること (位置が単調増加であること)、
+     * 最終スライスがファイル内に収まることを確認します。
+     *
+     * @param header ヘッダ情報
+     * @param size 圧縮ファイルのサイズ
+     * @throws IOException インデックスが不正な場合
+     */
+    public void validate(final EBZipHeader header, final long size) throws IOException {
+        long start = EBZipConstants.EBZIP_HEADER_SIZE + (long) positions.length * header.getIndexSize();
+        if (positions.length > 1 && positions[0] != start) {
+            throw new IOException("broken ebzip index: first slice at " + positions[0] + ", expected " + start);
+        }
+        int sliceSize = header.getSliceSize();
+        for (int i = 0; i < positions.length - 1; i++) {
+            long len = positions[i + 1] - positions[i];
+            if (len <= 0 || len > sliceSize) {
+                throw new IOException("broken ebzip index: slice " + i + " has length " + len);
+            }
+        }
+        if (positions[positions.length - 1] > size) {
+            throw new IOException("broken ebzip index: slices end at " + positions[positions.length - 1]
+                    + " beyond file size " + size);
+        }
+    }
+
+    /**
+     * 指定スライスの圧縮データの位置を設定します。
+     *
+     * @param slice スライス番号
+     * @param start 開始位置
+     * @param end 終了位置
+     */
+    public void setSlice(final int slice, final long start, final long end) {
+        positions[slice] = start;
+        positions[slice + 1] = end;
+    }
+
+    /**
+     * インデックス全体をバイト列に変換します。
+     *
+     * @param indexSize インデックス1件のサイズ
+     * @return インデックスのバイト列
+     */
+    public byte[] toBytes(final int indexSize) {
+        byte[] b = new byte[positions.length * indexSize];
+        for (int i = 0; i < positions.length; i++) {
+            EBZipHeader.toBigEndian(b, i * indexSize, positions[i], indexSize);
+        }
+        return b;
+    }
+
+    /**
+     * スライス数を返します。
+     *
+     * @return スライス数
+     */
+    public int getSliceCount() {
+        return positions.length - 1;
+    }
+
+    /**
+     * 指定スライスの圧縮データの開始位置を返します。
+     *
+     * @param slice スライス番号
+     * @return 開始位置
+     */
+    public long getSliceStart(final int slice) {
+        return positions[slice];
+    }
+
+    /**
+     * 指定スライスの圧縮データ長を返します。
+     *
+     * @param slice スライス番号
+     * @return 圧縮データ長
+     */
+    public int getSliceLength(final int slice) {
+        return (int) (positions[slice + 1] - positions[slice]);
+    }
+}
+
+// end of EBZipIndex.java
@@ -0,0 +1,223 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
+import io.github.eb4j.io.EBZipConstants;
+
+/**
+ * ストリーム間のEBZIP形式の圧縮/伸張。
+ * <p>
+ * EBZIP形式ではヘッダとインデックスがスライスデータの前に置かれるため、圧縮時は
+ * 入力の終端まで圧縮したスライスを{@link SliceSpool}に保管し、ファイルサイズと
+ * Adler-32値が確定してからヘッダ、インデックス、スライスデータの順に出力します。
+ * 伸張時はインデックスを読み込んだ後、スライスデータを先頭から順に読み込みます。
+ *
+ * @author Hiroshi Miura
+ */
+public final class EBZipStream {
+
+    /**
+     * メモリ上に保持する圧縮データの既定の上限
+     */
+    public static final int DEFAULT_SPOOL_MEMORY = 64 << 20;
+
+    /**
+     * 伸張時に受け付けるインデックスの最大長 (32GiB以上のレベル0のデータに相当)
+     */
+    private static final int MAX_INDEX_LENGTH = 64 << 20;
+
+    /**
+     * インデックスの読み込みバッファの初期サイズ
+     */
+    private static final int INDEX_CHUNK = 64 << 10;
+
+    private EBZipStream() {
+    }
+
+    /**
+     * 入力ストリームの終端までをEBZIP形式で圧縮して出力ストリームに書き込みます。
+     *
+     * @param in 入力ストリーム
+     * @param out 出力ストリーム
+     * @param setting 圧縮設定
+     * @param spoolMemory メモリ上に保持する圧縮データの上限
+     * @return 圧縮後のサイズ
+     * @throws IOException 入出力に失敗した場合
+     */
+    public static long compress(final InputStream in, final OutputStream out, final CompressionSetting setting,
+                                final int spoolMemory) throws IOException {
+        int sliceSize = setting.getSliceSize();
+        byte[] data = new byte[sliceSize];
+        ByteBuffer inBuf = ByteBuffer.wrap(data);
+        ByteBuffer outBuf = ByteBuffer.allocate(sliceSize);
+        Adler32 crc32 = new Adler32();
+        int[] lengths = new int[1024];
+        int totalSlice = 0;
+        long fileSize = 0;
+        SliceCompressor compressor = setting.newCompressor();
+        try (SliceSpool spool = new SliceSpool(spoolMemory)) {
+            int inLen = sliceSize;
+            while (inLen == sliceSize) {
+                inLen = readFully(in, data, sliceSize);
+                if (inLen == 0) {
+                    break;
+                }
+                crc32.update(data, 0, inLen);
+                fileSize += inLen;
+                // 最終スライスでスライスサイズに満たない場合は0で埋める
+                if (inLen < sliceSize) {
+                    Arrays.fill(data, inLen, sliceSize, (byte) 0);
+                }
+                inBuf.clear();
+                compressor.compress(inBuf, outBuf);
+                if (totalSlice == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, totalSlice * 2);
+                }
+                lengths[totalSlice++] = outBuf.remaining();
+                spool.write(outBuf);
+            }
+
+            // スライスの位置からインデックスを作成する
+            int indexSize = EBZipHeader.getIndexSize(fileSize);
+            EBZipIndex index = new EBZipIndex(totalSlice);
+            long pos = EBZipConstants.EBZIP_HEADER_SIZE + (long) (totalSlice + 1) * indexSize;
+            for (int i = 0; i < totalSlice; i++) {
+                index.setSlice(i, pos, pos + lengths[i]);
+                pos += lengths[i];
+            }
+            out.write(EBZipHeader.create(setting.getLevel(), fileSize, crc32.getValue()).toBytes());
+            out.write(index.toBytes(indexSize));
+            spool.writeTo(out);
+            out.flush();
+            return pos;
+        } finally {
+            compressor.end();
+        }
+    }
+
+    /**
+     * 入力ストリームのEBZIP形式のデータを伸張して出力ストリームに書き込みます。
+     * <p>
+     * インデックスを読み込む前にヘッダの値を確認し、インデックスが{@value #MAX_INDEX_LENGTH}バイトを
+     * 超える場合は受け付けません。インデックスのバッファは実際に読み込んだ長さに応じて拡張するため、
+     * 壊れたヘッダで大きな領域を確保することはありません。
+     *
+     * @param in 入力ストリーム
+     * @param out 出力ストリーム
+     * @return 伸張後のサイズ
+     * @throws IOException 入出力に失敗した場合、データが壊れている場合
+     */
+    public static long decompress(final InputStream in, final OutputStream out) throws IOException {
+        byte[] b = new byte[EBZipConstants.EBZIP_HEADER_SIZE];
+        if (readFully(in, b, b.length) != b.length) {
+            throw new IOException("unexpected EOF in ebzip header");
+        }
+        EBZipHeader header = EBZipHeader.parse(b);
+        b = readIndex(in, header.checkIndexLength(EBZipConstants.EBZIP_HEADER_SIZE + MAX_INDEX_LENGTH));
+        EBZipIndex index = EBZipIndex.parse(b, header);
+        index.validate(header, Long.MAX_VALUE);
+        long pos = EBZipConstants.EBZIP_HEADER_SIZE + b.length;
+
+        int sliceSize = header.getSliceSize();
+        long fileSize = header.getFileSize();
+        byte[] data = new byte[sliceSize];
+        Adler32 crc32 = new Adler32();
+        SliceInflater inflater = new SliceInflater(sliceSize);
+        try {
+            for (int i = 0; i < index.getSliceCount(); i++) {
+                // スライス間の未使用領域は読み飛ばす
+                long start = index.getSliceStart(i);
+                skipFully(in, start - pos);
+                int len = index.getSliceLength(i);
+                if (readFully(in, data, len) != len) {
+                    throw new IOException("unexpected EOF at slice " + i);
+                }
+                pos = start + len;
+                inflater.inflate(data, len);
+                int n = (int) Math.min(sliceSize, fileSize - (long) i * sliceSize);
+                crc32.update(inflater.getOutput(), 0, n);
+                out.write(inflater.getOutput(), 0, n);
+            }
+        } finally {
+            inflater.end();
+        }
+        // CRCの確認
+        if (crc32.getValue() != header.getCRC()) {
+            throw new IOException("CRC error");
+        }
+        out.flush();
+        return fileSize;
+    }
+
+    /**
+     * 入力ストリームから指定長のインデックスを読み込みます。
+     * <p>
+     * バッファは読み込んだデータに応じて拡張します。
+     */
+    private static byte[] readIndex(final InputStream in, final int len) throws IOException {
+        byte[] b = new byte[Math.min(len, INDEX_CHUNK)];
+        int off = 0;
+        while (off < len) {
+            if (off == b.length) {
+                b = Arrays.copyOf(b, (int) Math.min(len, (long) b.length * 2));
+            }
+            int n = readFully(in, b, off, b.length - off);
+            if (n < b.length - off) {
+                throw new IOException("unexpected EOF in ebzip index");
+            }
+            off += n;
+        }
+        return b;
+    }
+
+    /**
+     * 入力ストリームから指定長を読み込みます。
+     *
+     * @return 読み込んだバイト数、終端に達した場合は指定長未満
+     */
+    private static int readFully(final InputStream in, final byte[] b, final int len) throws IOException {
+        return readFully(in, b, 0, len);
+    }
+
+    /**
+     * 入力ストリームからバッファの指定位置に指定長を読み込みます。
+     *
+     * @return 読み込んだバイト数、終端に達した場合は指定長未満
+     */
+    private static int readFully(final InputStream in, final byte[] b, final int start, final int len)
+            throws IOException {
+        int off = 0;
+        while (off < len) {
+            int n = in.read(b, start + off, len - off);
+            if (n < 0) {
+                break;
+            }
+            off += n;
+        }
+        return off;
+    }
+
+    /**
+     * 入力ストリームを指定長だけ読み飛ばします。
+     */
+    private static void skipFully(final InputStream in, final long len) throws IOException {
+        long remaining = len;
+        while (remaining > 0) {
+            long n = in.skip(remaining);
+            if (n <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("unexpected EOF in ebzip data");
+                }
+                n = 1;
+            }
+            remaining -= n;
+        }
+    }
+}
+
+// end of EBZipStream.java
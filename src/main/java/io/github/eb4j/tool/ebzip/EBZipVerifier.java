@@ -0,0 +1,51 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * EBZIP形式のファイルの検査器。
+ * <p>
+ * ヘッダとインデックスの整合性を確認した後、全スライスを作業バッファに伸張して
+ * スライスごとのAdler-32値を結合し、ヘッダのCRCと比較します。
+ * 実行器が指定された場合は、スライスの伸張を並列に実行します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class EBZipVerifier {
+
+    private final ParallelInflater inflater;
+
+    /**
+     * Constructor.
+     *
+     * @param executor スライスの伸張を実行する実行器、nullの場合は逐次実行
+     * @param workers 同時に伸張するスライス数
+     */
+    public EBZipVerifier(final ExecutorService executor, final int workers) {
+        inflater = new ParallelInflater(executor, workers);
+    }
+
+    /**
+     * 指定されたチャネルのEBZIP形式のデータを検査します。
+     *
+     * @param in 入力チャネル
+     * @return ヘッダ情報
+     * @throws IOException 読み込みに失敗した場合、データが壊れている場合
+     * @throws InterruptedException 検査中に割り込まれた場合
+     */
+    public EBZipHeader verify(final FileChannel in) throws IOException, InterruptedException {
+        EBZipHeader header = EBZipHeader.read(in);
+        EBZipIndex index = EBZipIndex.read(in, header);
+        index.validate(header, in.size());
+        long crc = inflater.inflate(in, header, index, null, null);
+        // CRCの確認
+        if (crc != header.getCRC()) {
+            throw new IOException("CRC error");
+        }
+        return header;
+    }
+}
+
+// end of EBZipVerifier.java
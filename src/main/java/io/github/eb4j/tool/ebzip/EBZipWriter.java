@@ -0,0 +1,475 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.io.EBFile;
+import io.github.eb4j.io.EBZipConstants;
+
+/**
+ * EBZIP形式のファイルの書き込み器。
+ * <p>
+ * 入力ファイルをスライスごとに圧縮して出力チャネルのヘッダとインデックスの後に書き込み、
+ * 全スライスの書き込み後にインデックスとヘッダをまとめて書き込みます。
+ * 実行器が指定された場合は、読み込み、圧縮、書き込みの3段のパイプラインで圧縮します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class EBZipWriter {
+
+    private static final DecimalFormat FMT = new DecimalFormat("##0.0'%'");
+
+    private final FileChannel channel;
+    private final EBFile file;
+    private final CompressionSetting setting;
+    private final long fileSize;
+    private final int sliceSize;
+    private final int totalSlice;
+    private final int indexSize;
+    private final Adler32 crc32 = new Adler32();
+    private final EBZipIndex index;
+    private final int interval;
+    private PrintStream progress;
+    private ExecutorService executor;
+    private int threads = 1;
+    private int queueDepth = 0;
+    private boolean directBuffers = false;
+    private MappedSliceSource source;
+    private IncrementalBase base;
+    private boolean fixSEBXA = false;
+    private File checkpointFile;
+    private long checkpointNanos;
+    private long nextCheckpoint;
+    private int startSlice = 0;
+    private long slicePos;
+    private long inTotalLength = 0;
+    private long outTotalLength = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param channel 出力チャネル
+     * @param file 入力ファイル
+     * @param setting 圧縮設定
+     * @param fileSize 入力ファイルのサイズ
+     */
+    public EBZipWriter(final FileChannel channel, final EBFile file, final CompressionSetting setting,
+                       final long fileSize) {
+        this.channel = channel;
+        this.file = file;
+        this.setting = setting;
+        this.fileSize = fileSize;
+        sliceSize = setting.getSliceSize();
+        totalSlice = (int) ((fileSize + sliceSize - 1) / sliceSize);
+        indexSize = EBZipHeader.getIndexSize(fileSize);
+        slicePos = EBZipConstants.EBZIP_HEADER_SIZE + (long) (totalSlice + 1) * indexSize;
+        int n = 1024 >>> setting.getLevel();
+        if (((totalSlice + 999) / 1000) > n) {
+            n = (totalSlice + 999) / 1000;
+        }
+        interval = n;
+        index = new EBZipIndex(totalSlice);
+    }
+
+    /**
+     * 進捗の出力先を設定します。
+     *
+     * @param out 出力先、nullの場合は出力しない
+     */
+    public void setProgress(final PrintStream out) {
+        progress = out;
+    }
+
+    /**
+     * スライスを圧縮する実行器を設定します。
+     *
+     * @param service 実行器、nullの場合は逐次圧縮
+     * @param workers 圧縮ワーカー数
+     * @param depth パイプラインのキューの深さ、0以下の場合はワーカー数の2倍
+     */
+    public void setExecutor(final ExecutorService service, final int workers, final int depth) {
+        executor = service;
+        threads = Math.max(workers, 1);
+        queueDepth = depth;
+    }
+
+    /**
+     * 圧縮したスライスのバッファにダイレクトバッファを使用するかどうかを設定します。
+     *
+     * @param direct ダイレクトバッファを使用する場合はtrue
+     */
+    public void setDirectBuffers(final boolean direct) {
+        directBuffers = direct;
+    }
+
+    /**
+     * メモリにマッピングした入力ファイルを設定します。
+     *
+     * @param mapped マッピングした入力ファイル
+     */
+    public void setSource(final MappedSliceSource mapped) {
+        source = mapped;
+    }
+
+    /**
+     * 差分圧縮で参照する既存の圧縮ファイルを設定します。
+     *
+     * @param existing 既存の圧縮ファイル
+     */
+    public void setBase(final IncrementalBase existing) {
+        base = existing;
+    }
+
+    /**
+     * 先頭ページからS-EBXA圧縮情報を取り除くかどうかを設定します。
+     *
+     * @param fix 取り除く場合はtrue
+     */
+    public void setFixSEBXA(final boolean fix) {
+        fixSEBXA = fix;
+    }
+
+    /**
+     * チェックポイントの書き込み先と間隔を設定します。
+     *
+     * @param ckpt チェックポイントファイル
+     * @param nanos 書き込み間隔 (ナノ秒)
+     */
+    public void setCheckpoint(final File ckpt, final long nanos) {
+        checkpointFile = ckpt;
+        checkpointNanos = nanos;
+        nextCheckpoint = System.nanoTime() + nanos;
+    }
+
+    /**
+     * チェックポイントの状態から圧縮を再開する準備をします。
+     * <p>
+     * インデックス情報と出力位置を復元し、書き込み済みのスライスの入力データを読み込んで
+     * CRCを計算します。
+     *
+     * @param bis 入力ストリーム
+     * @param checkpoint チェックポイント
+     * @throws EBException 入力ファイルの読み込みに失敗した場合
+     * @throws IOException 入力ファイルが短い場合
+     */
+    public void resumeFrom(final BookInputStream bis, final Checkpoint checkpoint) throws EBException, IOException {
+        int slices = checkpoint.getSlices();
+        checkpoint.restore(index);
+        long start = slicePos;
+        startSlice = slices;
+        slicePos = checkpoint.getEndPosition();
+        inTotalLength = (long) slices * sliceSize;
+        outTotalLength = slicePos - start + (long) slices * indexSize;
+        ByteBuffer scratch = ByteBuffer.allocate(sliceSize);
+        for (int i = 0; i < slices; i++) {
+            readSlice(bis, scratch, i);
+        }
+        if (progress != null) {
+            progress.println("resume from slice " + slices + " / " + totalSlice);
+        }
+    }
+
+    /**
+     * 残りのスライスを圧縮して書き込み、インデックスとヘッダを書き込みます。
+     *
+     * @param bis 入力ストリーム
+     * @throws EBException 入力ファイルの読み込みに失敗した場合
+     * @throws IOException 入力ファイルが短い場合、書き込みに失敗した場合
+     */
+    public void write(final BookInputStream bis) throws EBException, IOException {
+        if (executor != null && totalSlice - startSlice > 1) {
+            zipPipelined(bis);
+        } else {
+            zipSequential(bis);
+        }
+        // インデックス情報の書き込み
+        writeFully(ByteBuffer.wrap(index.toBytes(indexSize)), EBZipConstants.EBZIP_HEADER_SIZE);
+        // ヘッダ情報の書き込み
+        EBZipHeader header = EBZipHeader.create(setting.getLevel(), fileSize, crc32.getValue());
+        writeFully(ByteBuffer.wrap(header.toBytes()), 0);
+        channel.force(true);
+        outTotalLength += EBZipConstants.EBZIP_HEADER_SIZE + indexSize;
+    }
+
+    /**
+     * 読み込んだ入力データの長さを返します。
+     *
+     * @return 入力データの長さ
+     */
+    public long getInTotalLength() {
+        return inTotalLength;
+    }
+
+    /**
+     * 書き込んだ出力データの長さを返します。
+     *
+     * @return 出力データの長さ
+     */
+    public long getOutTotalLength() {
+        return outTotalLength;
+    }
+
+    /**
+     * スライス数を返します。
+     *
+     * @return スライス数
+     */
+    public int getSliceCount() {
+        return totalSlice;
+    }
+
+    /**
+     * 1スレッドでスライスを順に圧縮します。
+     */
+    private void zipSequential(final BookInputStream bis) throws EBException, IOException {
+        ByteBuffer inBuf = ByteBuffer.allocate(sliceSize);
+        ByteBuffer outBuf;
+        if (directBuffers) {
+            outBuf = ByteBuffer.allocateDirect(sliceSize);
+        } else {
+            outBuf = ByteBuffer.allocate(sliceSize);
+        }
+        SliceCompressor compressor = setting.newCompressor();
+        try {
+            for (int i = startSlice; i < totalSlice; i++) {
+                ByteBuffer in = readSlice(bis, inBuf, i);
+                if (base == null || !base.reuse(i, in, outBuf)) {
+                    compressor.compress(in, outBuf);
+                }
+                outputSliceData(i, outBuf);
+            }
+        } finally {
+            compressor.end();
+        }
+    }
+
+    /**
+     * 読み込み、圧縮、書き込みの3段のパイプラインでスライスを圧縮します。
+     * <p>
+     * 読み込みスレッドがスライスを順に読み込んで圧縮ワーカーに渡し、このスレッドが
+     * 圧縮結果をスライス順に書き込みます。段の間のキューは有界で、先読みするスライス数は
+     * キューの深さまでに制限されます。出力は逐次圧縮と同一になります。
+     */
+    private void zipPipelined(final BookInputStream bis) throws IOException {
+        // ワーカーごとに1つの圧縮器
+        BlockingQueue<SliceCompressor> compressors = new ArrayBlockingQueue<>(threads);
+        for (int i = 0; i < threads; i++) {
+            compressors.add(setting.newCompressor());
+        }
+        int depth = queueDepth;
+        if (depth <= 0) {
+            depth = threads * 2;
+        }
+        BlockingQueue<Future<ByteBuffer>> queue = new ArrayBlockingQueue<>(depth);
+        // 読み込み中、キュー内、圧縮中、書き込み中のスライスの分だけバッファを確保する
+        int poolSize = depth + threads + 2;
+        BufferPool inputPool = new BufferPool(poolSize, sliceSize, false);
+        BufferPool outputPool = new BufferPool(poolSize, sliceSize, directBuffers);
+        Thread reader = new Thread(() -> readSlices(bis, compressors, inputPool, outputPool, queue),
+                "ebzip-reader");
+        reader.setDaemon(true);
+        reader.start();
+        Future<ByteBuffer> current = null;
+        try {
+            for (int i = startSlice; i < totalSlice; i++) {
+                current = queue.take();
+                ByteBuffer out = Futures.await(current);
+                current = null;
+                outputSliceData(i, out);
+                outputPool.release(out);
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } finally {
+            // 読み込みスレッドが入力を読み終えてから後始末する
+            if (reader.isAlive()) {
+                reader.interrupt();
+            }
+            boolean interrupted = joinUninterruptibly(reader);
+            if (current != null) {
+                current.cancel(true);
+            }
+            for (Future<ByteBuffer> future : queue) {
+                future.cancel(true);
+            }
+            // 圧縮中のタスクが圧縮器を返すのを待ってから解放する
+            for (int i = 0; i < threads; i++) {
+                SliceCompressor compressor;
+                while (true) {
+                    try {
+                        compressor = compressors.take();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                compressor.end();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * スレッドの終了を待ちます。
+     *
+     * @return 待機中に割り込まれた場合はtrue
+     */
+    private static boolean joinUninterruptibly(final Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    /**
+     * パイプラインの読み込み段です。
+     * <p>
+     * スライスを順に読み込み、圧縮タスクをキューに追加します。
+     * 読み込みに失敗した場合は失敗したタスクを追加して終了します。
+     */
+    private void readSlices(final BookInputStream bis, final BlockingQueue<SliceCompressor> compressors,
+                            final BufferPool inputPool, final BufferPool outputPool,
+                            final BlockingQueue<Future<ByteBuffer>> queue) {
+        try {
+            for (int i = startSlice; i < totalSlice; i++) {
+                ByteBuffer scratch = inputPool.take();
+                ByteBuffer in;
+                try {
+                    in = readSlice(bis, scratch, i);
+                } catch (EBException | IOException e) {
+                    queue.put(CompletableFuture.failedFuture(e));
+                    return;
+                }
+                // マッピングされた領域を参照する場合は作業バッファを使わない
+                boolean pooled = in == scratch;
+                if (!pooled) {
+                    inputPool.release(scratch);
+                }
+                final int slice = i;
+                Future<ByteBuffer> future = executor.submit(() -> {
+                    SliceCompressor compressor = compressors.take();
+                    try {
+                        ByteBuffer out = outputPool.take();
+                        if (base == null || !base.reuse(slice, in, out)) {
+                            compressor.compress(in, out);
+                        }
+                        return out;
+                    } finally {
+                        compressors.add(compressor);
+                        if (pooled) {
+                            inputPool.release(in);
+                        }
+                    }
+                });
+                try {
+                    queue.put(future);
+                } catch (InterruptedException e) {
+                    // キューに入らなかったタスクは書き込み側から取り消せない
+                    future.cancel(true);
+                    throw e;
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // 書き込み側が中断した
+        }
+    }
+
+    /**
+     * 圧縮したスライスデータを書き込み、インデックス情報を記録します。
+     */
+    private void outputSliceData(final int i, final ByteBuffer out) throws IOException {
+        int outLen = out.remaining();
+        // 圧縮したスライスデータの書き込み
+        // 直前のスライスの末尾に追加
+        writeFully(out, slicePos);
+
+        // インデックス情報はメモリ上に蓄積する
+        long nextPos = slicePos + outLen;
+        index.setSlice(i, slicePos, nextPos);
+
+        inTotalLength += sliceSize;
+        outTotalLength += outLen + indexSize;
+        slicePos = nextPos;
+
+        // 進捗の表示
+        if (progress != null && (i % interval) + 1 == interval) {
+            double rate = (double) (i + 1) / (double) totalSlice * 100.0;
+            progress.println(FMT.format(rate) + " done ("
+                    + inTotalLength + " / "
+                    + fileSize + " bytes)");
+        }
+
+        // チェックポイントの書き込み
+        if (checkpointFile != null && i + 1 < totalSlice && System.nanoTime() >= nextCheckpoint) {
+            channel.force(false);
+            new Checkpoint(setting, fileSize, file.getFile(), index, i + 1).write(checkpointFile);
+            nextCheckpoint = System.nanoTime() + checkpointNanos;
+        }
+    }
+
+    private void writeFully(final ByteBuffer buf, final long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    /**
+     * 1スライス分のデータを読み込みます。
+     * <p>
+     * 入力ファイルをメモリにマッピングしている場合はマッピングされた領域を参照するバッファを、
+     * そうでない場合は作業バッファに読み込んで返します。
+     * 最終スライスでスライスサイズに満たない場合は0で埋めます。
+     *
+     * @return スライスサイズ分のデータを持つバッファ
+     */
+    private ByteBuffer readSlice(final BookInputStream bis, final ByteBuffer scratch, final int i)
+            throws EBException, IOException {
+        if (source != null) {
+            return source.slice(i, scratch, crc32);
+        }
+        byte[] in = scratch.array();
+        long pos = (long) i * sliceSize;
+        bis.seek(pos);
+        int inLen = bis.read(in, 0, in.length);
+        if (inLen < 0) {
+            throw new IOException("failed to read the file (" + file.getPath() + ")");
+        } else if (inLen == 0 || (inLen != in.length && pos + inLen != bis.getFileSize())) {
+            throw new IOException("unexpected EOF (" + file.getPath() + ")");
+        }
+        // 先頭ページのS-EBXA圧縮情報はCRCの計算前に取り除く
+        if (fixSEBXA && i == 0 && inLen >= BookInputStream.PAGE_SIZE) {
+            SEBXAIndexPage.removeCompressionIndex(ByteBuffer.wrap(in));
+        }
+        crc32.update(in, 0, inLen);
+        if (inLen < sliceSize) {
+            Arrays.fill(in, inLen, in.length, (byte) 0);
+        }
+        scratch.clear();
+        return scratch;
+    }
+}
+
+// end of EBZipWriter.java
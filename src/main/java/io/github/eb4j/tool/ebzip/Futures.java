@@ -0,0 +1,45 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 非同期処理の結果を取得するユーティリティ。
+ *
+ * @author Hiroshi Miura
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * 非同期処理の完了を待ち、結果を返します。
+     * <p>
+     * 処理が{@link IOException}で失敗した場合はそのまま送出し、その他の例外は
+     * {@link IOException}に包んで送出します。待機中に割り込まれた場合は、
+     * スレッドの割り込み状態を戻して{@link IOException}を送出します。
+     *
+     * @param future 非同期処理
+     * @param <T> 結果の型
+     * @return 処理の結果
+     * @throws IOException 処理が失敗した場合、待機中に割り込まれた場合
+     */
+    public static <T> T await(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+}
+
+// end of Futures.java
@@ -0,0 +1,132 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 差分圧縮で参照する既存のEBZIPファイル。
+ * <p>
+ * 新しいスライスの内容が既存ファイルの同じ位置のスライスと一致する場合、
+ * 既存の圧縮データを再利用できます。
+ * 比較は既存スライスを伸張して行います。伸張は圧縮よりはるかに軽いため、
+ * 変更のないスライスの再圧縮を省略できます。
+ * 複数のスレッドから同時に使用できます。
+ *
+ * @author Hiroshi Miura
+ */
+public final class IncrementalBase implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final EBZipIndex index;
+    private final BlockingQueue<SliceInflater> inflaters;
+    private final AtomicInteger reused = new AtomicInteger();
+
+    private IncrementalBase(final FileChannel channel, final EBZipIndex index, final int sliceSize,
+                            final int workers) {
+        this.channel = channel;
+        this.index = index;
+        inflaters = new ArrayBlockingQueue<>(workers);
+        for (int i = 0; i < workers; i++) {
+            inflaters.add(new SliceInflater(sliceSize));
+        }
+    }
+
+    /**
+     * 既存のEBZIPファイルを開きます。
+     *
+     * @param file 既存のEBZIPファイル
+     * @param sliceSize 新しく圧縮するスライスサイズ
+     * @param workers 同時に使用するスレッド数
+     * @return 参照用オブジェクト、スライスサイズが異なり再利用できない場合はnull
+     * @throws IOException 読み込みに失敗した場合またはEBZIP形式でない場合
+     */
+    public static IncrementalBase open(final File file, final int sliceSize, final int workers)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            EBZipHeader header = EBZipHeader.read(channel);
+            if (header.getSliceSize() != sliceSize) {
+                channel.close();
+                return null;
+            }
+            return new IncrementalBase(channel, EBZipIndex.read(channel, header), sliceSize, workers);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 既存ファイルの圧縮データを再利用できる場合、出力バッファにコピーします。
+     *
+     * @param slice スライス番号
+     * @param in 新しいスライスデータ (スライスサイズ分)
+     * @param out 出力バッファ (容量はスライスサイズ)
+     * @return 再利用した場合はtrue、出力バッファはflipされた状態になる
+     */
+    public boolean reuse(final int slice, final ByteBuffer in, final ByteBuffer out) {
+        if (slice >= index.getSliceCount()) {
+            return false;
+        }
+        SliceInflater inflater;
+        try {
+            inflater = inflaters.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            inflater.inflate(channel, index, slice);
+            if (!ByteBuffer.wrap(inflater.getOutput()).equals(in.duplicate())) {
+                return false;
+            }
+            out.clear().limit(index.getSliceLength(slice));
+            long pos = index.getSliceStart(slice);
+            while (out.hasRemaining()) {
+                int n = channel.read(out, pos);
+                if (n < 0) {
+                    return false;
+                }
+                pos += n;
+            }
+            out.flip();
+        } catch (IOException e) {
+            // 壊れたスライスは再利用せずに圧縮し直す
+            return false;
+        } finally {
+            inflaters.add(inflater);
+        }
+        reused.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 再利用したスライス数を返します。
+     *
+     * @return スライス数
+     */
+    public int getReusedCount() {
+        return reused.get();
+    }
+
+    /**
+     * ファイルを閉じ、資源を解放します。
+     *
+     * @throws IOException クローズに失敗した場合
+     */
+    @Override
+    public void close() throws IOException {
+        for (SliceInflater inflater : inflaters) {
+            inflater.end();
+        }
+        channel.close();
+    }
+}
+
+// end of IncrementalBase.java
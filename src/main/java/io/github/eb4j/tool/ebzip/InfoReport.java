@@ -0,0 +1,91 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * ファイル情報の機械可読形式での出力。
+ * <p>
+ * ファイルごとの情報をマップとして記録し、ファイル名順にJSON配列または
+ * ヘッダ行付きのCSVとして出力します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class InfoReport {
+
+    /**
+     * CSV形式で出力するファイル情報の項目
+     */
+    private static final String[] CSV_COLUMNS = {
+        "book", "file", "format", "size", "compressedSize", "level", "error",
+    };
+
+    private InfoReport() {
+    }
+
+    /**
+     * ファイル情報をJSON形式で出力します。
+     *
+     * @param out 出力先
+     * @param records ファイル情報
+     * @throws IOException JSONへの変換に失敗した場合
+     */
+    public static void printJson(final PrintStream out, final List<Map<String, Object>> records)
+            throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(sort(records)));
+    }
+
+    /**
+     * ファイル情報をCSV形式で出力します。
+     *
+     * @param out 出力先
+     * @param records ファイル情報
+     */
+    public static void printCsv(final PrintStream out, final List<Map<String, Object>> records) {
+        out.println(String.join(",", CSV_COLUMNS));
+        for (Map<String, Object> info : sort(records)) {
+            StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < CSV_COLUMNS.length; i++) {
+                if (i > 0) {
+                    buf.append(',');
+                }
+                Object value = info.get(CSV_COLUMNS[i]);
+                if (value != null) {
+                    buf.append(escape(value.toString()));
+                }
+            }
+            out.println(buf.toString());
+        }
+    }
+
+    /**
+     * ファイル情報をファイル名順に並べたリストを返します。
+     */
+    private static List<Map<String, Object>> sort(final List<Map<String, Object>> records) {
+        List<Map<String, Object>> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparing((Map<String, Object> info) -> (String) info.get("file")));
+        return sorted;
+    }
+
+    /**
+     * CSVのフィールドをエスケープします。
+     *
+     * @param value 値
+     * @return エスケープした値
+     */
+    static String escape(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
+
+// end of InfoReport.java
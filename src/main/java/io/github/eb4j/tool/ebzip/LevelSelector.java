@@ -0,0 +1,202 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.io.EBZipConstants;
+
+/**
+ * ファイルごとの圧縮設定の選択器。
+ * <p>
+ * ファイル中の数か所から標本を読み込み、EBZIP圧縮レベルとDeflaterの設定の各組合せで
+ * 圧縮して、圧縮後のサイズと圧縮/伸張に要した時間を計測します。
+ * 目標がサイズの場合は推定サイズが最小の設定を、読み込み速度の場合は推定サイズが
+ * 最小値の{@value #READ_TOLERANCE_PERCENT}%増し以内の設定のうち、ランダムアクセス
+ * 1回あたりの伸張時間が最短のものを選択します。
+ * インスタンスはスレッドセーフではないため、スレッドごとに生成してください。
+ *
+ * @author Hiroshi Miura
+ */
+public final class LevelSelector {
+
+    /**
+     * 圧縮設定の選択の目標。
+     */
+    public enum Goal {
+        /**
+         * 圧縮後のサイズを最小にする
+         */
+        SIZE,
+        /**
+         * ランダムアクセスの読み込みを最速にする
+         */
+        READ,
+    }
+
+    /**
+     * 標本数
+     */
+    private static final int SAMPLE_COUNT = 8;
+
+    /**
+     * 標本1つのサイズ (最大のスライスサイズ)
+     */
+    private static final int SAMPLE_SIZE = BookInputStream.PAGE_SIZE << EBZipConstants.EBZIP_MAX_LEVEL;
+
+    /**
+     * 読み込み速度を目標とする場合に許容するサイズの増加率
+     */
+    public static final int READ_TOLERANCE_PERCENT = 10;
+
+    /**
+     * 試行するDeflaterの圧縮レベルと圧縮戦略の組
+     */
+    private static final int[][] DEFLATE_SETTINGS = {
+        {Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY},
+        {6, Deflater.DEFAULT_STRATEGY},
+        {Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY},
+        {Deflater.BEST_COMPRESSION, Deflater.FILTERED},
+        {Deflater.BEST_COMPRESSION, Deflater.HUFFMAN_ONLY},
+    };
+
+    private final Goal goal;
+
+    /**
+     * Constructor.
+     *
+     * @param goal 選択の目標
+     */
+    public LevelSelector(final Goal goal) {
+        this.goal = goal;
+    }
+
+    /**
+     * 指定された入力ストリームのファイルに適した圧縮設定を選択します。
+     *
+     * @param bis 入力ストリーム
+     * @param minLevel 試行する最小のEBZIP圧縮レベル
+     * @param maxLevel 試行する最大のEBZIP圧縮レベル
+     * @return 選択した圧縮設定
+     * @throws EBException 読み込み中にエラーが発生した場合
+     * @throws IOException 標本の伸張に失敗した場合
+     */
+    public CompressionSetting select(final BookInputStream bis, final int minLevel, final int maxLevel)
+            throws EBException, IOException {
+        long fileSize = bis.getFileSize();
+        int count = (int) Math.min((fileSize + SAMPLE_SIZE - 1) / SAMPLE_SIZE, SAMPLE_COUNT);
+        byte[][] samples = new byte[count][SAMPLE_SIZE];
+        int[] lengths = new int[count];
+        readSamples(bis, samples, lengths);
+        int indexSize = EBZipHeader.getIndexSize(fileSize);
+        CompressionSetting best = null;
+        long bestSize = Long.MAX_VALUE;
+        long bestTime = Long.MAX_VALUE;
+        long[] sizes = new long[(maxLevel - minLevel + 1) * DEFLATE_SETTINGS.length];
+        long[] times = new long[sizes.length];
+        CompressionSetting[] settings = new CompressionSetting[sizes.length];
+        int n = 0;
+        for (int level = minLevel; level <= maxLevel; level++) {
+            for (int[] deflate : DEFLATE_SETTINGS) {
+                settings[n] = new CompressionSetting(level, deflate[0], deflate[1]);
+                measure(settings[n], samples, lengths, indexSize, sizes, times, n);
+                n++;
+            }
+        }
+        long minSize = Arrays.stream(sizes).min().orElse(0);
+        long limit = minSize + minSize * READ_TOLERANCE_PERCENT / 100;
+        for (int i = 0; i < settings.length; i++) {
+            boolean better;
+            if (goal == Goal.SIZE) {
+                better = sizes[i] < bestSize || (sizes[i] == bestSize && times[i] < bestTime);
+            } else {
+                better = sizes[i] <= limit && times[i] < bestTime;
+            }
+            if (better) {
+                best = settings[i];
+                bestSize = sizes[i];
+                bestTime = times[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 指定された設定で標本を圧縮し、推定サイズと所要時間を記録します。
+     * <p>
+     * サイズを目標とする場合は圧縮時間を、読み込み速度を目標とする場合は
+     * スライス1つあたりの伸張時間を記録します。
+     */
+    private void measure(final CompressionSetting setting, final byte[][] samples, final int[] lengths,
+                         final int indexSize, final long[] sizes, final long[] times, final int n)
+            throws IOException {
+        int sliceSize = setting.getSliceSize();
+        SliceCompressor compressor = setting.newCompressor();
+        SliceInflater inflater = new SliceInflater(sliceSize);
+        ByteBuffer out = ByteBuffer.allocate(sliceSize);
+        byte[] compressed = new byte[sliceSize];
+        long size = 0;
+        long deflateTime = 0;
+        long inflateTime = 0;
+        int slices = 0;
+        try {
+            for (int i = 0; i < samples.length; i++) {
+                for (int off = 0; off < lengths[i]; off += sliceSize) {
+                    long start = System.nanoTime();
+                    int len = compressor.compress(ByteBuffer.wrap(samples[i], off, sliceSize), out);
+                    deflateTime += System.nanoTime() - start;
+                    out.get(compressed, 0, len);
+                    start = System.nanoTime();
+                    inflater.inflate(compressed, len);
+                    inflateTime += System.nanoTime() - start;
+                    size += len + indexSize;
+                    slices++;
+                }
+            }
+        } finally {
+            compressor.end();
+            inflater.end();
+        }
+        sizes[n] = size;
+        if (goal == Goal.SIZE) {
+            times[n] = deflateTime;
+        } else {
+            times[n] = inflateTime / Math.max(slices, 1);
+        }
+    }
+
+    /**
+     * ファイル中から等間隔に標本を読み込みます。
+     * <p>
+     * ファイルが標本の合計サイズ以下の場合はファイル全体を標本とします。
+     * ファイル末尾の標本は最終スライスと同様に0で埋められます。
+     */
+    private static void readSamples(final BookInputStream bis, final byte[][] samples, final int[] lengths)
+            throws EBException {
+        long fileSize = bis.getFileSize();
+        long windows = (fileSize + SAMPLE_SIZE - 1) / SAMPLE_SIZE;
+        for (int i = 0; i < samples.length; i++) {
+            long window = i;
+            if (windows > SAMPLE_COUNT) {
+                window = (windows - 1) * i / (SAMPLE_COUNT - 1);
+            }
+            byte[] b = samples[i];
+            long pos = window * SAMPLE_SIZE;
+            bis.seek(pos);
+            int len = 0;
+            while (len < b.length && pos + len < fileSize) {
+                int n = bis.read(b, len, b.length - len);
+                if (n <= 0) {
+                    break;
+                }
+                len += n;
+            }
+            lengths[i] = len;
+        }
+    }
+}
+
+// end of LevelSelector.java
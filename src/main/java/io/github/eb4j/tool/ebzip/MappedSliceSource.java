@@ -0,0 +1,108 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Adler32;
+
+/**
+ * 無圧縮ファイルをメモリにマッピングしてスライス単位で読み出す入力。
+ * <p>
+ * 2GBを超えるファイルにも対応するため、ファイルを一定サイズの窓ごとにマッピングします。
+ * 窓のサイズはスライスサイズの倍数なので、スライスが窓をまたぐことはありません。
+ * 1スレッドから順に読み出すことを想定しています。
+ *
+ * @author Hiroshi Miura
+ */
+public final class MappedSliceSource implements AutoCloseable {
+
+    /**
+     * マッピングする窓のサイズ
+     */
+    static final long WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int sliceSize;
+    private MappedByteBuffer window;
+    private long windowStart = -1L;
+
+    /**
+     * Constructor.
+     *
+     * @param file 入力ファイル
+     * @param sliceSize スライスサイズ
+     * @throws IOException ファイルを開けない場合
+     */
+    public MappedSliceSource(final File file, final int sliceSize) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        this.sliceSize = sliceSize;
+    }
+
+    /**
+     * ファイルサイズを返します。
+     *
+     * @return ファイルサイズ
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 指定スライスのデータを返します。
+     * <p>
+     * 通常はマッピングされた領域をそのまま参照するバッファを返します。
+     * スライスサイズに満たない最終スライスのみ、作業バッファにコピーして0で埋めたものを返します。
+     *
+     * @param slice スライス番号
+     * @param scratch 作業バッファ (容量はスライスサイズ)
+     * @param crc スライスのデータで更新するAdler-32
+     * @return スライスサイズ分のデータを持つバッファ
+     * @throws IOException マッピングに失敗した場合
+     */
+    public ByteBuffer slice(final int slice, final ByteBuffer scratch, final Adler32 crc) throws IOException {
+        long pos = (long) slice * sliceSize;
+        if (pos >= fileSize) {
+            throw new IOException("slice " + slice + " is out of file");
+        }
+        int len = (int) Math.min(sliceSize, fileSize - pos);
+        long start = pos - (pos % WINDOW_SIZE);
+        if (start != windowStart) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+            windowStart = start;
+        }
+        int off = (int) (pos - start);
+        ByteBuffer view = window.duplicate();
+        view.limit(off + len).position(off);
+        crc.update(view);
+        view.position(off);
+        if (len == sliceSize) {
+            return view.slice();
+        }
+        // 最終スライスでスライスサイズに満たない場合は0で埋める
+        scratch.clear();
+        scratch.put(view);
+        while (scratch.hasRemaining()) {
+            scratch.put((byte) 0);
+        }
+        scratch.flip();
+        return scratch;
+    }
+
+    /**
+     * ファイルを閉じます。
+     *
+     * @throws IOException クローズに失敗した場合
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
+
+// end of MappedSliceSource.java
@@ -0,0 +1,173 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * EBZIP形式のファイルの全スライスを伸張する処理。
+ * <p>
+ * 実行器が指定された場合は、同時に伸張するスライス数の2倍までのスライスを先行して
+ * 実行器に渡し、完了をスライス順に待ちます。伸張したデータはワーカースレッドで出力先に渡し、
+ * スライスごとのAdler-32値を連結して返します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class ParallelInflater {
+
+    /**
+     * 伸張したスライスデータの出力先。
+     * <p>
+     * ワーカースレッドから呼び出されます。
+     */
+    @FunctionalInterface
+    public interface SliceSink {
+
+        /**
+         * 伸張したスライスデータを出力します。
+         *
+         * @param inflater スライスを伸張した伸張器
+         * @param position 伸張後のファイルでのスライスの位置
+         * @param len スライスのデータ長
+         * @throws IOException 出力に失敗した場合
+         */
+        void accept(SliceInflater inflater, long position, int len) throws IOException;
+    }
+
+    /**
+     * 進捗の通知先。
+     * <p>
+     * 呼び出し元のスレッドで、スライスの完了ごとにスライス順に呼び出されます。
+     */
+    @FunctionalInterface
+    public interface Progress {
+
+        /**
+         * 進捗を通知します。
+         *
+         * @param done 完了したスライス数
+         * @param length 完了したスライスのデータ長の合計
+         */
+        void update(int done, long length);
+    }
+
+    private final ExecutorService executor;
+    private final int workers;
+
+    /**
+     * Constructor.
+     *
+     * @param executor スライスの伸張を実行する実行器、nullの場合は逐次実行
+     * @param workers 同時に伸張するスライス数
+     */
+    public ParallelInflater(final ExecutorService executor, final int workers) {
+        this.executor = executor;
+        if (executor == null) {
+            this.workers = 1;
+        } else {
+            this.workers = Math.max(workers, 1);
+        }
+    }
+
+    /**
+     * 全スライスを伸張し、伸張したデータ全体のAdler-32値を返します。
+     * <p>
+     * 失敗した場合も、実行中のタスクの完了を待ってから伸張器を解放して戻ります。
+     *
+     * @param in 入力チャネル
+     * @param header ヘッダ情報
+     * @param index インデックス
+     * @param sink 伸張したスライスデータの出力先、nullの場合は出力しない
+     * @param progress 進捗の通知先、nullの場合は通知しない
+     * @return 伸張したデータのAdler-32値
+     * @throws IOException 読み込み、伸張または出力に失敗した場合
+     * @throws InterruptedException 伸張中に割り込まれた場合
+     */
+    public long inflate(final FileChannel in, final EBZipHeader header, final EBZipIndex index,
+                        final SliceSink sink, final Progress progress) throws IOException, InterruptedException {
+        long fileSize = header.getFileSize();
+        int sliceSize = header.getSliceSize();
+        int totalSlice = index.getSliceCount();
+        Deque<Future<Long>> pending = new ArrayDeque<>();
+        BlockingQueue<SliceInflater> inflaters = new ArrayBlockingQueue<>(workers);
+        for (int i = 0; i < workers; i++) {
+            inflaters.add(new SliceInflater(sliceSize));
+        }
+        try {
+            long crc = Adler32Combiner.INITIAL;
+            long length = 0;
+            int submitted = 0;
+            int done = 0;
+            while (done < totalSlice) {
+                long sliceCrc;
+                if (executor == null) {
+                    sliceCrc = inflateSlice(in, index, inflaters, done, fileSize, sink);
+                } else if (submitted < totalSlice && pending.size() < workers * 2) {
+                    final int slice = submitted++;
+                    pending.add(executor.submit(() -> inflateSlice(in, index, inflaters, slice, fileSize, sink)));
+                    continue;
+                } else {
+                    sliceCrc = Futures.await(pending.poll());
+                }
+                int n = (int) Math.min(sliceSize, fileSize - (long) done * sliceSize);
+                crc = Adler32Combiner.combine(crc, sliceCrc, n);
+                length += n;
+                done++;
+                if (progress != null) {
+                    progress.update(done, length);
+                }
+            }
+            return crc;
+        } finally {
+            // 開始前のタスクを取り消し、実行中のタスクが伸張器を返すのを待ってから解放する
+            for (Future<Long> future : pending) {
+                future.cancel(false);
+            }
+            boolean interrupted = false;
+            for (int i = 0; i < workers; i++) {
+                SliceInflater inflater;
+                while (true) {
+                    try {
+                        inflater = inflaters.take();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                inflater.end();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 1スライスを伸張して出力先に渡し、伸張したデータのAdler-32値を返します。
+     */
+    private static long inflateSlice(final FileChannel in, final EBZipIndex index,
+                                     final BlockingQueue<SliceInflater> inflaters, final int slice,
+                                     final long fileSize, final SliceSink sink)
+            throws IOException, InterruptedException {
+        SliceInflater inflater = inflaters.take();
+        try {
+            inflater.inflate(in, index, slice);
+            int sliceSize = inflater.getOutput().length;
+            long pos = (long) slice * sliceSize;
+            int n = (int) Math.min(sliceSize, fileSize - pos);
+            if (sink != null) {
+                sink.accept(inflater, pos, n);
+            }
+            return inflater.checksum(n);
+        } finally {
+            inflaters.add(inflater);
+        }
+    }
+}
+
+// end of ParallelInflater.java
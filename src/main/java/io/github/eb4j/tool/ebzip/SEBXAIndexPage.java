@@ -0,0 +1,82 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import io.github.eb4j.io.BookInputStream;
+
+/**
+ * S-EBXA形式の本文ファイルのインデックスページ。
+ * <p>
+ * S-EBXA形式の本文ファイルでは、先頭ページのインデックスに圧縮情報
+ * (インデックス種別0x21/0x22) が含まれます。伸張したデータや他の形式に
+ * 変換したデータでは、これらのインデックスを取り除く必要があります。
+ *
+ * @author Hiroshi Miura
+ */
+public final class SEBXAIndexPage {
+
+    /**
+     * インデックス1件のサイズ
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    private SEBXAIndexPage() {
+    }
+
+    /**
+     * 指定されたファイルの先頭ページからS-EBXA圧縮情報のインデックスを取り除きます。
+     *
+     * @param file ファイル
+     * @throws IOException 読み書きに失敗した場合
+     */
+    public static void removeCompressionIndex(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // インデックスページをメモリにマッピング
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, BookInputStream.PAGE_SIZE);
+            removeCompressionIndex(buf);
+            buf.force();
+        }
+    }
+
+    /**
+     * インデックスページからS-EBXA圧縮情報のインデックスを取り除き、
+     * 残りのインデックスを前に詰めます。
+     *
+     * @param buf インデックスページ
+     */
+    public static void removeCompressionIndex(final ByteBuffer buf) {
+        // 0x21/0x22のインデックスの取り除き
+        int indexCount = buf.get(1) & 0xff;
+        int removeCount = 0;
+        int inOff = ENTRY_SIZE;
+        int outOff = ENTRY_SIZE;
+        for (int i = 0; i < indexCount; i++) {
+            int index = buf.get(inOff) & 0xff;
+            if (index == 0x21 || index == 0x22) {
+                removeCount++;
+            } else {
+                if (inOff != outOff) {
+                    for (int j = 0; j < ENTRY_SIZE; j++) {
+                        buf.put(outOff + j, buf.get(inOff + j));
+                    }
+                }
+                outOff += ENTRY_SIZE;
+            }
+            inOff += ENTRY_SIZE;
+        }
+        for (int i = 0; i < removeCount; i++) {
+            for (int j = 0; j < ENTRY_SIZE; j++) {
+                buf.put(outOff + j, (byte) 0);
+            }
+            outOff += ENTRY_SIZE;
+        }
+    }
+}
+
+// end of SEBXAIndexPage.java
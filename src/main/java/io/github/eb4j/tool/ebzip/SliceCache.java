@@ -0,0 +1,240 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 伸張済みスライスのキャッシュ。
+ * <p>
+ * ファイルとスライス番号をキーとして伸張済みのスライスデータを保持し、
+ * 合計サイズが上限を超えると最も長く参照されていないスライスから破棄します。
+ * ダイレクトバッファを使う場合、スライスデータはJavaヒープの外に確保されます。
+ * 複数のスレッドから同時に使用できます。
+ *
+ * @author Hiroshi Miura
+ */
+public final class SliceCache {
+
+    /**
+     * デフォルトの上限サイズ
+     */
+    public static final long DEFAULT_CAPACITY = 32L << 20;
+
+    private static SliceCache shared = new SliceCache(DEFAULT_CAPACITY, false);
+
+    private final long capacity;
+    private final boolean direct;
+    private final LinkedHashMap<Key, ByteBuffer> map = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity 保持するスライスデータの合計サイズの上限
+     * @param direct ダイレクトバッファを使う場合はtrue
+     */
+    public SliceCache(final long capacity, final boolean direct) {
+        this.capacity = capacity;
+        this.direct = direct;
+    }
+
+    /**
+     * ツール間で共有するキャッシュを返します。
+     *
+     * @return 共有キャッシュ
+     */
+    public static synchronized SliceCache getShared() {
+        return shared;
+    }
+
+    /**
+     * 共有キャッシュを指定された設定で作り直します。
+     *
+     * @param capacity 保持するスライスデータの合計サイズの上限
+     * @param direct ダイレクトバッファを使う場合はtrue
+     * @return 新しい共有キャッシュ
+     */
+    public static synchronized SliceCache configureShared(final long capacity, final boolean direct) {
+        shared = new SliceCache(capacity, direct);
+        return shared;
+    }
+
+    /**
+     * キャッシュからスライスデータを取り出します。
+     *
+     * @param file ファイルの識別子
+     * @param slice スライス番号
+     * @return 読み込み専用のスライスデータ、キャッシュにない場合はnull
+     */
+    public ByteBuffer get(final Object file, final int slice) {
+        ByteBuffer buf;
+        synchronized (map) {
+            buf = map.get(new Key(file, slice));
+        }
+        if (buf == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return buf.duplicate();
+    }
+
+    /**
+     * 伸張済みのスライスデータをキャッシュに格納します。
+     * <p>
+     * データはコピーして保持するため、呼び出し後にバッファを再利用できます。
+     * 上限サイズより大きいデータは格納しません。
+     *
+     * @param file ファイルの識別子
+     * @param slice スライス番号
+     * @param data スライスデータ
+     * @param len データ長
+     * @return 読み込み専用のスライスデータ
+     */
+    public ByteBuffer put(final Object file, final int slice, final byte[] data, final int len) {
+        ByteBuffer buf;
+        if (direct) {
+            buf = ByteBuffer.allocateDirect(len);
+        } else {
+            buf = ByteBuffer.allocate(len);
+        }
+        buf.put(data, 0, len).flip();
+        buf = buf.asReadOnlyBuffer();
+        if (len > capacity) {
+            return buf;
+        }
+        synchronized (map) {
+            ByteBuffer old = map.put(new Key(file, slice), buf);
+            if (old != null) {
+                size -= old.capacity();
+            }
+            size += len;
+            Iterator<ByteBuffer> it = map.values().iterator();
+            while (size > capacity && it.hasNext()) {
+                size -= it.next().capacity();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return buf.duplicate();
+    }
+
+    /**
+     * 指定されたファイルのスライスをすべて破棄します。
+     *
+     * @param file ファイルの識別子
+     */
+    public void invalidate(final Object file) {
+        synchronized (map) {
+            Iterator<Map.Entry<Key, ByteBuffer>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, ByteBuffer> e = it.next();
+                if (e.getKey().file.equals(file)) {
+                    size -= e.getValue().capacity();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * キャッシュの上限サイズを返します。
+     *
+     * @return 上限サイズ
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 保持しているスライスデータの合計サイズを返します。
+     *
+     * @return 合計サイズ
+     */
+    public long getSize() {
+        synchronized (map) {
+            return size;
+        }
+    }
+
+    /**
+     * キャッシュにあったスライスの参照回数を返します。
+     *
+     * @return ヒット数
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * キャッシュになかったスライスの参照回数を返します。
+     *
+     * @return ミス数
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 上限サイズを超えたため破棄したスライス数を返します。
+     *
+     * @return 破棄数
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * キャッシュの統計情報を表す文字列を返します。
+     *
+     * @return 統計情報
+     */
+    @Override
+    public String toString() {
+        long h = getHits();
+        long total = h + getMisses();
+        long rate = 0;
+        if (total > 0) {
+            rate = h * 100 / total;
+        }
+        return String.format("slice cache: %d hits, %d misses (%d%%), %d evictions, %d / %d bytes",
+                h, getMisses(), rate, getEvictions(), getSize(), capacity);
+    }
+
+    /**
+     * キャッシュのキー。
+     */
+    private static final class Key {
+
+        private final Object file;
+        private final int slice;
+
+        Key(final Object file, final int slice) {
+            this.file = file;
+            this.slice = slice;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return slice == k.slice && file.equals(k.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, slice);
+        }
+    }
+}
+
+// end of SliceCache.java
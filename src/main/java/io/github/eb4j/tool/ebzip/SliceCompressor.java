@@ -0,0 +1,143 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * EBZIP形式のスライス圧縮器。
+ * <p>
+ * 1スライスを1つのzlibストリームとして圧縮します。圧縮結果がスライスサイズ以上に
+ * なる場合はオリジナルのデータをそのまま出力します。
+ * 全て0のスライスは初回に圧縮した結果を、直前に圧縮したスライスと同一のスライスは
+ * 直前の圧縮結果を再利用し、Deflaterを通しません。出力は常に圧縮した場合と同一です。
+ * 比較と再利用に使うバッファは生成時に確保し、スライスごとには確保しません。
+ * インスタンスはスレッドセーフではないため、スレッドごとに生成してください。
+ *
+ * @author Hiroshi Miura
+ */
+public final class SliceCompressor {
+
+    private final int sliceSize;
+    private final Deflater deflater;
+    private final ByteBuffer zeros;
+    private final byte[] zeroOut;
+    private final byte[] lastIn;
+    private final ByteBuffer lastInView;
+    private final byte[] lastOut;
+    private int zeroOutLength = -1;
+    private int lastOutLength = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param sliceSize スライスサイズ
+     */
+    public SliceCompressor(final int sliceSize) {
+        this(sliceSize, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sliceSize スライスサイズ
+     * @param deflateLevel Deflaterの圧縮レベル
+     * @param strategy Deflaterの圧縮戦略
+     */
+    public SliceCompressor(final int sliceSize, final int deflateLevel, final int strategy) {
+        this.sliceSize = sliceSize;
+        deflater = new Deflater(deflateLevel);
+        deflater.setStrategy(strategy);
+        zeros = ByteBuffer.allocate(sliceSize);
+        zeroOut = new byte[sliceSize];
+        lastIn = new byte[sliceSize];
+        lastInView = ByteBuffer.wrap(lastIn);
+        lastOut = new byte[sliceSize];
+    }
+
+    /**
+     * スライスサイズを返します。
+     *
+     * @return スライスサイズ
+     */
+    public int getSliceSize() {
+        return sliceSize;
+    }
+
+    /**
+     * 1スライス分のデータを圧縮します。
+     * <p>
+     * 入力バッファのpositionからスライスサイズ分を圧縮し、出力バッファに書き込みます。
+     * 出力バッファは書き込み後にflipされ、圧縮データを読み出せる状態になります。
+     *
+     * @param in 入力データ (スライスサイズ分)
+     * @param out 出力バッファ (容量はスライスサイズ)
+     * @return 出力データ長
+     */
+    public int compress(final ByteBuffer in, final ByteBuffer out) {
+        if (in.mismatch(zeros) < 0) {
+            // 全て0のスライス
+            if (zeroOutLength < 0) {
+                zeroOutLength = deflate(in, out);
+                out.get(zeroOut, 0, zeroOutLength);
+                out.position(0);
+                return zeroOutLength;
+            }
+            return reuse(in, out, zeroOut, zeroOutLength);
+        }
+        if (lastOutLength >= 0 && in.mismatch(lastInView) < 0) {
+            // 直前のスライスと同一のスライス
+            return reuse(in, out, lastOut, lastOutLength);
+        }
+        int start = in.position();
+        int length = in.remaining();
+        in.get(lastIn, 0, length);
+        in.position(start);
+        lastInView.limit(length);
+        lastOutLength = deflate(in, out);
+        out.get(lastOut, 0, lastOutLength);
+        out.position(0);
+        return lastOutLength;
+    }
+
+    /**
+     * 入力データを読み飛ばし、保持している圧縮結果を出力バッファに書き込みます。
+     */
+    private static int reuse(final ByteBuffer in, final ByteBuffer out, final byte[] block, final int length) {
+        in.position(in.limit());
+        out.clear();
+        out.put(block, 0, length);
+        out.flip();
+        return length;
+    }
+
+    /**
+     * Deflaterで1スライス分のデータを圧縮します。
+     */
+    private int deflate(final ByteBuffer in, final ByteBuffer out) {
+        int start = in.position();
+        deflater.reset();
+        deflater.setInput(in);
+        deflater.finish();
+        out.clear();
+        while (!deflater.finished() && out.position() < sliceSize) {
+            deflater.deflate(out, Deflater.SYNC_FLUSH);
+        }
+        // 圧縮スライスがオリジナルより大きい場合はオリジナルを書き込む
+        if (!deflater.finished() || out.position() >= sliceSize) {
+            out.clear();
+            in.position(start);
+            out.put(in);
+        }
+        out.flip();
+        return out.limit();
+    }
+
+    /**
+     * 圧縮器の資源を解放します。
+     */
+    public void end() {
+        deflater.end();
+    }
+}
+
+// end of SliceCompressor.java
@@ -0,0 +1,144 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * EBZIP形式のスライス伸張器。
+ * <p>
+ * 圧縮データと伸張データの作業バッファを保持します。
+ * インスタンスはスレッドセーフではないため、スレッドごとに生成してください。
+ *
+ * @author Hiroshi Miura
+ */
+public final class SliceInflater {
+
+    private final int sliceSize;
+    private final Inflater inflater = new Inflater();
+    private final byte[] in;
+    private final byte[] out;
+    private final ByteBuffer inBuffer;
+    private final ByteBuffer outBuffer;
+    private final Adler32 adler = new Adler32();
+
+    /**
+     * Constructor.
+     *
+     * @param sliceSize スライスサイズ
+     */
+    public SliceInflater(final int sliceSize) {
+        this.sliceSize = sliceSize;
+        in = new byte[sliceSize];
+        out = new byte[sliceSize];
+        inBuffer = ByteBuffer.wrap(in);
+        outBuffer = ByteBuffer.wrap(out);
+    }
+
+    /**
+     * 伸張結果のバッファを返します。
+     *
+     * @return 直前に伸張したスライスデータ
+     */
+    public byte[] getOutput() {
+        return out;
+    }
+
+    /**
+     * 指定されたチャネルの位置から1スライス分を読み込み、伸張します。
+     *
+     * @param channel 入力チャネル
+     * @param index インデックス
+     * @param slice スライス番号
+     * @throws IOException 読み込みまたは伸張に失敗した場合
+     */
+    public void inflate(final FileChannel channel, final EBZipIndex index, final int slice) throws IOException {
+        int len = index.getSliceLength(slice);
+        if (len <= 0 || len > sliceSize) {
+            throw new IOException("broken ebzip index at slice " + slice);
+        }
+        inBuffer.clear().limit(len);
+        long pos = index.getSliceStart(slice);
+        while (inBuffer.hasRemaining()) {
+            int n = channel.read(inBuffer, pos);
+            if (n < 0) {
+                throw new IOException("unexpected EOF at slice " + slice);
+            }
+            pos += n;
+        }
+        inflate(in, len);
+    }
+
+    /**
+     * 圧縮データを伸張します。
+     * <p>
+     * データ長がスライスサイズと等しい場合は無圧縮として扱います。
+     *
+     * @param data 圧縮データ
+     * @param len 圧縮データ長
+     * @throws IOException 伸張に失敗した場合
+     */
+    public void inflate(final byte[] data, final int len) throws IOException {
+        if (len == sliceSize) {
+            System.arraycopy(data, 0, out, 0, sliceSize);
+            return;
+        }
+        inflater.reset();
+        inflater.setInput(data, 0, len);
+        int outLen = 0;
+        try {
+            while (outLen < sliceSize) {
+                int n = inflater.inflate(out, outLen, sliceSize - outLen);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                outLen += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("failed to inflate slice: " + e.getMessage(), e);
+        }
+        if (outLen != sliceSize) {
+            throw new IOException("short slice data (" + outLen + " / " + sliceSize + " bytes)");
+        }
+    }
+
+    /**
+     * 直前に伸張したスライスデータの先頭から指定長を、チャネルの指定位置に書き込みます。
+     *
+     * @param channel 出力チャネル
+     * @param position 書き込み位置
+     * @param len 書き込むデータ長
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void writeTo(final FileChannel channel, final long position, final int len) throws IOException {
+        outBuffer.clear().limit(len);
+        long pos = position;
+        while (outBuffer.hasRemaining()) {
+            pos += channel.write(outBuffer, pos);
+        }
+    }
+
+    /**
+     * 直前に伸張したスライスデータの先頭から指定長のAdler-32値を計算します。
+     *
+     * @param len データ長
+     * @return Adler-32値
+     */
+    public long checksum(final int len) {
+        adler.reset();
+        adler.update(out, 0, len);
+        return adler.getValue();
+    }
+
+    /**
+     * 伸張器の資源を解放します。
+     */
+    public void end() {
+        inflater.end();
+    }
+}
+
+// end of SliceInflater.java
@@ -0,0 +1,105 @@
+package io.github.eb4j.tool.ebzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 圧縮スライスデータの一時保管領域。
+ * <p>
+ * 指定された上限まではメモリ上に保持し、上限を超えた分は一時ファイルに書き出します。
+ * 一時ファイルは{@code java.io.tmpdir}に作成され、{@link #close()}で削除されます。
+ *
+ * @author Hiroshi Miura
+ */
+final class SliceSpool implements Closeable {
+
+    private final int memoryLimit;
+    private final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private File spillFile;
+    private FileChannel spill;
+    private long size = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param memoryLimit メモリ上に保持する最大バイト数
+     */
+    SliceSpool(final int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * バッファの残りのデータを追加します。
+     *
+     * @param buf データ
+     * @throws IOException 一時ファイルへの書き込みに失敗した場合
+     */
+    void write(final ByteBuffer buf) throws IOException {
+        int len = buf.remaining();
+        if (spill == null && memory.size() + len <= memoryLimit) {
+            memory.write(buf.array(), buf.arrayOffset() + buf.position(), len);
+            buf.position(buf.limit());
+        } else {
+            if (spill == null) {
+                spillFile = File.createTempFile("ebzip", ".spool");
+                spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            while (buf.hasRemaining()) {
+                spill.write(buf);
+            }
+        }
+        size += len;
+    }
+
+    /**
+     * 保管したデータのサイズを返します。
+     *
+     * @return バイト数
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * 保管したデータを追加した順に出力します。
+     *
+     * @param out 出力ストリーム
+     * @throws IOException 入出力に失敗した場合
+     */
+    void writeTo(final OutputStream out) throws IOException {
+        memory.writeTo(out);
+        if (spill != null) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long pos = 0;
+            long end = spill.size();
+            while (pos < end) {
+                pos += spill.transferTo(pos, end - pos, target);
+            }
+        }
+    }
+
+    /**
+     * 一時ファイルを削除します。
+     *
+     * @throws IOException 一時ファイルの削除に失敗した場合
+     */
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+            Files.deleteIfExists(spillFile.toPath());
+            spill = null;
+        }
+    }
+}
+
+// end of SliceSpool.java
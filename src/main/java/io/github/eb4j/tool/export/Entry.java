@@ -0,0 +1,67 @@
+package io.github.eb4j.tool.export;
+
+/**
+ * 本文ファイルから取り出した項目。
+ *
+ * @author Hiroshi Miura
+ */
+public final class Entry {
+
+    private final long position;
+    private final StringBuilder heading = new StringBuilder();
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Constructor.
+     *
+     * @param position 項目の本文ファイル上の位置
+     */
+    Entry(final long position) {
+        this.position = position;
+    }
+
+    /**
+     * 項目の本文ファイル上の位置を返します。
+     *
+     * @return 位置
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * 見出しを返します。
+     *
+     * @return 見出し、見出しがない場合は空文字列
+     */
+    public String getHeading() {
+        return heading.toString().trim();
+    }
+
+    /**
+     * 本文を返します。
+     *
+     * @return 見出しを含む本文
+     */
+    public String getText() {
+        return text.toString().trim();
+    }
+
+    boolean hasHeading() {
+        return heading.length() > 0;
+    }
+
+    void appendHeading(final String s) {
+        heading.append(s);
+    }
+
+    void appendText(final String s) {
+        text.append(s);
+    }
+
+    void appendText(final char c) {
+        text.append(c);
+    }
+}
+
+// end of Entry.java
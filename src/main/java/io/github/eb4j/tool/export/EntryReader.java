@@ -0,0 +1,344 @@
+package io.github.eb4j.tool.export;
+
+import java.util.Arrays;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.tool.ebzip.CachedBookReader;
+import io.github.eb4j.util.ByteUtil;
+
+/**
+ * 本文ファイルの項目の逐次読み込み器。
+ * <p>
+ * 本文ファイルの先頭ページのインデックスから本文の範囲を求め、一定サイズずつ
+ * 読み込みながら制御コードを解釈して項目に分割します。
+ * 文字はJIS X 0208およびGB 2312として{@link ByteUtil}で変換し、外字は
+ * {@link GaijiMap}で代替文字列に置き換えます。
+ * 項目の区切りは付録の停止コード、付録に停止コードがない場合は本文中で最初に
+ * 現れたキーワード開始コードと同じ引数のキーワード開始コードとします。
+ * 読み込み中に保持するのは読み込み単位1つ分と読み込み中の項目だけです。
+ * インスタンスはスレッドセーフではありません。
+ *
+ * @author Hiroshi Miura
+ */
+public final class EntryReader {
+
+    /**
+     * 一度に読み込むサイズ
+     */
+    private static final int CHUNK_SIZE = 64 << 10;
+
+    /**
+     * 制御コードの最大長
+     */
+    private static final int MAX_ESCAPE_LENGTH = 48;
+
+    /**
+     * インデックス1件のサイズ
+     */
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * 本文のインデックス種別
+     */
+    private static final int INDEX_TEXT = 0x00;
+
+    private static final int ESC = 0x1f;
+    private static final int BEGIN_TEXT = 0x02;
+    private static final int END_TEXT = 0x03;
+    private static final int BEGIN_NARROW = 0x04;
+    private static final int END_NARROW = 0x05;
+    private static final int NEWLINE = 0x0a;
+    private static final int BEGIN_KEYWORD = 0x41;
+    private static final int END_KEYWORD = 0x61;
+
+    /**
+     * 2バイトでない制御コードの長さ (引数を含む)
+     */
+    private static final int[] ESCAPE_LENGTH = new int[256];
+
+    static {
+        Arrays.fill(ESCAPE_LENGTH, 2);
+        int[][] lengths = {
+            {0x09, 4}, {0x14, 4}, {0x1a, 4}, {0x1b, 4}, {0x1c, 4}, {0x1d, 4}, {0x1e, 4}, {0x1f, 4},
+            {0x39, 46}, {0x3c, 20}, {0x41, 4}, {0x44, 12}, {0x45, 4}, {0x4a, 18}, {0x4c, 4},
+            {0x4d, 20}, {0x4f, 34}, {0x62, 8}, {0x63, 8}, {0x64, 8}, {0x6b, 8}, {0xe0, 4},
+        };
+        for (int[] l : lengths) {
+            ESCAPE_LENGTH[l[0]] = l[1];
+        }
+    }
+
+    private final CachedBookReader reader;
+    private final long end;
+    private final GaijiMap gaiji;
+    private final boolean gb2312;
+    private final byte[] stopCode;
+    private final byte[] buf = new byte[CHUNK_SIZE + MAX_ESCAPE_LENGTH];
+    private long bufPos;
+    private int off;
+    private int len;
+
+    private boolean inText;
+    private boolean narrow;
+    private boolean inHeading;
+    private int autoStop = -1;
+    private long lineStart;
+    private boolean lineEmpty = true;
+    private Entry current;
+
+    /**
+     * Constructor.
+     *
+     * @param reader 本文ファイルの読み込み器
+     * @param start 本文の開始位置
+     * @param end 本文の終了位置
+     * @param gaiji 外字の対応表
+     * @param gb2312 GB 2312の文字を含む書籍の場合はtrue
+     * @param stopCode 付録の停止コード (4バイト)、ない場合はnull
+     */
+    public EntryReader(final CachedBookReader reader, final long start, final long end, final GaijiMap gaiji,
+                       final boolean gb2312, final byte[] stopCode) {
+        this.reader = reader;
+        this.end = end;
+        this.gaiji = gaiji;
+        this.gb2312 = gb2312;
+        this.stopCode = stopCode;
+        bufPos = start;
+        lineStart = start;
+    }
+
+    /**
+     * 本文ファイルの先頭ページのインデックスから本文の範囲を求めます。
+     * <p>
+     * 本文のインデックスがない場合は2ページ目からファイル末尾までとします。
+     *
+     * @param reader 本文ファイルの読み込み器
+     * @return 本文の開始位置と終了位置
+     * @throws EBException 読み込みに失敗した場合
+     */
+    public static long[] findTextRange(final CachedBookReader reader) throws EBException {
+        long fileSize = reader.getFileSize();
+        long[] range = {BookInputStream.PAGE_SIZE, fileSize};
+        if (fileSize < BookInputStream.PAGE_SIZE) {
+            range[0] = fileSize;
+            return range;
+        }
+        byte[] page = new byte[BookInputStream.PAGE_SIZE];
+        reader.readFully(0, page, 0, page.length);
+        int count = page[1] & 0xff;
+        for (int i = 1; i <= count && (i + 1) * INDEX_ENTRY_SIZE <= page.length; i++) {
+            int p = i * INDEX_ENTRY_SIZE;
+            if ((page[p] & 0xff) == INDEX_TEXT) {
+                long startPage = toInt(page, p + 2);
+                long pages = toInt(page, p + 6);
+                range[0] = Math.min(BookInputStream.getPosition(startPage, 0), fileSize);
+                range[1] = Math.min(BookInputStream.getPosition(startPage + pages, 0), fileSize);
+                break;
+            }
+        }
+        return range;
+    }
+
+    /**
+     * 次の項目を読み込みます。
+     *
+     * @return 項目、本文の終わりに達した場合はnull
+     * @throws EBException 読み込みに失敗した場合
+     */
+    public Entry next() throws EBException {
+        while (fill(2)) {
+            long pos = bufPos + off;
+            int b0 = buf[off] & 0xff;
+            int b1 = buf[off + 1] & 0xff;
+            if (b0 == ESC) {
+                int step = ESCAPE_LENGTH[b1];
+                if (!fill(step)) {
+                    break;
+                }
+                Entry done = escape(pos, b1);
+                off += step;
+                if (done != null) {
+                    return done;
+                }
+            } else if (!inText) {
+                off++;
+            } else {
+                off += character(pos, b0, b1);
+            }
+        }
+        Entry done = current;
+        current = null;
+        return done;
+    }
+
+    /**
+     * 制御コードを処理します。
+     *
+     * @return 制御コードの位置で終わった項目、ない場合はnull
+     * @throws EBException 読み込みに失敗した場合
+     */
+    private Entry escape(final long pos, final int code) throws EBException {
+        Entry done = null;
+        if (stopCode != null && code == (stopCode[1] & 0xff) && isStopCode() && current != null
+                && current.hasHeading()) {
+            done = current;
+            current = new Entry(pos);
+        }
+        switch (code) {
+            case BEGIN_TEXT:
+                inText = true;
+                lineStart = pos + 2;
+                lineEmpty = true;
+                break;
+            case END_TEXT:
+                inText = false;
+                done = current;
+                current = null;
+                break;
+            case BEGIN_NARROW:
+                narrow = true;
+                break;
+            case END_NARROW:
+                narrow = false;
+                break;
+            case NEWLINE:
+                if (current != null) {
+                    current.appendText('\n');
+                }
+                lineStart = pos + 2;
+                lineEmpty = true;
+                break;
+            case BEGIN_KEYWORD:
+                if (!inText) {
+                    break;
+                }
+                int param = ((buf[off + 2] & 0xff) << 8) | (buf[off + 3] & 0xff);
+                if (autoStop < 0) {
+                    autoStop = param;
+                }
+                if (stopCode == null && param == autoStop && current != null && current.hasHeading()) {
+                    done = current;
+                    current = null;
+                }
+                if (current == null) {
+                    if (lineEmpty) {
+                        current = new Entry(lineStart);
+                    } else {
+                        current = new Entry(pos);
+                    }
+                }
+                inHeading = !current.hasHeading();
+                break;
+            case END_KEYWORD:
+                inHeading = false;
+                break;
+            default:
+                break;
+        }
+        return done;
+    }
+
+    /**
+     * 文字を処理します。
+     *
+     * @return 処理したバイト数
+     */
+    private int character(final long pos, final int b0, final int b1) {
+        String s;
+        if (b0 > 0x20 && b0 < 0x7f && b1 > 0x20 && b1 < 0x7f) {
+            // JIS X 0208
+            s = ByteUtil.jisx0208ToString(buf, off, 2);
+            if (narrow) {
+                s = toNarrow(s);
+            }
+        } else if (gb2312 && b0 > 0x20 && b0 < 0x7f && b1 > 0xa0 && b1 < 0xff) {
+            // GB 2312
+            s = ByteUtil.gb2312ToString(buf, off, 2);
+        } else if (b0 > 0xa0 && b0 < 0xff && b1 > 0x20 && b1 < 0x7f) {
+            // 外字
+            int code = (b0 << 8) | b1;
+            if (narrow) {
+                s = gaiji.narrow(code);
+            } else {
+                s = gaiji.wide(code);
+            }
+        } else {
+            return 2;
+        }
+        if (current == null) {
+            current = new Entry(pos);
+        }
+        current.appendText(s);
+        if (inHeading) {
+            current.appendHeading(s);
+        }
+        lineEmpty = false;
+        return 2;
+    }
+
+    /**
+     * 読み込み位置が停止コードかどうかを返します。
+     * <p>
+     * 停止コードは制御コードより長い場合があるため、比較の前に停止コードの長さ分を読み込みます。
+     * 読み込みでバッファが詰め直されるため、読み込み位置は読み込み後のものを使います。
+     *
+     * @return 停止コードの場合はtrue、本文の終わりまでに停止コードの長さがない場合はfalse
+     */
+    private boolean isStopCode() throws EBException {
+        if (!fill(stopCode.length)) {
+            return false;
+        }
+        for (int i = 0; i < stopCode.length; i++) {
+            if (buf[off + i] != stopCode[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 半角表示の範囲の全角英数字記号をASCII文字に変換します。
+     */
+    private static String toNarrow(final String s) {
+        char[] c = s.toCharArray();
+        for (int i = 0; i < c.length; i++) {
+            if (c[i] >= '！' && c[i] <= '～') {
+                c[i] = (char) (c[i] - '！' + '!');
+            } else if (c[i] == '　') {
+                c[i] = ' ';
+            }
+        }
+        return new String(c);
+    }
+
+    /**
+     * 読み込みバッファに指定バイト数以上のデータがあるようにします。
+     *
+     * @return 本文の終わりに達して指定バイト数に満たない場合はfalse
+     */
+    private boolean fill(final int n) throws EBException {
+        if (len - off >= n) {
+            return true;
+        }
+        int rest = len - off;
+        System.arraycopy(buf, off, buf, 0, rest);
+        bufPos += off;
+        off = 0;
+        len = rest;
+        long filePos = bufPos + len;
+        int size = (int) Math.min(CHUNK_SIZE, end - filePos);
+        if (size > 0) {
+            reader.readFully(filePos, buf, len, size);
+            len += size;
+        }
+        return len >= n;
+    }
+
+    private static long toInt(final byte[] b, final int off) {
+        return ((b[off] & 0xffL) << 24) | ((b[off + 1] & 0xffL) << 16) | ((b[off + 2] & 0xffL) << 8)
+                | (b[off + 3] & 0xffL);
+    }
+}
+
+// end of EntryReader.java
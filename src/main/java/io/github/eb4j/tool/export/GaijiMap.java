@@ -0,0 +1,61 @@
+package io.github.eb4j.tool.export;
+
+import io.github.eb4j.tool.appendix.AltDef;
+import io.github.eb4j.tool.appendix.SubAppendix;
+
+/**
+ * 外字の代替文字列の対応表。
+ * <p>
+ * 付録の定義に代替文字列がある外字はその文字列に、ない外字は
+ * {@code [GAIJI=n<コード>]} (半角) または {@code [GAIJI=w<コード>]} (全角) に置き換えます。
+ *
+ * @author Hiroshi Miura
+ */
+public final class GaijiMap {
+
+    private final AltDef narrow;
+    private final AltDef wide;
+
+    /**
+     * Constructor.
+     *
+     * @param appendix 副本の付録定義、付録を使わない場合はnull
+     */
+    public GaijiMap(final SubAppendix appendix) {
+        if (appendix == null) {
+            narrow = null;
+            wide = null;
+        } else {
+            narrow = appendix.narrow;
+            wide = appendix.wide;
+        }
+    }
+
+    /**
+     * 半角外字の代替文字列を返します。
+     *
+     * @param code 外字のコード
+     * @return 代替文字列
+     */
+    public String narrow(final int code) {
+        if (narrow != null && narrow.containsKey(code)) {
+            return narrow.getAlt(code);
+        }
+        return String.format("[GAIJI=n%04X]", code);
+    }
+
+    /**
+     * 全角外字の代替文字列を返します。
+     *
+     * @param code 外字のコード
+     * @return 代替文字列
+     */
+    public String wide(final int code) {
+        if (wide != null && wide.containsKey(code)) {
+            return wide.getAlt(code);
+        }
+        return String.format("[GAIJI=w%04X]", code);
+    }
+}
+
+// end of GaijiMap.java
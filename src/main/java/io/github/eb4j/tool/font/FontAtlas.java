@@ -0,0 +1,203 @@
+package io.github.eb4j.tool.font;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 外字のビットマップを1枚の画像にまとめたアトラス。
+ * <p>
+ * 同じ大きさの外字を{@link #getColumns()}文字ずつ横に並べ、追加した順に左上から
+ * 格子状に配置します。外字のビットマップは1行が8ピクセル単位に揃えられた
+ * 1ビット/ピクセルのデータで、白と黒の2色のインデックスカラー画像の行に
+ * そのまま複写します。
+ * 索引ファイルには外字のコードを配置順に格納します。
+ * <pre>
+ * ヘッダ: "EBFA", バージョン, 文字幅, 文字高さ, 列数, 文字数 (いずれもint)
+ * 文字:   外字のコード (unsigned short) x 文字数
+ * </pre>
+ * i番目の外字の位置は左上から (i % 列数 * 文字幅, i / 列数 * 文字高さ) です。
+ * インスタンスはスレッドセーフではありません。
+ *
+ * @author Hiroshi Miura
+ */
+public final class FontAtlas {
+
+    /**
+     * 索引ファイルの識別子
+     */
+    static final int MAGIC = 0x45424641; // "EBFA"
+
+    /**
+     * 索引ファイル形式のバージョン
+     */
+    static final int VERSION = 1;
+
+    /**
+     * デフォルトの列数
+     */
+    public static final int DEFAULT_COLUMNS = 64;
+
+    /**
+     * 外字の2色 (0: 背景の白, 1: 前景の黒)
+     */
+    private static final IndexColorModel COLOR_MODEL = new IndexColorModel(1, 2,
+            new byte[]{(byte) 0xff, 0}, new byte[]{(byte) 0xff, 0}, new byte[]{(byte) 0xff, 0});
+
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final List<Integer> codes = new ArrayList<>();
+    private final List<byte[]> bitmaps = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param width 文字幅 (8の倍数)
+     * @param height 文字高さ
+     * @param columns 列数
+     */
+    public FontAtlas(final int width, final int height, final int columns) {
+        if (width <= 0 || width % 8 != 0 || height <= 0 || columns <= 0) {
+            throw new IllegalArgumentException("invalid glyph size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.columns = columns;
+    }
+
+    /**
+     * 文字幅を返します。
+     *
+     * @return 文字幅
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 文字高さを返します。
+     *
+     * @return 文字高さ
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 列数を返します。
+     *
+     * @return 列数
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * 追加された外字の数を返します。
+     *
+     * @return 文字数
+     */
+    public int size() {
+        return codes.size();
+    }
+
+    /**
+     * 外字を追加します。
+     *
+     * @param code 外字のコード
+     * @param bitmap 外字のビットマップ
+     */
+    public void add(final int code, final byte[] bitmap) {
+        if (bitmap.length < width / 8 * height) {
+            throw new IllegalArgumentException("short bitmap for " + String.format("%04X", code));
+        }
+        codes.add(code);
+        bitmaps.add(bitmap);
+    }
+
+    /**
+     * 追加したすべての外字を並べた画像を返します。
+     *
+     * @return 画像
+     */
+    public BufferedImage toImage() {
+        int count = Math.max(codes.size(), 1);
+        int cols = Math.min(count, columns);
+        int rows = (count + columns - 1) / columns;
+        BufferedImage image = new BufferedImage(cols * width, rows * height, BufferedImage.TYPE_BYTE_BINARY,
+                COLOR_MODEL);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = cols * width / 8;
+        int glyphStride = width / 8;
+        for (int i = 0; i < bitmaps.size(); i++) {
+            int x = i % columns * glyphStride;
+            int y = i / columns * height;
+            byte[] bitmap = bitmaps.get(i);
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(bitmap, row * glyphStride, data, (y + row) * stride + x, glyphStride);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 索引ファイルを書き出します。
+     *
+     * @param file 出力先
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void writeIndex(final File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(columns);
+            out.writeInt(codes.size());
+            for (int code : codes) {
+                out.writeShort(code);
+            }
+        }
+    }
+
+    /**
+     * 外字1文字のビットマップを画像に変換します。
+     *
+     * @param bitmap 外字のビットマップ
+     * @param width 文字幅 (8の倍数)
+     * @param height 文字高さ
+     * @return 画像
+     */
+    public static BufferedImage toImage(final byte[] bitmap, final int width, final int height) {
+        FontAtlas atlas = new FontAtlas(width, height, 1);
+        atlas.add(0, bitmap);
+        return atlas.toImage();
+    }
+
+    /**
+     * 画像をファイルに書き出します。
+     *
+     * @param image 画像
+     * @param formatName 画像形式 (png, bmp)
+     * @param file 出力先
+     * @throws IOException 書き込みに失敗した場合または画像形式に対応していない場合
+     */
+    public static void write(final BufferedImage image, final String formatName, final File file)
+            throws IOException {
+        if (!ImageIO.write(image, formatName, file)) {
+            throw new IOException("unsupported image format: " + formatName);
+        }
+    }
+}
+
+// end of FontAtlas.java
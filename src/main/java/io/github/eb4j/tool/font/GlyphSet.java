@@ -0,0 +1,138 @@
+package io.github.eb4j.tool.font;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.ExtFont;
+
+/**
+ * 同じ大きさの外字の集合。
+ * <p>
+ * 副本のフォントの半角または全角の外字を、大きさ、コードの範囲、
+ * コードからビットマップを読み込む関数の組として表します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class GlyphSet {
+
+    /**
+     * 外字のビットマップを読み込む関数。
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * 外字のビットマップを読み込みます。
+         *
+         * @param code 外字のコード
+         * @return ビットマップ、外字がない場合はnull
+         * @throws EBException 読み込みに失敗した場合
+         */
+        byte[] load(int code) throws EBException;
+    }
+
+    private final String kind;
+    private final int width;
+    private final int height;
+    private final int start;
+    private final int end;
+    private final Loader loader;
+
+    /**
+     * Constructor.
+     *
+     * @param kind 種類 (narrowまたはwide)
+     * @param width 文字幅
+     * @param height 文字高さ
+     * @param start 先頭の外字のコード
+     * @param end 末尾の外字のコード
+     * @param loader ビットマップを読み込む関数
+     */
+    public GlyphSet(final String kind, final int width, final int height, final int start, final int end,
+                    final Loader loader) {
+        this.kind = kind;
+        this.width = width;
+        this.height = height;
+        this.start = start;
+        this.end = end;
+        this.loader = loader;
+    }
+
+    /**
+     * フォントの半角外字の集合を返します。
+     *
+     * @param font フォント
+     * @return 半角外字の集合
+     */
+    public static GlyphSet narrow(final ExtFont font) {
+        return new GlyphSet("narrow", font.getNarrowFontWidth(), font.getFontHeight(),
+                font.getNarrowFontStart(), font.getNarrowFontEnd(), font::getNarrowFont);
+    }
+
+    /**
+     * フォントの全角外字の集合を返します。
+     *
+     * @param font フォント
+     * @return 全角外字の集合
+     */
+    public static GlyphSet wide(final ExtFont font) {
+        return new GlyphSet("wide", font.getWideFontWidth(), font.getFontHeight(),
+                font.getWideFontStart(), font.getWideFontEnd(), font::getWideFont);
+    }
+
+    /**
+     * 種類を返します。
+     *
+     * @return narrowまたはwide
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * 文字幅を返します。
+     *
+     * @return 文字幅
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 文字高さを返します。
+     *
+     * @return 文字高さ
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 先頭の外字のコードを返します。
+     *
+     * @return 先頭の外字のコード
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * 末尾の外字のコードを返します。
+     *
+     * @return 末尾の外字のコード
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * 外字のビットマップを読み込みます。
+     *
+     * @param code 外字のコード
+     * @return ビットマップ、外字がない場合はnull
+     * @throws EBException 読み込みに失敗した場合
+     */
+    public byte[] getGlyph(final int code) throws EBException {
+        return loader.load(code);
+    }
+}
+
+// end of GlyphSet.java
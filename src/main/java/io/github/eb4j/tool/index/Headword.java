@@ -0,0 +1,57 @@
+package io.github.eb4j.tool.index;
+
+/**
+ * 見出し語と本文位置の組。
+ *
+ * @author Hiroshi Miura
+ */
+public final class Headword {
+
+    private final String key;
+    private final int subbook;
+    private final long position;
+
+    /**
+     * Constructor.
+     *
+     * @param key 見出し語
+     * @param subbook 副本番号
+     * @param position 本文位置
+     */
+    public Headword(final String key, final int subbook, final long position) {
+        this.key = key;
+        this.subbook = subbook;
+        this.position = position;
+    }
+
+    /**
+     * 見出し語を返します。
+     * <p>
+     * 索引の検索結果の場合は正規化した見出し語です。
+     *
+     * @return 見出し語
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 副本番号を返します。
+     *
+     * @return 副本番号
+     */
+    public int getSubBook() {
+        return subbook;
+    }
+
+    /**
+     * 本文位置を返します。
+     *
+     * @return 本文位置
+     */
+    public long getPosition() {
+        return position;
+    }
+}
+
+// end of Headword.java
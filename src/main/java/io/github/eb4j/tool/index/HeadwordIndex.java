@@ -0,0 +1,263 @@
+package io.github.eb4j.tool.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 見出し語索引ファイル。
+ * <p>
+ * 書籍の見出し語と本文位置の組を、正規化した見出し語のUTF-8バイト列の順に格納した
+ * 書籍とは別のファイルです。見出し語は{@value #BLOCK_SIZE}語ごとのブロックに分け、
+ * ブロック内では直前の語との共通接頭辞を省略して格納します。
+ * ファイル末尾に各ブロックの開始位置の配列を置き、検索時はファイル全体を
+ * メモリマップして、ブロックの先頭語の二分探索とブロック内の順次比較で語を探します。
+ * <pre>
+ * ヘッダ:  "EBIX", バージョン, 語数, ブロックサイズ, ブロック数, ブロック位置配列の位置 (long),
+ *          副本数, 副本名 (長さ+UTF-8)
+ * 語:      共通接頭辞長, 接尾辞長, 接尾辞, 副本番号, 本文位置 (いずれも可変長整数)
+ * 末尾:    ブロック位置 (long) x ブロック数
+ * </pre>
+ * 検索は複数のスレッドから同時に呼び出せます。
+ *
+ * @author Hiroshi Miura
+ */
+public final class HeadwordIndex implements AutoCloseable {
+
+    /**
+     * ファイルの識別子
+     */
+    static final int MAGIC = 0x45424958; // "EBIX"
+
+    /**
+     * ファイル形式のバージョン
+     */
+    static final int VERSION = 1;
+
+    /**
+     * 1ブロックの語数
+     */
+    static final int BLOCK_SIZE = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int count;
+    private final int blockCount;
+    private final int blockTable;
+    private final List<String> subbooks;
+
+    private HeadwordIndex(final FileChannel channel, final MappedByteBuffer map) throws IOException {
+        this.channel = channel;
+        this.map = map;
+        if (map.limit() < Integer.BYTES * 6 + Long.BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException("not a headword index file");
+        }
+        if (map.getInt(4) != VERSION || map.getInt(12) != BLOCK_SIZE) {
+            throw new IOException("unsupported headword index version");
+        }
+        count = map.getInt(8);
+        blockCount = map.getInt(16);
+        long table = map.getLong(20);
+        if (table < 0 || table + (long) blockCount * Long.BYTES > map.limit()) {
+            throw new IOException("broken headword index");
+        }
+        blockTable = (int) table;
+        int pos = 28;
+        int subCount = map.getInt(pos);
+        pos += Integer.BYTES;
+        List<String> names = new ArrayList<>(subCount);
+        for (int i = 0; i < subCount; i++) {
+            int len = map.getShort(pos) & 0xffff;
+            byte[] b = new byte[len];
+            for (int j = 0; j < len; j++) {
+                b[j] = map.get(pos + Short.BYTES + j);
+            }
+            names.add(new String(b, StandardCharsets.UTF_8));
+            pos += Short.BYTES + len;
+        }
+        subbooks = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * 索引ファイルを開きます。
+     *
+     * @param file 索引ファイル
+     * @return 索引
+     * @throws IOException 読み込みに失敗した場合または索引ファイルでない場合
+     */
+    public static HeadwordIndex open(final File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("headword index too large: " + file);
+            }
+            return new HeadwordIndex(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 見出し語を検索用に正規化します。
+     * <p>
+     * NFKC正規化により全角英数字を半角に揃え、英字を小文字にします。
+     *
+     * @param word 見出し語
+     * @return 正規化した見出し語
+     */
+    public static String normalize(final String word) {
+        return Normalizer.normalize(word.trim(), Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 語数を返します。
+     *
+     * @return 語数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 副本名の一覧を返します。
+     *
+     * @return 副本番号順の副本名
+     */
+    public List<String> getSubBooks() {
+        return subbooks;
+    }
+
+    /**
+     * 見出し語を検索します。
+     *
+     * @param word 検索語
+     * @param prefix 前方一致で検索する場合はtrue、完全一致の場合はfalse
+     * @param limit 最大件数
+     * @return 見出し語の順の検索結果
+     */
+    public List<Headword> lookup(final String word, final boolean prefix, final int limit) {
+        byte[] target = normalize(word).getBytes(StandardCharsets.UTF_8);
+        List<Headword> hits = new ArrayList<>();
+        if (count == 0) {
+            return hits;
+        }
+        // 先頭語が検索語より小さい最後のブロックから調べる
+        int lo = 0;
+        int hi = blockCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (compare(firstKey(mid), target) < 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        Cursor cursor = new Cursor(blockPosition(lo), lo * BLOCK_SIZE);
+        while (cursor.index < count && hits.size() < limit) {
+            cursor.next();
+            int c = compare(cursor.key, cursor.keyLength, target);
+            boolean match;
+            if (prefix) {
+                match = startsWith(cursor.key, cursor.keyLength, target);
+            } else {
+                match = c == 0;
+            }
+            if (match) {
+                hits.add(new Headword(new String(cursor.key, 0, cursor.keyLength, StandardCharsets.UTF_8),
+                        cursor.subbook, cursor.position));
+            } else if (c > 0) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    private long blockPosition(final int block) {
+        return map.getLong(blockTable + block * Long.BYTES);
+    }
+
+    private byte[] firstKey(final int block) {
+        Cursor cursor = new Cursor(blockPosition(block), block * BLOCK_SIZE);
+        cursor.next();
+        return Arrays.copyOf(cursor.key, cursor.keyLength);
+    }
+
+    private static int compare(final byte[] a, final byte[] b) {
+        return compare(a, a.length, b);
+    }
+
+    private static int compare(final byte[] a, final int aLen, final byte[] b) {
+        return Arrays.compareUnsigned(a, 0, aLen, b, 0, b.length);
+    }
+
+    private static boolean startsWith(final byte[] a, final int aLen, final byte[] b) {
+        return aLen >= b.length && Arrays.equals(a, 0, b.length, b, 0, b.length);
+    }
+
+    /**
+     * 索引ファイルを閉じます。
+     *
+     * @throws IOException クローズに失敗した場合
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 語の順次読み込み位置。
+     */
+    private final class Cursor {
+
+        private int pos;
+        private int index;
+        private byte[] key = new byte[64];
+        private int keyLength;
+        private int subbook;
+        private long position;
+
+        Cursor(final long pos, final int index) {
+            this.pos = (int) pos;
+            this.index = index;
+        }
+
+        void next() {
+            int shared = (int) readVarLong();
+            int suffix = (int) readVarLong();
+            if (key.length < shared + suffix) {
+                key = Arrays.copyOf(key, Math.max(key.length * 2, shared + suffix));
+            }
+            for (int i = 0; i < suffix; i++) {
+                key[shared + i] = map.get(pos++);
+            }
+            keyLength = shared + suffix;
+            subbook = (int) readVarLong();
+            position = readVarLong();
+            index++;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = map.get(pos++) & 0xff;
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
+
+// end of HeadwordIndex.java
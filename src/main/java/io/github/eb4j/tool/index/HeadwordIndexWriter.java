@@ -0,0 +1,184 @@
+package io.github.eb4j.tool.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 見出し語索引ファイルの作成器。
+ * <p>
+ * 追加された見出し語を正規化してメモリ上に集め、{@link #write(File)}で
+ * {@link HeadwordIndex}の形式で書き出します。インスタンスはスレッドセーフではありません。
+ *
+ * @author Hiroshi Miura
+ */
+public final class HeadwordIndexWriter {
+
+    /**
+     * ブロック位置配列の位置を格納するヘッダ中の位置
+     */
+    private static final int BLOCK_TABLE_OFFSET = 20;
+
+    private static final Comparator<Item> ORDER = (a, b) -> {
+        int c = Arrays.compareUnsigned(a.key, b.key);
+        if (c == 0) {
+            c = Integer.compare(a.subbook, b.subbook);
+        }
+        if (c == 0) {
+            c = Long.compare(a.position, b.position);
+        }
+        return c;
+    };
+
+    private final List<String> subbooks;
+    private final List<Item> items = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param subbooks 副本番号順の副本名
+     */
+    public HeadwordIndexWriter(final List<String> subbooks) {
+        this.subbooks = new ArrayList<>(subbooks);
+    }
+
+    /**
+     * 見出し語を追加します。
+     * <p>
+     * 正規化した結果が空になる見出し語は追加しません。
+     *
+     * @param heading 見出し語
+     * @param subbook 副本番号
+     * @param position 本文位置
+     */
+    public void add(final String heading, final int subbook, final long position) {
+        if (subbook < 0 || subbook >= subbooks.size()) {
+            throw new IllegalArgumentException("subbook out of range: " + subbook);
+        }
+        String key = HeadwordIndex.normalize(heading);
+        if (key.isEmpty()) {
+            return;
+        }
+        items.add(new Item(key.getBytes(StandardCharsets.UTF_8), subbook, position));
+    }
+
+    /**
+     * 追加された見出し語の数を返します。
+     *
+     * @return 語数
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * 索引ファイルを書き出します。
+     * <p>
+     * 同じ見出し語、副本番号、本文位置の組は1つにまとめます。
+     *
+     * @param file 出力先
+     * @return 書き出した語数
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public int write(final File file) throws IOException {
+        Collections.sort(items, ORDER);
+        List<Item> sorted = new ArrayList<>(items.size());
+        for (Item item : items) {
+            if (sorted.isEmpty() || ORDER.compare(sorted.get(sorted.size() - 1), item) != 0) {
+                sorted.add(item);
+            }
+        }
+        int blockCount = (sorted.size() + HeadwordIndex.BLOCK_SIZE - 1) / HeadwordIndex.BLOCK_SIZE;
+        long[] blocks = new long[blockCount];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(HeadwordIndex.MAGIC);
+            out.writeInt(HeadwordIndex.VERSION);
+            out.writeInt(sorted.size());
+            out.writeInt(HeadwordIndex.BLOCK_SIZE);
+            out.writeInt(blockCount);
+            out.writeLong(0L);
+            out.writeInt(subbooks.size());
+            for (String name : subbooks) {
+                byte[] b = name.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(b.length);
+                out.write(b);
+            }
+            byte[] prev = new byte[0];
+            for (int i = 0; i < sorted.size(); i++) {
+                Item item = sorted.get(i);
+                int shared = 0;
+                if (i % HeadwordIndex.BLOCK_SIZE == 0) {
+                    blocks[i / HeadwordIndex.BLOCK_SIZE] = out.size();
+                } else {
+                    shared = commonPrefix(prev, item.key);
+                }
+                writeVarLong(out, shared);
+                writeVarLong(out, item.key.length - shared);
+                out.write(item.key, shared, item.key.length - shared);
+                writeVarLong(out, item.subbook);
+                writeVarLong(out, item.position);
+                prev = item.key;
+            }
+            long table = out.size();
+            for (long block : blocks) {
+                out.writeLong(block);
+            }
+            out.flush();
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("headword index too large: " + file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(0, table);
+            channel.write(header, BLOCK_TABLE_OFFSET);
+        }
+        return sorted.size();
+    }
+
+    private static int commonPrefix(final byte[] a, final byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+        long v = value;
+        while ((v & ~0x7fL) != 0) {
+            out.write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /**
+     * 正規化した見出し語と本文位置の組。
+     */
+    private static final class Item {
+        private final byte[] key;
+        private final int subbook;
+        private final long position;
+
+        Item(final byte[] key, final int subbook, final long position) {
+            this.key = key;
+            this.subbook = subbook;
+            this.position = position;
+        }
+    }
+}
+
+// end of HeadwordIndexWriter.java
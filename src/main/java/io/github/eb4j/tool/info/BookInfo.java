@@ -0,0 +1,182 @@
+package io.github.eb4j.tool.info;
+
+import io.github.eb4j.Book;
+import io.github.eb4j.ExtFont;
+import io.github.eb4j.SubBook;
+import io.github.eb4j.util.HexUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 書籍情報の収集。
+ * <p>
+ * {@code info}コマンドがテキストで出力する書籍と副本の情報を、JSONに変換できる
+ * マップとして返します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class BookInfo {
+
+    /**
+     * 外字のサイズの種類
+     */
+    private static final int FONT_SIZES = 4;
+
+    private BookInfo() {
+    }
+
+    /**
+     * 書籍の種類を返します。
+     *
+     * @param book 書籍
+     * @return 書籍の種類
+     */
+    public static String getDiscType(final Book book) {
+        if (book.getBookType() == Book.DISC_EB) {
+            return "EB/EBG/EBXA/EBXA-C/S-EBXA";
+        } else if (book.getBookType() == Book.DISC_EPWING) {
+            return "EPWING V" + book.getVersion();
+        }
+        return "unknown";
+    }
+
+    /**
+     * 書籍の文字セットを返します。
+     *
+     * @param book 書籍
+     * @return 文字セット
+     */
+    public static String getCharCode(final Book book) {
+        switch (book.getCharCode()) {
+            case Book.CHARCODE_ISO8859_1:
+                return "ISO 8859-1";
+            case Book.CHARCODE_JISX0208:
+                return "JIS X 0208";
+            case Book.CHARCODE_JISX0208_GB2312:
+                return "JIS X 0208 + GB 2312";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * 副本が対応している検索方式と機能を返します。
+     *
+     * @param sub 副本
+     * @return 検索方式と機能の名前
+     */
+    public static List<String> getSearchMethods(final SubBook sub) {
+        List<String> methods = new ArrayList<>();
+        if (sub.hasWordSearch()) {
+            methods.add("word");
+        }
+        if (sub.hasEndwordSearch()) {
+            methods.add("endword");
+        }
+        if (sub.hasExactwordSearch()) {
+            methods.add("exactword");
+        }
+        if (sub.hasKeywordSearch()) {
+            methods.add("keyword");
+        }
+        if (sub.hasCrossSearch()) {
+            methods.add("cross");
+        }
+        if (sub.hasMultiSearch()) {
+            methods.add("multi");
+        }
+        if (sub.hasMenu()) {
+            methods.add("menu");
+        }
+        if (sub.hasImageMenu()) {
+            methods.add("image-menu");
+        }
+        if (sub.hasCopyright()) {
+            methods.add("copyright");
+        }
+        return methods;
+    }
+
+    /**
+     * 書籍の情報を返します。
+     *
+     * @param path 書籍ディレクトリ
+     * @param book 書籍
+     * @return 書籍と副本の情報
+     */
+    public static Map<String, Object> describe(final File path, final Book book) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("path", path.getPath());
+        info.put("discType", getDiscType(book));
+        info.put("charCode", getCharCode(book));
+        SubBook[] subs = book.getSubBooks();
+        info.put("subbookCount", subs.length);
+        List<Map<String, Object>> list = new ArrayList<>(subs.length);
+        for (int i = 0; i < subs.length; i++) {
+            list.add(describe(i, subs[i]));
+        }
+        info.put("subbooks", list);
+        return info;
+    }
+
+    /**
+     * 副本の情報を返します。
+     */
+    private static Map<String, Object> describe(final int number, final SubBook sub) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("subbook", number);
+        info.put("title", sub.getTitle());
+        info.put("directory", sub.getName());
+        info.put("search", getSearchMethods(sub));
+        List<Integer> sizes = new ArrayList<>();
+        for (int j = 0; j < FONT_SIZES; j++) {
+            ExtFont font = sub.getFont(j);
+            if (font != null && font.hasFont()) {
+                sizes.add(font.getFontHeight());
+            }
+        }
+        info.put("fontSizes", sizes);
+        ExtFont font = sub.getFont();
+        Map<String, Object> narrow = null;
+        Map<String, Object> wide = null;
+        if (font != null && font.hasNarrowFont()) {
+            narrow = codeRange(font.getNarrowFontStart(), font.getNarrowFontEnd());
+        }
+        if (font != null && font.hasWideFont()) {
+            wide = codeRange(font.getWideFontStart(), font.getWideFontEnd());
+        }
+        info.put("narrowFont", narrow);
+        info.put("wideFont", wide);
+        List<Map<String, Object>> multi = new ArrayList<>();
+        if (sub.hasMultiSearch()) {
+            for (int i = 0; i < sub.getMultiCount(); i++) {
+                Map<String, Object> search = new LinkedHashMap<>();
+                search.put("multi", i + 1);
+                List<Map<String, Object>> labels = new ArrayList<>();
+                for (int j = 0; j < sub.getMultiEntryCount(i); j++) {
+                    Map<String, Object> label = new LinkedHashMap<>();
+                    label.put("label", sub.getMultiEntryLabel(i, j));
+                    label.put("candidates", sub.hasMultiEntryCandidate(i, j));
+                    labels.add(label);
+                }
+                search.put("entries", labels);
+                multi.add(search);
+            }
+        }
+        info.put("multiSearch", multi);
+        return info;
+    }
+
+    private static Map<String, Object> codeRange(final int start, final int end) {
+        Map<String, Object> range = new LinkedHashMap<>();
+        range.put("start", "0x" + HexUtil.toHexString(start));
+        range.put("end", "0x" + HexUtil.toHexString(end));
+        return range;
+    }
+}
+
+// end of BookInfo.java
@@ -0,0 +1,234 @@
+package io.github.eb4j.tool.info;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.eb4j.tool.ebzip.BookFinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 書籍情報のファイルキャッシュ。
+ * <p>
+ * {@link BookInfo#describe}で収集した書籍情報を書籍ディレクトリの正規パスごとに
+ * JSONファイルに保存します。各書籍の情報には、CATALOG(S)ファイル、副本ディレクトリと
+ * 副本のDATA、GAIJIディレクトリのファイルの名前、サイズ、更新時刻から作った識別情報を
+ * 添えます。次回の読み込み時に識別情報が一致しない書籍は変更されたとみなし、
+ * キャッシュを使わずに書籍を開き直します。
+ * 検索と登録は複数のスレッドから同時に呼び出せます。
+ *
+ * @author Hiroshi Miura
+ */
+public final class MetadataCache {
+
+    /**
+     * キャッシュファイル形式のバージョン (2: 副本番号を0から数える)
+     */
+    static final int VERSION = 2;
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_BOOKS = "books";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_INFO = "info";
+
+    private final File file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Map<String, Object>> books = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private MetadataCache(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * 空のキャッシュを作成します。
+     *
+     * @param file キャッシュファイル
+     * @return キャッシュ
+     */
+    public static MetadataCache create(final File file) {
+        return new MetadataCache(file);
+    }
+
+    /**
+     * キャッシュファイルを読み込みます。
+     * <p>
+     * ファイルがない場合、形式が異なる場合は空のキャッシュを返します。
+     *
+     * @param file キャッシュファイル
+     * @return キャッシュ
+     * @throws IOException キャッシュファイルが壊れている場合
+     */
+    public static MetadataCache load(final File file) throws IOException {
+        MetadataCache cache = create(file);
+        if (!file.isFile()) {
+            return cache;
+        }
+        Map<String, Object> root = cache.mapper.readValue(file, new TypeReference<Map<String, Object>>() { });
+        if (!Integer.valueOf(VERSION).equals(root.get(KEY_VERSION))) {
+            return cache;
+        }
+        Object list = root.get(KEY_BOOKS);
+        if (list instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) list).entrySet()) {
+                if (e.getValue() instanceof Map) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> value = (Map<String, Object>) e.getValue();
+                    cache.books.put(e.getKey().toString(), value);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 書籍ディレクトリのファイルの識別情報を返します。
+     *
+     * @param dir 書籍ディレクトリ
+     * @return ファイルごとの名前、サイズ、更新時刻を並べた文字列
+     */
+    public static String fingerprint(final File dir) {
+        StringBuilder sb = new StringBuilder();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return "";
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isFile() && BookFinder.isCatalog(f.getName())) {
+                append(sb, f.getName(), f);
+            } else if (f.isDirectory()) {
+                File[] subDirs = f.listFiles();
+                if (subDirs == null) {
+                    continue;
+                }
+                Arrays.sort(subDirs);
+                for (File sub : subDirs) {
+                    if (sub.isFile()) {
+                        // EB形式の書籍の副本ディレクトリのSTARTなど
+                        append(sb, f.getName() + "/" + sub.getName(), sub);
+                        continue;
+                    }
+                    String name = sub.getName().toUpperCase(Locale.ENGLISH);
+                    if (!sub.isDirectory() || !name.equals("DATA") && !name.equals("GAIJI")) {
+                        continue;
+                    }
+                    File[] dataFiles = sub.listFiles();
+                    if (dataFiles == null) {
+                        continue;
+                    }
+                    Arrays.sort(dataFiles);
+                    for (File data : dataFiles) {
+                        if (data.isFile()) {
+                            append(sb, f.getName() + "/" + sub.getName() + "/" + data.getName(), data);
+                        }
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void append(final StringBuilder sb, final String name, final File f) {
+        sb.append(name).append(':').append(f.length()).append(':').append(f.lastModified()).append('\n');
+    }
+
+    /**
+     * キャッシュされた書籍情報を返します。
+     *
+     * @param dir 書籍ディレクトリ
+     * @param fingerprint 現在のファイルの識別情報
+     * @return 書籍情報、キャッシュにない場合と識別情報が一致しない場合はnull
+     */
+    public Map<String, Object> get(final File dir, final String fingerprint) {
+        Map<String, Object> entry = books.get(key(dir));
+        if (entry == null || !fingerprint.equals(entry.get(KEY_FINGERPRINT))
+                || !(entry.get(KEY_INFO) instanceof Map)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> info = new LinkedHashMap<>((Map<String, Object>) entry.get(KEY_INFO));
+        info.put("path", dir.getPath());
+        return info;
+    }
+
+    /**
+     * 書籍情報を登録します。
+     *
+     * @param dir 書籍ディレクトリ
+     * @param fingerprint 書籍情報を収集する前のファイルの識別情報
+     * @param info 書籍情報
+     */
+    public void put(final File dir, final String fingerprint, final Map<String, Object> info) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put(KEY_FINGERPRINT, fingerprint);
+        entry.put(KEY_INFO, info);
+        books.put(key(dir), entry);
+    }
+
+    /**
+     * キャッシュファイルに書き出します。
+     * <p>
+     * 存在しなくなった書籍の情報は削除します。一時ファイルに書き出してから置き換えるため、
+     * 書き出し中に中断しても以前のキャッシュファイルは壊れません。
+     *
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void save() throws IOException {
+        books.keySet().removeIf(path -> !new File(path).isDirectory());
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put(KEY_VERSION, VERSION);
+        root.put(KEY_BOOKS, new TreeMap<>(books));
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create directory: " + dir.getPath());
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            mapper.writeValue(tmp, root);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * キャッシュを使えた回数を返します。
+     *
+     * @return キャッシュヒット数
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * キャッシュを使えなかった回数を返します。
+     *
+     * @return キャッシュミス数
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private static String key(final File dir) {
+        try {
+            return dir.getCanonicalPath();
+        } catch (IOException e) {
+            return dir.getAbsolutePath();
+        }
+    }
+}
+
+// end of MetadataCache.java
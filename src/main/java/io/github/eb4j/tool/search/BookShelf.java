@@ -0,0 +1,220 @@
+package io.github.eb4j.tool.search;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.eb4j.Book;
+import io.github.eb4j.EBException;
+import io.github.eb4j.Result;
+import io.github.eb4j.Searcher;
+import io.github.eb4j.SubBook;
+import io.github.eb4j.hook.DefaultHook;
+import io.github.eb4j.tool.ebzip.BookFinder;
+
+/**
+ * 検索対象として開いた書籍の一覧。
+ * <p>
+ * 書籍は開いたまま保持し、検索や本文の取得のたびにカタログを読み込み直しません。
+ * 書籍と副本は0から始まる番号で指定します。
+ * 検索と本文の取得は複数のスレッドから同時に呼び出せます。
+ * 検索、見出しと本文の読み込みはeb4jが書籍ファイルごとに開くストリームで行われ、読み込み器を
+ * 差し替えられないため、{@link io.github.eb4j.tool.ebzip.SliceCache}は使いません。
+ *
+ * @author Hiroshi Miura
+ */
+public final class BookShelf {
+
+    private final List<File> paths;
+    private final List<Book> books;
+
+    private BookShelf(final List<File> paths, final List<Book> books) {
+        this.paths = Collections.unmodifiableList(paths);
+        this.books = Collections.unmodifiableList(books);
+    }
+
+    /**
+     * 指定されたパス以下の書籍をすべて開きます。
+     *
+     * @param dirs 書籍ディレクトリまたは書籍を含むディレクトリ
+     * @return 書籍の一覧
+     * @throws EBException 書籍を開けなかった場合
+     */
+    public static BookShelf open(final List<File> dirs) throws EBException {
+        List<File> found = new ArrayList<>();
+        for (File dir : dirs) {
+            BookFinder.find(dir, found);
+        }
+        List<Book> books = new ArrayList<>(found.size());
+        for (File dir : found) {
+            books.add(new Book(dir));
+        }
+        return new BookShelf(found, books);
+    }
+
+    /**
+     * 書籍数を返します。
+     *
+     * @return 書籍数
+     */
+    public int size() {
+        return books.size();
+    }
+
+    /**
+     * 書籍ディレクトリを返します。
+     *
+     * @param book 書籍番号
+     * @return 書籍ディレクトリ
+     */
+    public File getPath(final int book) {
+        return paths.get(book);
+    }
+
+    /**
+     * 書籍を返します。
+     *
+     * @param book 書籍番号
+     * @return 書籍
+     * @throws IllegalArgumentException 書籍番号が範囲外の場合
+     */
+    public Book getBook(final int book) {
+        if (book < 0 || book >= books.size()) {
+            throw new IllegalArgumentException("no such book: " + book);
+        }
+        return books.get(book);
+    }
+
+    /**
+     * 副本を返します。
+     *
+     * @param book 書籍番号
+     * @param sub 副本番号
+     * @return 副本
+     * @throws IllegalArgumentException 書籍番号または副本番号が範囲外の場合
+     */
+    public SubBook getSubBook(final int book, final int sub) {
+        Book b = getBook(book);
+        if (sub < 0 || sub >= b.getSubBookCount()) {
+            throw new IllegalArgumentException("no such subbook: " + book + "/" + sub);
+        }
+        return b.getSubBook(sub);
+    }
+
+    /**
+     * 書籍と副本の一覧を返します。
+     *
+     * @return 書籍ごとのパスと副本の情報
+     */
+    public List<Map<String, Object>> describe() {
+        List<Map<String, Object>> list = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("book", i);
+            info.put("path", paths.get(i).getPath());
+            List<Map<String, Object>> subs = new ArrayList<>();
+            SubBook[] subBooks = books.get(i).getSubBooks();
+            for (int j = 0; j < subBooks.length; j++) {
+                Map<String, Object> sub = new LinkedHashMap<>();
+                sub.put("subbook", j);
+                sub.put("title", subBooks[j].getTitle());
+                sub.put("directory", subBooks[j].getName());
+                List<String> methods = new ArrayList<>();
+                for (SearchMethod method : SearchMethod.values()) {
+                    if (method.isSupported(subBooks[j])) {
+                        methods.add(method.getName());
+                    }
+                }
+                sub.put("search", methods);
+                subs.add(sub);
+            }
+            info.put("subbooks", subs);
+            list.add(info);
+        }
+        return list;
+    }
+
+    /**
+     * 書籍を順に検索します。
+     *
+     * @param method 検索方式
+     * @param query 検索語
+     * @param book 書籍番号、負の場合はすべての書籍
+     * @param limit 最大件数
+     * @param withText 本文も取得する場合はtrue
+     * @return 検索結果
+     * @throws EBException 検索に失敗した場合
+     */
+    public List<Map<String, Object>> search(final SearchMethod method, final String query, final int book,
+                                            final int limit, final boolean withText) throws EBException {
+        List<Map<String, Object>> hits = new ArrayList<>();
+        int first = 0;
+        int last = books.size() - 1;
+        if (book >= 0) {
+            getBook(book);
+            first = book;
+            last = book;
+        }
+        for (int i = first; i <= last && hits.size() < limit; i++) {
+            SubBook[] subs = books.get(i).getSubBooks();
+            for (int j = 0; j < subs.length && hits.size() < limit; j++) {
+                if (!method.isSupported(subs[j])) {
+                    continue;
+                }
+                Searcher searcher = method.search(subs[j], query);
+                while (hits.size() < limit) {
+                    Result result = searcher.getNextResult();
+                    if (result == null) {
+                        break;
+                    }
+                    hits.add(toHit(i, j, subs[j], result, withText));
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 検索結果を出力用のマップに変換します。
+     *
+     * @param book 書籍番号
+     * @param sub 副本番号
+     * @param subBook 副本
+     * @param result 検索結果
+     * @param withText 本文も取得する場合はtrue
+     * @return 書籍番号、副本番号、見出し、本文位置、本文のマップ
+     * @throws EBException 見出しまたは本文の取得に失敗した場合
+     */
+    public static Map<String, Object> toHit(final int book, final int sub, final SubBook subBook,
+                                            final Result result, final boolean withText)
+            throws EBException {
+        Map<String, Object> hit = new LinkedHashMap<>();
+        hit.put("book", book);
+        hit.put("subbook", sub);
+        hit.put("heading", result.getHeading(new DefaultHook(subBook)));
+        hit.put("position", result.getTextPosition());
+        if (withText) {
+            hit.put("text", result.getText(new DefaultHook(subBook)));
+        }
+        return hit;
+    }
+
+    /**
+     * 指定された位置の本文を返します。
+     *
+     * @param book 書籍番号
+     * @param sub 副本番号
+     * @param pos 本文位置
+     * @return 本文
+     * @throws EBException 本文の取得に失敗した場合
+     */
+    public String getText(final int book, final int sub, final long pos) throws EBException {
+        SubBook subBook = getSubBook(book, sub);
+        return subBook.getText(pos, new DefaultHook(subBook));
+    }
+}
+
+// end of BookShelf.java
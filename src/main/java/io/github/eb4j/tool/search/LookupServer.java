@@ -0,0 +1,217 @@
+package io.github.eb4j.tool.search;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.eb4j.EBException;
+
+/**
+ * 書籍検索のHTTPサーバ。
+ * <p>
+ * 開いた書籍を保持したまま、次のリクエストにJSONで応答します。
+ * <ul>
+ * <li>{@code GET /books} 書籍と副本の一覧</li>
+ * <li>{@code GET /search?q=語[&method=word|endword|exactword|keyword][&book=n][&limit=n][&text=false]}
+ * 検索結果の見出し、本文位置と本文</li>
+ * <li>{@code GET /text?book=n&subbook=n&pos=n} 指定位置の本文</li>
+ * </ul>
+ * リクエストは固定数のスレッドのプールで並行して処理します。
+ *
+ * @author Hiroshi Miura
+ */
+public final class LookupServer {
+
+    /**
+     * 検索結果のデフォルトの最大件数
+     */
+    public static final int DEFAULT_LIMIT = 100;
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_ERROR = 500;
+
+    private final BookShelf shelf;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int maxLimit;
+
+    /**
+     * Constructor.
+     *
+     * @param shelf 検索対象の書籍
+     * @param address 待ち受けるアドレス、ポート番号0の場合は空いているポート
+     * @param threads リクエストを処理するスレッド数
+     * @param maxLimit 検索結果の最大件数
+     * @throws IOException 待ち受けを開始できなかった場合
+     */
+    public LookupServer(final BookShelf shelf, final InetSocketAddress address, final int threads,
+                        final int maxLimit) throws IOException {
+        this.shelf = shelf;
+        this.maxLimit = maxLimit;
+        server = HttpServer.create(address, 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/books", this::books);
+        server.createContext("/search", this::search);
+        server.createContext("/text", this::text);
+    }
+
+    /**
+     * リクエストの受け付けを開始します。
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * 待ち受けているアドレスを返します。
+     *
+     * @return アドレス
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * リクエストの受け付けを終了し、処理中のリクエストの完了を待ちます。
+     *
+     * @param delay 処理中のリクエストを待つ最大秒数
+     */
+    public void stop(final int delay) {
+        server.stop(delay);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delay, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void books(final HttpExchange exchange) throws IOException {
+        handle(exchange, params -> shelf.describe());
+    }
+
+    private void search(final HttpExchange exchange) throws IOException {
+        handle(exchange, params -> {
+            String query = params.get("q");
+            if (query == null || query.trim().isEmpty()) {
+                throw new IllegalArgumentException("missing query parameter: q");
+            }
+            SearchMethod method = SearchMethod.of(params.getOrDefault("method", "word"));
+            int book = Integer.parseInt(params.getOrDefault("book", "-1"));
+            int limit = Math.min(Integer.parseInt(params.getOrDefault("limit", String.valueOf(maxLimit))),
+                    maxLimit);
+            boolean withText = !"false".equals(params.get("text"));
+            return shelf.search(method, query, book, limit, withText);
+        });
+    }
+
+    private void text(final HttpExchange exchange) throws IOException {
+        handle(exchange, params -> {
+            int book = Integer.parseInt(required(params, "book"));
+            int sub = Integer.parseInt(params.getOrDefault("subbook", "0"));
+            long pos = Long.parseLong(required(params, "pos"));
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("book", book);
+            result.put("subbook", sub);
+            result.put("position", pos);
+            result.put("text", shelf.getText(book, sub, pos));
+            return result;
+        });
+    }
+
+    /**
+     * リクエストを処理し、結果またはエラーをJSONで返します。
+     */
+    private void handle(final HttpExchange exchange, final Action action) throws IOException {
+        int status = HTTP_OK;
+        Object body;
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                status = HTTP_BAD_METHOD;
+                body = error("method not allowed");
+            } else if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+                status = HTTP_NOT_FOUND;
+                body = error("not found");
+            } else {
+                body = action.run(parseQuery(exchange.getRequestURI()));
+            }
+        } catch (IllegalArgumentException e) {
+            status = HTTP_BAD_REQUEST;
+            body = error(e.getMessage());
+        } catch (EBException | RuntimeException e) {
+            status = HTTP_ERROR;
+            body = error(e.getMessage());
+        }
+        byte[] b = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, b.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(b);
+        }
+    }
+
+    private static Map<String, Object> error(final String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private static String required(final Map<String, String> params, final String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("missing query parameter: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * URIのクエリ文字列を解析します。
+     */
+    private static Map<String, String> parseQuery(final URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq > 0) {
+                params.put(decode(param.substring(0, eq)), decode(param.substring(eq + 1)));
+            } else if (!param.isEmpty()) {
+                params.put(decode(param), "");
+            }
+        }
+        return params;
+    }
+
+    private static String decode(final String s) {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * リクエストの処理。
+     */
+    @FunctionalInterface
+    private interface Action {
+        Object run(Map<String, String> params) throws EBException;
+    }
+}
+
+// end of LookupServer.java
@@ -0,0 +1,241 @@
+package io.github.eb4j.tool.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.Result;
+import io.github.eb4j.Searcher;
+import io.github.eb4j.SubBook;
+
+/**
+ * 複数の書籍の並列検索器。
+ * <p>
+ * 検索方式に対応したすべての副本を、副本ごとのタスクとして並行に検索します。
+ * 結果は見つかった順に逐次通知するか、すべて集めてから順位付けして返します。
+ * 順位は見出しが検索語と一致するもの、検索語で始まるもの、その他の順で、
+ * 同順位の場合は見出しの短いもの、書籍と副本の順とします。
+ *
+ * @author Hiroshi Miura
+ */
+public final class ParallelSearcher {
+
+    /**
+     * 見出しが検索語と一致する結果の順位
+     */
+    private static final int RANK_EXACT = 0;
+
+    /**
+     * 見出しが検索語で始まる結果の順位
+     */
+    private static final int RANK_PREFIX = 1;
+
+    /**
+     * その他の結果の順位
+     */
+    private static final int RANK_OTHER = 2;
+
+    /**
+     * 検索結果の受け取り先。
+     */
+    @FunctionalInterface
+    public interface HitListener {
+        /**
+         * 検索結果を受け取ります。
+         * 複数のスレッドから同時に呼び出されることはありません。
+         *
+         * @param hit 検索結果
+         * @throws IOException 出力に失敗した場合
+         */
+        void hit(Map<String, Object> hit) throws IOException;
+    }
+
+    private final BookShelf shelf;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor.
+     *
+     * @param shelf 検索対象の書籍
+     * @param executor 検索タスクを実行するスレッドプール
+     */
+    public ParallelSearcher(final BookShelf shelf, final ExecutorService executor) {
+        this.shelf = shelf;
+        this.executor = executor;
+    }
+
+    /**
+     * すべての書籍を検索し、見つかった順に結果を通知します。
+     *
+     * @param method 検索方式
+     * @param query 検索語
+     * @param limit 最大件数
+     * @param withText 本文も取得する場合はtrue
+     * @param listener 結果の受け取り先
+     * @return 通知した件数
+     * @throws EBException 検索に失敗した場合
+     * @throws IOException 結果の出力に失敗した場合
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public int search(final SearchMethod method, final String query, final int limit, final boolean withText,
+                      final HitListener listener) throws EBException, IOException, InterruptedException {
+        AtomicBoolean done = new AtomicBoolean(limit <= 0);
+        int[] count = new int[1];
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < shelf.size(); i++) {
+            SubBook[] subs = shelf.getBook(i).getSubBooks();
+            for (int j = 0; j < subs.length; j++) {
+                if (!method.isSupported(subs[j])) {
+                    continue;
+                }
+                int book = i;
+                int sub = j;
+                futures.add(executor.submit(() -> {
+                    Searcher searcher = method.search(subs[sub], query);
+                    while (!done.get()) {
+                        Result result = searcher.getNextResult();
+                        if (result == null) {
+                            break;
+                        }
+                        Map<String, Object> hit = BookShelf.toHit(book, sub, subs[sub], result, withText);
+                        synchronized (count) {
+                            if (count[0] >= limit) {
+                                break;
+                            }
+                            listener.hit(hit);
+                            count[0]++;
+                            if (count[0] >= limit) {
+                                done.set(true);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+        }
+        await(futures, done);
+        return count[0];
+    }
+
+    /**
+     * すべての書籍を検索し、順位付けした結果を返します。
+     * <p>
+     * 副本ごとに最大件数までの見出しを集めて順位付けし、上位の結果についてのみ本文を取得します。
+     *
+     * @param method 検索方式
+     * @param query 検索語
+     * @param limit 最大件数
+     * @param withText 本文も取得する場合はtrue
+     * @return 順位順の検索結果
+     * @throws EBException 検索に失敗した場合
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public List<Map<String, Object>> searchRanked(final SearchMethod method, final String query, final int limit,
+                                                  final boolean withText)
+            throws EBException, InterruptedException {
+        List<Map<String, Object>> hits = new ArrayList<>();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < shelf.size(); i++) {
+            SubBook[] subs = shelf.getBook(i).getSubBooks();
+            for (int j = 0; j < subs.length; j++) {
+                if (!method.isSupported(subs[j])) {
+                    continue;
+                }
+                int book = i;
+                int sub = j;
+                futures.add(executor.submit(() -> {
+                    Searcher searcher = method.search(subs[sub], query);
+                    List<Map<String, Object>> found = new ArrayList<>();
+                    while (found.size() < limit) {
+                        Result result = searcher.getNextResult();
+                        if (result == null) {
+                            break;
+                        }
+                        found.add(BookShelf.toHit(book, sub, subs[sub], result, false));
+                    }
+                    synchronized (hits) {
+                        hits.addAll(found);
+                    }
+                    return null;
+                }));
+            }
+        }
+        try {
+            await(futures, new AtomicBoolean());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        String key = query.trim();
+        hits.sort(Comparator.<Map<String, Object>>comparingInt(hit -> rank(hit, key))
+                .thenComparingInt(hit -> heading(hit).length())
+                .thenComparingInt(hit -> (Integer) hit.get("book"))
+                .thenComparingInt(hit -> (Integer) hit.get("subbook"))
+                .thenComparingLong(hit -> (Long) hit.get("position")));
+        List<Map<String, Object>> ranked = new ArrayList<>(hits.subList(0, Math.min(limit, hits.size())));
+        if (withText) {
+            for (Map<String, Object> hit : ranked) {
+                hit.put("text", shelf.getText((Integer) hit.get("book"), (Integer) hit.get("subbook"),
+                        (Long) hit.get("position")));
+            }
+        }
+        return ranked;
+    }
+
+    /**
+     * すべてのタスクの完了を待ちます。
+     * <p>
+     * いずれかのタスクが失敗した場合は残りのタスクを中止し、その例外を送出します。
+     */
+    private static void await(final List<Future<Void>> futures, final AtomicBoolean done)
+            throws EBException, IOException, InterruptedException {
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            done.set(true);
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof EBException) {
+                throw (EBException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            done.set(true);
+            throw e;
+        }
+    }
+
+    private static int rank(final Map<String, Object> hit, final String key) {
+        String heading = heading(hit);
+        if (heading.equals(key)) {
+            return RANK_EXACT;
+        } else if (heading.startsWith(key)) {
+            return RANK_PREFIX;
+        }
+        return RANK_OTHER;
+    }
+
+    private static String heading(final Map<String, Object> hit) {
+        Object heading = hit.get("heading");
+        if (heading == null) {
+            return "";
+        }
+        return heading.toString().trim();
+    }
+}
+
+// end of ParallelSearcher.java
@@ -0,0 +1,93 @@
+package io.github.eb4j.tool.search;
+
+import java.util.Locale;
+
+import io.github.eb4j.EBException;
+import io.github.eb4j.Searcher;
+import io.github.eb4j.SubBook;
+
+/**
+ * 検索方式。
+ *
+ * @author Hiroshi Miura
+ */
+public enum SearchMethod {
+    /**
+     * 前方一致検索
+     */
+    WORD,
+    /**
+     * 後方一致検索
+     */
+    ENDWORD,
+    /**
+     * 完全一致検索
+     */
+    EXACTWORD,
+    /**
+     * 条件検索 (空白区切りの複数語)
+     */
+    KEYWORD;
+
+    /**
+     * 指定された名前の検索方式を返します。
+     *
+     * @param name 検索方式の名前 (大文字小文字は区別しない)
+     * @return 検索方式
+     * @throws IllegalArgumentException 未知の名前の場合
+     */
+    public static SearchMethod of(final String name) {
+        return valueOf(name.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * 検索方式の名前を返します。
+     *
+     * @return 小文字の名前
+     */
+    public String getName() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * 指定された副本がこの検索方式に対応しているかを判定します。
+     *
+     * @param sub 副本
+     * @return 対応している場合はtrue
+     */
+    public boolean isSupported(final SubBook sub) {
+        switch (this) {
+            case WORD:
+                return sub.hasWordSearch();
+            case ENDWORD:
+                return sub.hasEndwordSearch();
+            case EXACTWORD:
+                return sub.hasExactwordSearch();
+            default:
+                return sub.hasKeywordSearch();
+        }
+    }
+
+    /**
+     * 指定された副本を検索します。
+     *
+     * @param sub 副本
+     * @param query 検索語
+     * @return 検索結果の取得器
+     * @throws EBException 検索に失敗した場合
+     */
+    public Searcher search(final SubBook sub, final String query) throws EBException {
+        switch (this) {
+            case WORD:
+                return sub.searchWord(query);
+            case ENDWORD:
+                return sub.searchEndword(query);
+            case EXACTWORD:
+                return sub.searchExactword(query);
+            default:
+                return sub.searchKeyword(query.trim().split("\\s+"));
+        }
+    }
+}
+
+// end of SearchMethod.java
@@ -1,15 +1,36 @@
 package io.github.eb4j.tool;
 
+import io.github.eb4j.Book;
+import io.github.eb4j.EBException;
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.io.EBFile;
+import io.github.eb4j.io.EBFormat;
+import io.github.eb4j.tool.dump.HexDumper;
+import io.github.eb4j.tool.ebzip.CachedBookReader;
+import io.github.eb4j.tool.ebzip.SliceCache;
+import io.github.eb4j.util.ByteUtil;
+import io.github.eb4j.util.HexUtil;
+import org.apache.commons.io.FileUtils;
+import picocli.CommandLine;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 /**
@@ -53,11 +74,252 @@ public class EBDumpTest {
         assertEquals(outContent.toString("UTF-8"), expected);
     }
 
+    /**
+     * Test dump results of ebzip compressed book through slice cache.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBDump_dump_zipped() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile()).getAbsoluteFile();
+        SliceCache cache = SliceCache.configureShared(SliceCache.DEFAULT_CAPACITY, true);
+        outContent.reset();
+        EBDump ebDump = new EBDump();
+        ebDump.subindex = 0;
+        ebDump.pos = 0L;
+        ebDump.size = 64;
+        ebDump.path = bookPath;
+        ebDump.dump();
+        ebDump.dump();
+        String expected =
+                "00001:000  00 03 20 00 00 00 00 00  00 00 00 00 00 00 00 00  ................\n"
+                + "00001:010  00 00 00 00 00 02 00 00  00 01 01 00 00 00 00 00  ................\n"
+                + "00001:020  05 00 00 00 00 03 00 00  00 01 01 00 00 00 00 00  ................\n"
+                + "00001:030  91 00 00 00 00 04 00 00  00 02 02 41 55 40 00 00  ............\u5ABD..\n";
+        assertEquals(outContent.toString("UTF-8"), expected + expected);
+        assertEquals(cache.getMisses(), 1L);
+        assertEquals(cache.getHits(), 1L);
+    }
+
+    /**
+     * Test a broken ebzip header is reported as a read error before the index is allocated.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBDump_dump_brokenHeader() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile()).getAbsoluteFile();
+        File brokenPath = Files.createTempDirectory("testEBDump_dump_brokenHeader").toFile();
+        try {
+            FileUtils.copyDirectory(bookPath, brokenPath);
+            // ファイルサイズが巨大なヘッダ
+            File broken = new File(brokenPath, "test/DATA/HONMON.ebz");
+            byte[] b = Files.readAllBytes(broken.toPath());
+            Arrays.fill(b, 9, 14, (byte) 0xff);
+            Files.write(broken.toPath(), b);
+            outContent.reset();
+            EBDump ebDump = new EBDump();
+            ebDump.subindex = 0;
+            ebDump.pos = 0L;
+            ebDump.size = 64;
+            ebDump.path = brokenPath;
+            try {
+                ebDump.dump();
+                fail("broken header is not detected");
+            } catch (EBException e) {
+                assertTrue(e.getCause() instanceof IOException);
+                assertTrue(e.getCause().getMessage().startsWith("broken ebzip header: "), e.getCause().getMessage());
+            }
+            assertEquals(outContent.size(), 0);
+        } finally {
+            FileUtils.deleteDirectory(brokenPath);
+        }
+    }
+
+    /**
+     * Test a cache size of zero or less is rejected as a usage error.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBDump_cacheSize() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        CommandLine cmd = new CommandLine(new EBDump());
+        cmd.setErr(new PrintWriter(new OutputStreamWriter(errContent, StandardCharsets.UTF_8), true));
+        assertEquals(cmd.execute("--cache-size", "0", bookPath.getPath()), 2);
+        assertTrue(errContent.toString("UTF-8").startsWith("--cache-size must be a positive number of MB: 0"));
+        assertEquals(cmd.execute("--cache-size", "-1", bookPath.getPath()), 2);
+        assertEquals(outContent.size(), 0);
+    }
+
+    /**
+     * Test parallel dump keeps the order of chunks.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBDump_dump_threads() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile()).getAbsoluteFile();
+        EBFile file = new Book(bookPath).getSubBook(0).getTextFile();
+        try (CachedBookReader reader = CachedBookReader.open(file)) {
+            long pos = 0x123;
+            long size = reader.getFileSize() - pos - 5;
+            StringWriter serial = new StringWriter();
+            new HexDumper(reader, pos, size, BookInputStream.PAGE_SIZE).dump(serial, 1);
+            StringWriter parallel = new StringWriter();
+            new HexDumper(reader, pos, size, BookInputStream.PAGE_SIZE).dump(parallel, 3);
+            assertEquals(parallel.toString(), serial.toString());
+            String[] lines = serial.toString().split(System.lineSeparator());
+            assertEquals(lines.length, (int) ((pos + size + 15) / 16 - pos / 16));
+            assertEquals(lines[0].substring(0, 9), "00001:120");
+            assertEquals(lines[(0x800 - 0x120) / 16].substring(0, 9), "00002:000");
+        }
+    }
+
+    /**
+     * Test dump output matches the previous line-by-line format on chunk and page boundaries.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBDump_dump_format() throws Exception {
+        // 読み込み単位3つ以上にまたがる、行の境界に揃っていない長さのファイル
+        byte[] data = new byte[HexDumper.CHUNK_SIZE * 3 + 0x1237];
+        new Random(1).nextBytes(data);
+        for (int i = 0x100; i < data.length; i += 0x40) {
+            // JIS X 0208とGB 2312の文字
+            data[i] = 0x30;
+            data[i + 1] = 0x21;
+            data[i + 2] = 0x30;
+            data[i + 3] = (byte) 0xa1;
+        }
+        File dir = Files.createTempDirectory("testEBDump_dump_format").toFile();
+        try {
+            Files.write(new File(dir, "HONMON").toPath(), data);
+            EBFile file = new EBFile(dir, "HONMON", EBFormat.FORMAT_PLAIN);
+            try (CachedBookReader reader = CachedBookReader.open(file,
+                    new SliceCache(SliceCache.DEFAULT_CAPACITY, false))) {
+                // 複数の読み込み単位にまたがる範囲
+                assertDump(reader, data, 0x123, HexDumper.CHUNK_SIZE * 2 + 0x456);
+                // 開始位置と終了位置が16バイトの境界にない範囲
+                assertDump(reader, data, 0x1005, 0x2b);
+                assertDump(reader, data, 0x1009, 0x3);
+                // 読み込み単位の境界をまたぐ範囲
+                assertDump(reader, data, HexDumper.CHUNK_SIZE - 0x13, 0x29);
+
+                // ページの境界をまたぐ範囲ではページ番号が切り替わる
+                long pos = BookInputStream.PAGE_SIZE * 3 - 0x25;
+                String[] lines = assertDump(reader, data, pos, 0x50);
+                assertEquals(lines.length, 6);
+                assertEquals(lines[0].substring(0, 10), "00003:" + HexUtil.toHexString(0x7d0, 3) + " ");
+                assertEquals(lines[2].substring(0, 10), "00003:" + HexUtil.toHexString(0x7f0, 3) + " ");
+                assertEquals(lines[3].substring(0, 10), "00004:000 ");
+                assertEquals(lines[5].substring(0, 10), "00004:020 ");
+
+                // ファイルの終端までの範囲
+                assertDump(reader, data, data.length - 0x37, 0x37);
+                assertDump(reader, data, data.length - HexDumper.CHUNK_SIZE - 0x801,
+                        HexDumper.CHUNK_SIZE + 0x801);
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * 指定範囲のダンプが従来の形式と一致することを、順に整形した場合と並行に整形した場合で確認します。
+     *
+     * @return ダンプした行
+     */
+    private static String[] assertDump(final CachedBookReader reader, final byte[] data, final long pos,
+                                       final int size) throws Exception {
+        String expected = legacyDump(data, pos, size);
+        StringWriter serial = new StringWriter();
+        HexDumper dumper = new HexDumper(reader, pos, size);
+        dumper.checkRange("HONMON");
+        dumper.dump(serial);
+        assertEquals(serial.toString(), expected);
+        StringWriter parallel = new StringWriter();
+        new HexDumper(reader, pos, size, BookInputStream.PAGE_SIZE).dump(parallel, 3);
+        assertEquals(parallel.toString(), expected);
+        return expected.split(System.lineSeparator());
+    }
+
+    /**
+     * 1行ずつ整形していた従来のダンプ処理と同じ形式で出力します。
+     */
+    @SuppressWarnings("checkstyle:innerassignment")
+    private static String legacyDump(final byte[] data, final long pos, final int size) {
+        byte[] b = Arrays.copyOfRange(data, (int) pos, (int) pos + size);
+        long page2 = BookInputStream.getPage(pos);
+        long pos2 = pos + size;
+        long start = pos - (pos & 0x0f);
+        long end = pos2;
+        if ((end % 16) > 0) {
+            end = end + (16 - (end % 16));
+        }
+        StringBuilder buf = new StringBuilder();
+        int idx = 0;
+        for (long i = start; i < end; i += 16) {
+            if (pos + idx >= page2 * BookInputStream.PAGE_SIZE) {
+                page2++;
+            }
+            buf.append(HexUtil.toHexString(page2, 5)).append(':');
+            buf.append(HexUtil.toHexString((int) (i % BookInputStream.PAGE_SIZE), 3)).append(' ');
+            int k = 0;
+            for (int j = 0; j < 16; j++) {
+                if (j == 8) {
+                    buf.append(' ');
+                }
+                buf.append(' ');
+                if (i + j >= pos && i + j < pos2) {
+                    buf.append(HexUtil.toHexString(b[idx + k]));
+                    k++;
+                } else {
+                    buf.append("  ");
+                }
+            }
+            buf.append("  ");
+            for (int j = 0; j < 16; j += 2) {
+                if (i + j >= pos && i + j < pos2) {
+                    int high = b[idx++] & 0xff;
+                    if (i + j + 1 >= pos && i + j + 1 < pos2) {
+                        int low = b[idx++] & 0xff;
+                        if (high > 0x20 && high < 0x7f && low > 0x20 && low < 0x7f) {
+                            buf.append(ByteUtil.jisx0208ToString(b, idx - 2, 2));
+                        } else if (high > 0x20 && high < 0x7f && low > 0xa0 && low < 0xff) {
+                            buf.append(ByteUtil.gb2312ToString(b, idx - 2, 2));
+                        } else if (high > 0xa0 && high < 0xff && low > 0x20 && low < 0x7f) {
+                            buf.append("??");
+                        } else {
+                            buf.append("..");
+                        }
+                    } else {
+                        buf.append(". ");
+                    }
+                } else {
+                    buf.append(' ');
+                    if (i + j + 1 >= pos && i + j + 1 < pos2) {
+                        idx++;
+                        buf.append('.');
+                    } else {
+                        buf.append(' ');
+                    }
+                }
+            }
+            buf.append(System.lineSeparator());
+        }
+        return buf.toString();
+    }
+
     /**
      * Clean up.
      */
     @AfterMethod
     public void cleanUpStreams() {
         System.setOut(null);
+        // 他のテストに影響しないよう共有キャッシュを既定の設定に戻す
+        SliceCache.configureShared(SliceCache.DEFAULT_CAPACITY, false);
     }
 }
@@ -0,0 +1,186 @@
+package io.github.eb4j.tool;
+
+import io.github.eb4j.tool.search.BookShelf;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test for export command.
+ */
+public class EBExportTest {
+
+    /**
+     * Test export of all entries as JSON lines.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testExport_jsonl() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        EBExport ebExport = new EBExport();
+        ebExport.threads = 1;
+        StringWriter out = new StringWriter();
+        long count = ebExport.export(BookShelf.open(Collections.singletonList(bookPath)), null, out);
+        assertEquals(count, 6L);
+        String expected =
+                "{\"book\":\"epwing\",\"subbook\":\"test\",\"position\":2050,\"heading\":\"This\","
+                + "\"text\":\"This\\nこれ\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"test\",\"position\":2084,\"heading\":\"That\","
+                + "\"text\":\"That\\nあれ\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"test\",\"position\":2118,\"heading\":\"Here\","
+                + "\"text\":\"Here\\nここ\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2050,\"heading\":\"OmegaT\","
+                + "\"text\":\"OmegaT\\nオメガＴ\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2092,\"heading\":\"Tokyo\","
+                + "\"text\":\"Tokyo\\n東京\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2128,\"heading\":\"saitama\","
+                + "\"text\":\"saitama\\n埼玉\"}\n";
+        assertEquals(out.toString(), expected);
+    }
+
+    /**
+     * Test compressed book exports the same text in parallel.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testExport_zipped() throws Exception {
+        File plain = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File zipped = new File(this.getClass().getResource("/data/epwing-zipped").getFile()).getAbsoluteFile();
+        EBExport ebExport = new EBExport();
+        ebExport.threads = 4;
+        ebExport.format = EBExport.ExportFormat.TEXT;
+        StringWriter plainOut = new StringWriter();
+        ebExport.export(BookShelf.open(Collections.singletonList(plain)), null, plainOut);
+        StringWriter zippedOut = new StringWriter();
+        ebExport.export(BookShelf.open(Collections.singletonList(zipped)), null, zippedOut);
+        assertEquals(sorted(zippedOut.toString().replace("epwing-zipped/", "epwing/")),
+                sorted(plainOut.toString()));
+    }
+
+    /**
+     * Test entries are split at the stop code of the appendix and gaiji are replaced by the appendix.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testExport_appendix() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File appendixFile = new File(this.getClass().getResource("/data/chimei.yml").getFile()).getAbsoluteFile();
+        File tmpPath = Files.createTempDirectory("testExport_appendix").toFile();
+        File book = new File(tmpPath, "epwing");
+        FileUtils.copyDirectory(bookPath, book);
+        // 見出しの後の「オ」を外字に置き換える
+        File honmon = new File(book, "chimei/DATA/HONMON");
+        byte[] b = Files.readAllBytes(honmon.toPath());
+        b[0x822] = (byte) 0xa4;
+        b[0x823] = 0x31;
+        Files.write(honmon.toPath(), b);
+
+        EBExport ebExport = new EBExport();
+        ebExport.threads = 1;
+        StringWriter out = new StringWriter();
+        long count = ebExport.export(BookShelf.open(Collections.singletonList(book)),
+                EBAppendix.getAppendix(appendixFile), out);
+        assertEquals(count, 6L);
+        String expected =
+                "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2050,\"heading\":\"OmegaT\","
+                + "\"text\":\"OmegaT\\n[U]メガＴ\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2092,\"heading\":\"Tokyo\","
+                + "\"text\":\"Tokyo\\n東京\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2128,\"heading\":\"saitama\","
+                + "\"text\":\"saitama\\n埼玉\"}\n";
+        assertTrue(out.toString().endsWith(expected), out.toString());
+
+        // キーワード開始コードを停止コードにした付録
+        File keyword = new File(tmpPath, "keyword.yml");
+        Files.write(keyword.toPath(), Files.readAllLines(appendixFile.toPath()).stream()
+                .map(line -> line.replace("0x1f090001", "0x1f410160")).collect(Collectors.toList()));
+        out = new StringWriter();
+        count = ebExport.export(BookShelf.open(Collections.singletonList(book)),
+                EBAppendix.getAppendix(keyword), out);
+        assertEquals(count, 6L);
+        expected =
+                "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2050,\"heading\":\"OmegaT\","
+                + "\"text\":\"OmegaT\\n[U]メガＴ\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2096,\"heading\":\"Tokyo\","
+                + "\"text\":\"Tokyo\\n東京\"}\n"
+                + "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":2132,\"heading\":\"saitama\","
+                + "\"text\":\"saitama\\n埼玉\"}\n";
+        assertTrue(out.toString().endsWith(expected), out.toString());
+        FileUtils.deleteDirectory(tmpPath);
+    }
+
+    /**
+     * Test a stop code longer than its escape sequence is matched across a read chunk boundary.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testExport_stopCodeAcrossChunk() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File appendixFile = new File(this.getClass().getResource("/data/chimei.yml").getFile()).getAbsoluteFile();
+        File tmpPath = Files.createTempDirectory("testExport_stopCodeAcrossChunk").toFile();
+        File book = new File(tmpPath, "epwing");
+        FileUtils.copyDirectory(bookPath, book);
+        // 改行とキーワード開始コードを停止コードにした付録
+        File appendix = new File(tmpPath, "newline.yml");
+        Files.write(appendix.toPath(), Files.readAllLines(appendixFile.toPath()).stream()
+                .map(line -> line.replace("0x1f090001", "0x1f0a1f41")).collect(Collectors.toList()));
+
+        // 本文をファイル末尾のページに移し、2つ目の項目の停止コードを最初の読み込み単位(64KB)の境界に
+        // またがらせる
+        File honmon = new File(book, "chimei/DATA/HONMON");
+        byte[] orig = Files.readAllBytes(honmon.toPath());
+        int start = orig.length;
+        int boundary = start + (64 << 10);
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        text.write(new byte[]{0x1f, 0x02, 0x1f, 0x41, 0x01, 0x00, 0x1f, 0x04, 0x23, 0x41, 0x1f, 0x05,
+            0x1f, 0x61, 0x1f, 0x0a});
+        while (start + text.size() < boundary - 2) {
+            text.write(new byte[]{0x24, 0x22});
+        }
+        text.write(new byte[]{0x1f, 0x0a, 0x1f, 0x41, 0x01, 0x00, 0x1f, 0x04, 0x23, 0x42, 0x1f, 0x05,
+            0x1f, 0x61, 0x1f, 0x0a, 0x24, 0x24, 0x1f, 0x0a, 0x1f, 0x03});
+        int pages = (text.size() + 2047) / 2048;
+        byte[] b = Arrays.copyOf(orig, start + pages * 2048);
+        System.arraycopy(text.toByteArray(), 0, b, start, text.size());
+        int startPage = start / 2048 + 1;
+        b[0x14] = (byte) (startPage >> 8);
+        b[0x15] = (byte) startPage;
+        b[0x18] = (byte) (pages >> 8);
+        b[0x19] = (byte) pages;
+        Files.write(honmon.toPath(), b);
+
+        EBExport ebExport = new EBExport();
+        ebExport.threads = 1;
+        StringWriter out = new StringWriter();
+        ebExport.export(BookShelf.open(Collections.singletonList(book)), EBAppendix.getAppendix(appendix), out);
+        String[] lines = out.toString().split("\n");
+        String first = "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":" + (start + 2)
+                + ",\"heading\":\"A\"";
+        String second = "{\"book\":\"epwing\",\"subbook\":\"chimei\",\"position\":" + (boundary - 2)
+                + ",\"heading\":\"B\",\"text\":\"B\\nい\"}";
+        assertEquals(lines.length, 5, out.toString());
+        assertTrue(lines[3].startsWith(first), lines[3]);
+        assertEquals(lines[4], second);
+        FileUtils.deleteDirectory(tmpPath);
+    }
+
+    private static String sorted(final String s) {
+        String[] records = s.split("\n\n");
+        Arrays.sort(records);
+        return String.join("\n\n", records);
+    }
+}
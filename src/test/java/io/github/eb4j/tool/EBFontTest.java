@@ -0,0 +1,221 @@
+package io.github.eb4j.tool;
+
+import io.github.eb4j.tool.font.FontAtlas;
+import io.github.eb4j.tool.font.GlyphSet;
+import io.github.eb4j.tool.search.BookShelf;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test for font command.
+ */
+public class EBFontTest {
+    private File tmpDir;
+
+    /**
+     * Create a temporary output directory.
+     * @throws Exception when the directory cannot be created.
+     */
+    @BeforeMethod
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("eb4j").toFile();
+    }
+
+    /**
+     * Remove the temporary output directory.
+     * @throws Exception when the directory cannot be removed.
+     */
+    @AfterMethod
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Test book without fonts writes nothing.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testFont_noFont() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        EBFont ebFont = new EBFont();
+        ebFont.format = EBFont.FontFormat.ATLAS;
+        assertEquals(ebFont.render(BookShelf.open(Collections.singletonList(bookPath)), tmpDir), 0L);
+    }
+
+    /**
+     * Test books with the same directory name are written to separate directories.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testFont_sameName() throws Exception {
+        File source = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File first = new File(tmpDir, "a/epwing");
+        File second = new File(tmpDir, "b/EPWING");
+        FileUtils.copyDirectory(source, first);
+        FileUtils.copyDirectory(source, second);
+        File outDir = new File(tmpDir, "out");
+        EBFont ebFont = new EBFont();
+        assertEquals(ebFont.getBookDirs(BookShelf.open(Arrays.asList(first, second)), outDir),
+                Arrays.asList(new File(outDir, "epwing"), new File(outDir, "EPWING-2")));
+    }
+
+    /**
+     * Test glyphs of a font are written as images named by code.
+     * @throws Exception when write error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testFont_glyphs() throws Exception {
+        File subDir = new File(tmpDir, "test");
+        EBFont ebFont = new EBFont();
+        assertEquals(ebFont.renderFont(newGlyphSet(), false, subDir), 2);
+        File glyphDir = new File(subDir, "16/wide");
+        String[] names = glyphDir.list();
+        assertNotNull(names);
+        Arrays.sort(names);
+        assertEquals(names, new String[]{"A122.png", "A17E.png"});
+        BufferedImage image = ImageIO.read(new File(glyphDir, "A122.png"));
+        assertEquals(image.getWidth(), 16);
+        assertEquals(image.getHeight(), 16);
+        assertEquals(image.getRGB(1, 0), 0xff000000);
+        assertEquals(image.getRGB(0, 0), 0xffffffff);
+        image = ImageIO.read(new File(glyphDir, "A17E.png"));
+        assertEquals(image.getRGB(15, 15), 0xff000000);
+        assertEquals(image.getRGB(1, 0), 0xffffffff);
+    }
+
+    /**
+     * Test glyphs of a font are written to an atlas image and index.
+     * @throws Exception when write error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testFont_glyphsAtlas() throws Exception {
+        File subDir = new File(tmpDir, "test");
+        EBFont ebFont = new EBFont();
+        ebFont.format = EBFont.FontFormat.ATLAS;
+        ebFont.columns = 4;
+        assertEquals(ebFont.renderFont(newGlyphSet(), false, subDir), 2);
+        String[] names = subDir.list();
+        assertNotNull(names);
+        Arrays.sort(names);
+        assertEquals(names, new String[]{"wide-16.idx", "wide-16.png"});
+        BufferedImage image = ImageIO.read(new File(subDir, "wide-16.png"));
+        // 外字が列数より少ない場合は外字の数だけ並べる
+        assertEquals(image.getWidth(), 32);
+        assertEquals(image.getHeight(), 16);
+        assertEquals(image.getRGB(1, 0), 0xff000000);
+        assertEquals(image.getRGB(16 + 15, 15), 0xff000000);
+        assertEquals(image.getRGB(16 + 1, 0), 0xffffffff);
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(new File(subDir, "wide-16.idx").toPath()))) {
+            assertEquals(in.readInt(), 0x45424641);
+            assertEquals(in.readInt(), 1);
+            assertEquals(in.readInt(), 16);
+            assertEquals(in.readInt(), 16);
+            assertEquals(in.readInt(), 4);
+            assertEquals(in.readInt(), 2);
+            assertEquals(in.readUnsignedShort(), 0xa122);
+            assertEquals(in.readUnsignedShort(), 0xa17e);
+        }
+    }
+
+    /**
+     * Test a font without glyphs creates no directories.
+     * @throws Exception when write error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testFont_emptyFont() throws Exception {
+        File subDir = new File(tmpDir, "test");
+        GlyphSet empty = new GlyphSet("narrow", 8, 16, 0xa121, 0xa17e, code -> null);
+        EBFont ebFont = new EBFont();
+        assertEquals(ebFont.renderFont(empty, false, subDir), 0);
+        assertTrue(!subDir.exists());
+        ebFont.format = EBFont.FontFormat.ATLAS;
+        assertEquals(ebFont.renderFont(empty, false, subDir), 0);
+        assertTrue(!subDir.exists());
+    }
+
+    /**
+     * 0xa122と0xa17eの2文字だけを持つ16x16の全角外字の集合を作成します。
+     * 0xa122は左上から2番目、0xa17eは右下のピクセルが黒です。
+     */
+    private static GlyphSet newGlyphSet() {
+        return new GlyphSet("wide", 16, 16, 0xa121, 0xa221, code -> {
+            byte[] bitmap = new byte[32];
+            if (code == 0xa122) {
+                bitmap[0] = 0x40;
+            } else if (code == 0xa17e) {
+                bitmap[31] = 0x01;
+            } else {
+                return null;
+            }
+            return bitmap;
+        });
+    }
+
+    /**
+     * Test gaiji code sequence.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testFont_nextCode() {
+        assertEquals(EBFont.nextCode(0xa121, false), 0xa122);
+        assertEquals(EBFont.nextCode(0xa17e, false), 0xa221);
+        assertEquals(EBFont.nextCode(0xa1fe, true), 0xa201);
+    }
+
+    /**
+     * Test atlas image and index.
+     * @throws Exception when write error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testFont_atlas() throws Exception {
+        FontAtlas atlas = new FontAtlas(16, 16, 2);
+        for (int i = 0; i < 3; i++) {
+            byte[] bitmap = new byte[32];
+            bitmap[i * 2] = (byte) 0x80;
+            atlas.add(0xa121 + i, bitmap);
+        }
+        File png = new File(tmpDir, "wide-16.png");
+        File idx = new File(tmpDir, "wide-16.idx");
+        FontAtlas.write(atlas.toImage(), "png", png);
+        atlas.writeIndex(idx);
+        BufferedImage image = ImageIO.read(png);
+        assertEquals(image.getWidth(), 32);
+        assertEquals(image.getHeight(), 32);
+        assertEquals(image.getRGB(0, 0), 0xff000000);
+        assertEquals(image.getRGB(1, 0), 0xffffffff);
+        assertEquals(image.getRGB(16, 1), 0xff000000);
+        assertEquals(image.getRGB(0, 18), 0xff000000);
+        assertEquals(image.getRGB(16, 16), 0xffffffff);
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(idx.toPath()))) {
+            assertEquals(in.readInt(), 0x45424641);
+            assertEquals(in.readInt(), 1);
+            assertEquals(in.readInt(), 16);
+            assertEquals(in.readInt(), 16);
+            assertEquals(in.readInt(), 2);
+            assertEquals(in.readInt(), 3);
+            assertEquals(in.readUnsignedShort(), 0xa121);
+            assertEquals(in.readUnsignedShort(), 0xa122);
+            assertEquals(in.readUnsignedShort(), 0xa123);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.eb4j.tool;
+
+import io.github.eb4j.Book;
+import io.github.eb4j.tool.index.Headword;
+import io.github.eb4j.tool.index.HeadwordIndex;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Test for index command.
+ */
+public class EBIndexTest {
+
+    /**
+     * Test index build and lookup of all headwords.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testIndex_build() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File file = Files.createTempFile("eb4j", ".idx").toFile();
+        file.deleteOnExit();
+        EBIndex.Build build = new EBIndex.Build();
+        build.threads = 2;
+        assertEquals(build.build(new Book(bookPath), null, file), 6);
+        try (HeadwordIndex index = HeadwordIndex.open(file)) {
+            assertEquals(index.size(), 6);
+            assertEquals(index.getSubBooks(), Arrays.asList("test", "chimei"));
+            List<Headword> hits = index.lookup("Tokyo", false, 10);
+            assertEquals(hits.size(), 1);
+            assertEquals(hits.get(0).getKey(), "tokyo");
+            assertEquals(hits.get(0).getSubBook(), 1);
+            assertEquals(hits.get(0).getPosition(), 2092L);
+            hits = index.lookup("ｔｈ", true, 10);
+            assertEquals(hits.size(), 2);
+            assertEquals(hits.get(0).getKey(), "that");
+            assertEquals(hits.get(1).getKey(), "this");
+            assertEquals(index.lookup("tok", false, 10).size(), 0);
+            assertEquals(index.lookup("zzz", true, 10).size(), 0);
+        }
+    }
+
+    /**
+     * Test index build splits entries at the stop code of the appendix as export does.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testIndex_build_appendix() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File appendixFile = new File(this.getClass().getResource("/data/chimei.yml").getFile()).getAbsoluteFile();
+        File tmpPath = Files.createTempDirectory("testIndex_build_appendix").toFile();
+        try {
+            File book = new File(tmpPath, "epwing");
+            FileUtils.copyDirectory(bookPath, book);
+            // 2つ目の項目のキーワード開始コードの引数を変え、停止コードでしか区切れないようにする
+            File honmon = new File(book, "chimei/DATA/HONMON");
+            byte[] b = Files.readAllBytes(honmon.toPath());
+            b[0x833] = 0x61;
+            Files.write(honmon.toPath(), b);
+            File file = new File(tmpPath, "eb4j.idx");
+            EBIndex.Build build = new EBIndex.Build();
+            build.threads = 1;
+
+            assertEquals(build.build(new Book(book), null, file), 5);
+            try (HeadwordIndex index = HeadwordIndex.open(file)) {
+                assertEquals(index.lookup("Tokyo", false, 10).size(), 0);
+            }
+
+            assertEquals(build.build(new Book(book), EBAppendix.getAppendix(appendixFile), file), 6);
+            try (HeadwordIndex index = HeadwordIndex.open(file)) {
+                List<Headword> hits = index.lookup("Tokyo", false, 10);
+                assertEquals(hits.size(), 1);
+                assertEquals(hits.get(0).getSubBook(), 1);
+                assertEquals(hits.get(0).getPosition(), 2092L);
+                hits = index.lookup("saitama", false, 10);
+                assertEquals(hits.size(), 1);
+                assertEquals(hits.get(0).getPosition(), 2128L);
+            }
+        } finally {
+            FileUtils.deleteDirectory(tmpPath);
+        }
+    }
+
+    /**
+     * Test index lookup output of compressed book.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testIndex_lookup() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile()).getAbsoluteFile();
+        File file = Files.createTempFile("eb4j", ".idx").toFile();
+        file.deleteOnExit();
+        new EBIndex.Build().build(new Book(bookPath), null, file);
+        EBIndex.Lookup lookup = new EBIndex.Lookup();
+        lookup.word = "Saitama";
+        lookup.bookPath = bookPath;
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outContent, true, "UTF-8");
+        assertEquals(lookup.lookup(file, out), 1);
+        assertEquals(outContent.toString(StandardCharsets.UTF_8.name()), "chimei\t2128\tsaitama\n");
+    }
+}
@@ -1,5 +1,10 @@
 package io.github.eb4j.tool;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.eb4j.tool.ebzip.BookFinder;
+import io.github.eb4j.tool.info.MetadataCache;
+import org.apache.commons.io.FileUtils;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -8,8 +13,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 /**
@@ -35,6 +48,7 @@ public class EBInfoTest {
      * @throws Exception when read error happened.
      */
     @Test
+    @SuppressWarnings("checkstyle:methodname")
     public void testEBinfo() throws Exception {
         File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
         String expected = "disc type: EPWING V1\n"
@@ -62,6 +76,179 @@ public class EBInfoTest {
         assertEquals(outContent.toString("UTF-8"), expected);
     }
 
+    /**
+     * Test info of all books in a directory tree as NDJSON.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBinfo_ndjson() throws Exception {
+        File dataPath = new File(this.getClass().getResource("/data").getFile()).getAbsoluteFile();
+        List<File> books = new ArrayList<>();
+        BookFinder.find(dataPath, books);
+        EBInfo ebInfo = new EBInfo();
+        ebInfo.path = dataPath;
+        ebInfo.format = EBInfo.InfoFormat.NDJSON;
+        ebInfo.threads = 2;
+        outContent.reset();
+        assertEquals(ebInfo.scan(books, System.out), 0);
+        String[] lines = outContent.toString("UTF-8").split("\n");
+        assertEquals(lines.length, 2);
+        ObjectMapper mapper = new ObjectMapper();
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode info = mapper.readTree(lines[i]);
+            assertEquals(info.get("path").asText(), books.get(i).getPath());
+            assertEquals(info.get("discType").asText(), "EPWING V1");
+            assertEquals(info.get("charCode").asText(), "JIS X 0208");
+            assertEquals(info.get("subbookCount").asInt(), 2);
+            JsonNode sub = info.get("subbooks").get(1);
+            assertEquals(sub.get("subbook").asInt(), 1);
+            assertEquals(sub.get("title").asText(), "\u5730\u540d");
+            assertEquals(sub.get("directory").asText(), "chimei");
+            assertEquals(sub.get("search").toString(), "[\"word\",\"exactword\"]");
+            assertEquals(sub.get("fontSizes").size(), 0);
+            assertTrue(sub.get("wideFont").isNull());
+            assertEquals(sub.get("multiSearch").size(), 0);
+        }
+    }
+
+    /**
+     * Test the second scan is served from the metadata cache without opening the book.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBinfo_metadataCache() throws Exception {
+        File tmpDir = Files.createTempDirectory("eb4j").toFile();
+        try {
+            File bookPath = new File(tmpDir, "epwing");
+            FileUtils.copyDirectory(new File(this.getClass().getResource("/data/epwing").getFile()), bookPath);
+            File cacheFile = new File(tmpDir, "metadata.json");
+            EBInfo ebInfo = new EBInfo();
+            ebInfo.path = bookPath;
+            ebInfo.format = EBInfo.InfoFormat.JSON;
+            ebInfo.metadataCache = cacheFile;
+            List<File> books = Collections.singletonList(bookPath);
+            outContent.reset();
+            assertEquals(ebInfo.scan(books, System.out), 0);
+            String first = outContent.toString("UTF-8");
+            assertTrue(first.contains("\"subbooks\""));
+            assertTrue(cacheFile.isFile());
+
+            // サイズと更新時刻を変えずにカタログを壊し、書籍を開けないようにする
+            File catalogs = new File(bookPath, "CATALOGS");
+            long modified = catalogs.lastModified();
+            Files.write(catalogs.toPath(), new byte[(int) catalogs.length()]);
+            assertTrue(catalogs.setLastModified(modified));
+
+            MetadataCache cache = MetadataCache.load(cacheFile);
+            outContent.reset();
+            assertEquals(ebInfo.scan(books, System.out, cache), 0);
+            assertEquals(outContent.toString("UTF-8"), first);
+            assertEquals(cache.getHits(), 1);
+            assertEquals(cache.getMisses(), 0);
+
+            // 識別情報が変わるとキャッシュを使わずに書籍を開く
+            assertTrue(catalogs.setLastModified(modified - 2000));
+            cache = MetadataCache.load(cacheFile);
+            outContent.reset();
+            ebInfo.scan(books, System.out, cache);
+            assertNotEquals(outContent.toString("UTF-8"), first);
+            assertEquals(cache.getHits(), 0);
+            assertEquals(cache.getMisses(), 1);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    /**
+     * Test the fingerprint covers files in subbook directories and a broken cache file is ignored.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBinfo_metadataCache_fingerprint() throws Exception {
+        File tmpDir = Files.createTempDirectory("eb4j").toFile();
+        File bookPath = new File(tmpDir, "epwing");
+        FileUtils.copyDirectory(new File(this.getClass().getResource("/data/epwing").getFile()), bookPath);
+        // EB形式の書籍の本文ファイルは副本ディレクトリの直下にある
+        File start = new File(bookPath, "test/START");
+        Files.write(start.toPath(), new byte[16]);
+        String fingerprint = MetadataCache.fingerprint(bookPath);
+        assertTrue(fingerprint.contains("test/START:16:"), fingerprint);
+        Files.write(start.toPath(), new byte[32]);
+        assertNotEquals(MetadataCache.fingerprint(bookPath), fingerprint);
+
+        File cacheFile = new File(tmpDir, "metadata.json");
+        Files.write(cacheFile.toPath(), "{ broken".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(errContent, true, "UTF-8"));
+        try {
+            EBInfo ebInfo = new EBInfo();
+            ebInfo.path = bookPath;
+            ebInfo.format = EBInfo.InfoFormat.JSON;
+            ebInfo.metadataCache = cacheFile;
+            assertEquals(ebInfo.scan(Collections.singletonList(bookPath), System.out), 0);
+        } finally {
+            System.setErr(err);
+        }
+        assertTrue(errContent.toString("UTF-8").startsWith(EBInfo.class.getName()
+                + ": ignore broken metadata cache " + cacheFile.getPath() + ": "));
+        assertEquals(MetadataCache.load(cacheFile).get(bookPath, MetadataCache.fingerprint(bookPath)).get("path"),
+                bookPath.getPath());
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Test a broken book is reported per book and does not stop the other books.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBinfo_brokenBook() throws Exception {
+        File tmpDir = Files.createTempDirectory("eb4j").toFile();
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        try {
+            File source = new File(this.getClass().getResource("/data/epwing").getFile());
+            File broken = new File(tmpDir, "a-broken");
+            File bookPath = new File(tmpDir, "b-epwing");
+            FileUtils.copyDirectory(source, broken);
+            FileUtils.copyDirectory(source, bookPath);
+            File catalogs = new File(broken, "CATALOGS");
+            Files.write(catalogs.toPath(), new byte[(int) catalogs.length()]);
+            System.setErr(new PrintStream(errContent, true, "UTF-8"));
+
+            // テキスト形式では壊れた書籍の後の書籍も出力する
+            EBInfo ebInfo = new EBInfo();
+            ebInfo.path = tmpDir;
+            outContent.reset();
+            assertEquals((int) ebInfo.call(), 1);
+            String text = outContent.toString("UTF-8");
+            assertTrue(text.contains("book: " + bookPath.getPath() + "\ndisc type: EPWING V1\n"), text);
+            assertTrue(errContent.toString("UTF-8").contains("(" + broken.getPath() + ")"));
+
+            // JSON形式では壊れた書籍をエラーとして記録する
+            ebInfo = new EBInfo();
+            ebInfo.path = tmpDir;
+            ebInfo.format = EBInfo.InfoFormat.NDJSON;
+            ebInfo.threads = 2;
+            outContent.reset();
+            assertEquals(ebInfo.scan(Arrays.asList(broken, bookPath), System.out), 1);
+            String[] lines = outContent.toString("UTF-8").split("\n");
+            assertEquals(lines.length, 2);
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode info = mapper.readTree(lines[0]);
+            assertEquals(info.get("path").asText(), broken.getPath());
+            assertTrue(info.hasNonNull("error"));
+            assertEquals(mapper.readTree(lines[1]).get("path").asText(), bookPath.getPath());
+        } finally {
+            System.setErr(err);
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
     /**
      * Clean up.
      */
@@ -0,0 +1,146 @@
+package io.github.eb4j.tool;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.eb4j.tool.search.BookShelf;
+import io.github.eb4j.tool.search.SearchMethod;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test for search command.
+ */
+public class EBSearchTest {
+
+    private ExecutorService executor;
+    private BookShelf shelf;
+
+    /**
+     * Open books in two directories.
+     * @throws Exception when books cannot be opened.
+     */
+    @BeforeClass
+    public void setUp() throws Exception {
+        File plain = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File zipped = new File(this.getClass().getResource("/data/epwing-zipped").getFile()).getAbsoluteFile();
+        shelf = BookShelf.open(Arrays.asList(plain, zipped));
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    /**
+     * Shutdown threads.
+     */
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Test streaming search outputs JSON lines of matching entries up to limit.
+     * @throws Exception when search failed.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testSearch_stream() throws Exception {
+        assertEquals(shelf.size(), 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EBSearch ebSearch = new EBSearch();
+        ebSearch.method = SearchMethod.WORD;
+        ebSearch.query = "Th";
+        ebSearch.limit = 10;
+        ebSearch.json = true;
+        int count = ebSearch.search(shelf, executor, new PrintStream(out, true, "UTF-8"));
+        // 各書籍のThisとThat
+        assertEquals(count, 4);
+        List<String> entries = readEntries(out.toString("UTF-8"));
+        assertEquals(entries.size(), 4);
+        Collections.sort(entries);
+        assertEquals(entries, Arrays.asList(
+                "0:0:That:2084:That\nあれ", "0:0:This:2050:This\nこれ",
+                "1:0:That:2084:That\nあれ", "1:0:This:2050:This\nこれ"));
+
+        // 件数の上限で打ち切る
+        out.reset();
+        ebSearch.limit = 3;
+        count = ebSearch.search(shelf, executor, new PrintStream(out, true, "UTF-8"));
+        assertEquals(count, 3);
+        entries = readEntries(out.toString("UTF-8"));
+        assertEquals(entries.size(), 3);
+        for (String entry : entries) {
+            assertTrue(entry.matches("[01]:0:(That:2084:That\nあれ|This:2050:This\nこれ)"), entry);
+        }
+    }
+
+    /**
+     * Test ranked search orders exact matches first, then by book, subbook and position.
+     * @throws Exception when search failed.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testSearch_ranked() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EBSearch ebSearch = new EBSearch();
+        ebSearch.method = SearchMethod.EXACTWORD;
+        ebSearch.query = "Tokyo";
+        ebSearch.limit = 10;
+        ebSearch.rank = true;
+        ebSearch.headingOnly = true;
+        ebSearch.json = true;
+        int count = ebSearch.search(shelf, executor, new PrintStream(out, true, "UTF-8"));
+        assertEquals(count, 2);
+        assertEquals(readEntries(out.toString("UTF-8")), Arrays.asList("0:1:Tokyo:2092", "1:1:Tokyo:2092"));
+
+        // 同じ順位の見出しは書籍、副本、本文位置の順
+        out.reset();
+        ebSearch.method = SearchMethod.WORD;
+        ebSearch.query = "Th";
+        ebSearch.limit = 3;
+        count = ebSearch.search(shelf, executor, new PrintStream(out, true, "UTF-8"));
+        assertEquals(count, 3);
+        assertEquals(readEntries(out.toString("UTF-8")),
+                Arrays.asList("0:0:This:2050", "0:0:That:2084", "1:0:This:2050"));
+
+        // 完全一致の見出しは前方一致の見出しより前
+        out.reset();
+        ebSearch.query = "This";
+        ebSearch.limit = 10;
+        ebSearch.search(shelf, executor, new PrintStream(out, true, "UTF-8"));
+        assertEquals(readEntries(out.toString("UTF-8")), Arrays.asList("0:0:This:2050", "1:0:This:2050"));
+    }
+
+    /**
+     * JSON形式の検索結果を「書籍:副本:見出し:本文位置[:本文]」の形式に変換します。
+     */
+    private static List<String> readEntries(final String output) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> entries = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            JsonNode hit = mapper.readTree(line);
+            String entry = hit.get("book").asInt() + ":" + hit.get("subbook").asInt() + ":"
+                    + hit.get("heading").asText().trim() + ":" + hit.get("position").asLong();
+            if (hit.has("text")) {
+                entry += ":" + hit.get("text").asText().trim();
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+}
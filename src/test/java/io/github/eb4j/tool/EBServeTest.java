@@ -0,0 +1,130 @@
+package io.github.eb4j.tool;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.eb4j.tool.search.BookShelf;
+import io.github.eb4j.tool.search.LookupServer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test for lookup server.
+ */
+public class EBServeTest {
+
+    private LookupServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Start server on a free port.
+     * @throws Exception when books cannot be opened.
+     */
+    @BeforeClass
+    public void startServer() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        BookShelf shelf = BookShelf.open(Collections.singletonList(bookPath));
+        server = new LookupServer(shelf, new InetSocketAddress("127.0.0.1", 0), 2, 10);
+        server.start();
+    }
+
+    /**
+     * Stop server.
+     */
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Test book list.
+     * @throws Exception when request failed.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testServe_books() throws Exception {
+        JsonNode books = get("/books", 200);
+        assertEquals(books.size(), 1);
+        JsonNode subs = books.get(0).get("subbooks");
+        assertEquals(subs.size(), 2);
+        assertEquals(subs.get(0).get("directory").asText(), "test");
+        assertEquals(subs.get(1).get("directory").asText(), "chimei");
+    }
+
+    /**
+     * Test search requests return the matching entries.
+     * @throws Exception when request failed.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testServe_search() throws Exception {
+        JsonNode hits = get("/search?method=exactword&q=Tokyo&text=false", 200);
+        assertEquals(hits.size(), 1);
+        assertEquals(hits.get(0).get("book").asInt(), 0);
+        assertEquals(hits.get(0).get("subbook").asInt(), 1);
+        assertEquals(hits.get(0).get("heading").asText().trim(), "Tokyo");
+        assertEquals(hits.get(0).get("position").asLong(), 2092L);
+        assertTrue(!hits.get(0).has("text"));
+
+        // 前方一致検索は見出しの順に返す
+        hits = get("/search?method=word&q=Th&book=0", 200);
+        assertEquals(hits.size(), 2);
+        assertEquals(hits.get(0).get("heading").asText().trim(), "That");
+        assertEquals(hits.get(0).get("position").asLong(), 2084L);
+        assertEquals(hits.get(0).get("text").asText().trim(), "That\nあれ");
+        assertEquals(hits.get(1).get("heading").asText().trim(), "This");
+        assertEquals(hits.get(1).get("position").asLong(), 2050L);
+        assertEquals(get("/search?method=word&q=Th&limit=1", 200).size(), 1);
+
+        get("/search?method=word", 400);
+        get("/search?method=regexp&q=a", 400);
+        get("/search/other?q=a", 404);
+    }
+
+    /**
+     * Test text requests return the text of a search result.
+     * @throws Exception when request failed.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testServe_text() throws Exception {
+        JsonNode text = get("/text?book=0&subbook=1&pos=2092", 200);
+        assertEquals(text.get("book").asInt(), 0);
+        assertEquals(text.get("subbook").asInt(), 1);
+        assertEquals(text.get("position").asLong(), 2092L);
+        assertEquals(text.get("text").asText().trim(), "Tokyo\n東京");
+        assertTrue(get("/text?book=1&pos=0", 400).get("error").asText().contains("no such book"));
+        get("/text?book=0&pos=zero", 400);
+    }
+
+    private JsonNode get(final String path, final int status) throws IOException {
+        InetSocketAddress address = server.getAddress();
+        URL url = new URL("http://127.0.0.1:" + address.getPort() + path);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        try {
+            assertEquals(conn.getResponseCode(), status);
+            InputStream in;
+            if (status < 400) {
+                in = conn.getInputStream();
+            } else {
+                in = conn.getErrorStream();
+            }
+            try (InputStream body = in) {
+                return mapper.readTree(body);
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
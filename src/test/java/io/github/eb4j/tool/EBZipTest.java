@@ -1,17 +1,51 @@
 package io.github.eb4j.tool;
 
+import org.apache.commons.io.FileUtils;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import io.github.eb4j.io.BookInputStream;
+import io.github.eb4j.io.EBFile;
+import io.github.eb4j.io.EBFormat;
+import io.github.eb4j.io.EBZipConstants;
+import io.github.eb4j.tool.ebzip.BufferPool;
+import io.github.eb4j.tool.ebzip.Checkpoint;
+import io.github.eb4j.tool.ebzip.CompressionSetting;
+import io.github.eb4j.tool.ebzip.EBZipHeader;
+import io.github.eb4j.tool.ebzip.EBZipIndex;
+import io.github.eb4j.tool.ebzip.EBZipStream;
+import io.github.eb4j.tool.ebzip.EBZipWriter;
+import io.github.eb4j.tool.ebzip.ParallelInflater;
+import io.github.eb4j.tool.ebzip.SEBXAIndexPage;
+import io.github.eb4j.tool.ebzip.SliceCompressor;
+import io.github.eb4j.tool.ebzip.SliceInflater;
+import picocli.CommandLine;
 import tokyo.northside.io.FileUtils2;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
@@ -62,28 +96,847 @@ public class EBZipTest {
         assertEquals(outContent.toString("UTF-8"), expected);
     }
 
+    /**
+     * Test EBZip information of files processed concurrently is printed in the order of the files.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_info_jobs() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        // 大きい順 (chimei, test, CATALOGS) に処理しても出力はファイルの順
+        String expected = "==> " + bookPath + "/test/DATA/HONMON.ebz <==\n"
+                + "10240 -> 2337 bytes (22.8%, ebzip level 0 compression)\n"
+                + "\n"
+                + "==> " + bookPath + "/chimei/DATA/HONMON.ebz <==\n"
+                + "10240 -> 2386 bytes (23.3%, ebzip level 0 compression)\n"
+                + "\n"
+                + "==> " + bookPath + "/CATALOGS <==\n"
+                + "2048 bytes (not compressed)\n\n";
+        for (int i = 0; i < 10; i++) {
+            outContent.reset();
+            EBZip ebZip = new EBZip();
+            ebZip.bookDir = bookPath;
+            ebZip.actionInfo = true;
+            ebZip.quiet = false;
+            ebZip.jobs = 3;
+            ebZip.skips = Collections.emptyList();
+            ebZip.exec();
+            assertEquals(outContent.toString("UTF-8"), expected);
+        }
+    }
+
+    /**
+     * Test EBZip information in CSV and JSON.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_info_format() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        String expected = "book,file,format,size,compressedSize,level,error\n"
+                + bookPath + "," + bookPath + "/CATALOGS,plain,2048,2048,,\n"
+                + bookPath + "," + bookPath + "/chimei/DATA/HONMON.ebz,ebzip,10240,2386,0,\n"
+                + bookPath + "," + bookPath + "/test/DATA/HONMON.ebz,ebzip,10240,2337,0,\n";
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.actionInfo = true;
+        ebZip.format = EBZip.InfoFormat.CSV;
+        ebZip.jobs = 2;
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertEquals(outContent.toString("UTF-8"), expected);
+        outContent.reset();
+        ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.actionInfo = true;
+        ebZip.format = EBZip.InfoFormat.JSON;
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        String json = outContent.toString("UTF-8");
+        assertTrue(json.startsWith("[ {\n  \"book\" : \"" + bookPath + "\",\n  \"file\" : \"" + bookPath
+                + "/CATALOGS\",\n  \"format\" : \"plain\",\n  \"size\" : 2048,\n  \"compressedSize\" : 2048\n}, {"));
+        assertTrue(json.contains("\"format\" : \"ebzip\",\n  \"level\" : 0,\n  \"size\" : 10240,\n"
+                + "  \"compressedSize\" : 2337\n} ]\n"));
+    }
+
+
+    /**
+     * Test EBZip results.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_compress").toFile().getAbsolutePath();
+        String expected = "==> compress " + bookPath + "/test/DATA/HONMON <==\n"
+                + "output to " + outPath + "/test/DATA/HONMON.ebz\n"
+                + "completed (10240 / 10240 bytes)\n"
+                + "10240 -> 326 bytes (3.2%)\n\n"
+                + "==> compress " + bookPath + "/chimei/DATA/HONMON <==\n"
+                + "output to " + outPath + "/chimei/DATA/HONMON.ebz\n"
+                + "completed (10240 / 10240 bytes)\n"
+                + "10240 -> 377 bytes (3.7%)\n\n"
+                + "==> copy " + bookPath + "/CATALOGS <==\n"
+                + "output to " + outPath + "/CATALOGS\n"
+                + "completed (2048 / 2048 bytes)\n\n";
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = false;
+        ebZip.exec();
+        assertEquals(outContent.toString("UTF-8"), expected);
+        // Check whether go back as same as original
+        File checkPath = Files.createTempDirectory("testEBZip_compress_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = false;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/test/DATA/HONMON"),
+                new File(bookPath + "/test/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip parallel compression produces same result as sequential one.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_threads() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_compress_threads").toFile().getAbsolutePath();
+        String expected = "==> compress " + bookPath + "/test/DATA/HONMON <==\n"
+                + "output to " + outPath + "/test/DATA/HONMON.ebz\n"
+                + "completed (10240 / 10240 bytes)\n"
+                + "10240 -> 326 bytes (3.2%)\n\n"
+                + "==> compress " + bookPath + "/chimei/DATA/HONMON <==\n"
+                + "output to " + outPath + "/chimei/DATA/HONMON.ebz\n"
+                + "completed (10240 / 10240 bytes)\n"
+                + "10240 -> 377 bytes (3.7%)\n\n"
+                + "==> copy " + bookPath + "/CATALOGS <==\n"
+                + "output to " + outPath + "/CATALOGS\n"
+                + "completed (2048 / 2048 bytes)\n\n";
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = false;
+        ebZip.threads = 4;
+        ebZip.exec();
+        assertEquals(outContent.toString("UTF-8"), expected);
+        File checkPath = Files.createTempDirectory("testEBZip_compress_threads_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/chimei/DATA/HONMON"),
+                new File(bookPath + "/chimei/DATA/HONMON")));
+
+        // 逐次圧縮の結果とヘッダの更新時刻以外が一致する
+        String sequentialPath = Files.createTempDirectory("testEBZip_compress_threads_sequential").toFile()
+                .getAbsolutePath();
+        ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = sequentialPath;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.threads = 1;
+        ebZip.exec();
+        for (String name : new String[] {"test/DATA/HONMON.ebz", "chimei/DATA/HONMON.ebz"}) {
+            byte[] parallel = Files.readAllBytes(new File(outPath, name).toPath());
+            byte[] sequential = Files.readAllBytes(new File(sequentialPath, name).toPath());
+            Arrays.fill(parallel, 18, 22, (byte) 0);
+            Arrays.fill(sequential, 18, 22, (byte) 0);
+            assertEquals(parallel, sequential, name);
+        }
+    }
+
+    /**
+     * Test EBZip pipelined compression with single compression thread.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_pipeline() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_compress_pipeline").toFile().getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = true;
+        ebZip.queueDepth = 2;
+        ebZip.directBuffers = true;
+        ebZip.exec();
+        assertEquals(new File(outPath + "/test/DATA/HONMON.ebz").length(), 326);
+        File checkPath = Files.createTempDirectory("testEBZip_compress_pipeline_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/test/DATA/HONMON"),
+                new File(bookPath + "/test/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip compression from memory-mapped input.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_mmap() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_compress_mmap").toFile().getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = true;
+        ebZip.mmap = true;
+        ebZip.exec();
+        assertEquals(new File(outPath + "/chimei/DATA/HONMON.ebz").length(), 377);
+        File checkPath = Files.createTempDirectory("testEBZip_compress_mmap_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/chimei/DATA/HONMON"),
+                new File(bookPath + "/chimei/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip incremental compression reuses unchanged slices.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_incremental() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_compress_incremental").toFile().getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = true;
+        ebZip.exec();
+        ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = false;
+        ebZip.incremental = true;
+        ebZip.exec();
+        String expected = "==> compress " + bookPath + "/test/DATA/HONMON <==\n"
+                + "output to " + outPath + "/test/DATA/HONMON.ebz\n"
+                + "completed (10240 / 10240 bytes)\n"
+                + "10240 -> 326 bytes (3.2%)\n"
+                + "5 / 5 slices reused\n\n";
+        assertTrue(outContent.toString("UTF-8").startsWith(expected));
+        assertTrue(!new File(outPath + "/test/DATA/HONMON.ebz.tmp").exists());
+        File checkPath = Files.createTempDirectory("testEBZip_compress_incremental_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/test/DATA/HONMON"),
+                new File(bookPath + "/test/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip --resume continues from a checkpoint over a partly written temporary file.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_resume() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_compress_resume").toFile().getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = true;
+        ebZip.exec();
+
+        // 3スライス目まで書き込んだところで中断した状態を作る
+        File ebz = new File(outPath + "/test/DATA/HONMON.ebz");
+        byte[] expected = Files.readAllBytes(ebz.toPath());
+        EBZipHeader header;
+        EBZipIndex index;
+        try (FileChannel channel = FileChannel.open(ebz.toPath())) {
+            header = EBZipHeader.read(channel);
+            index = EBZipIndex.read(channel, header);
+        }
+        Checkpoint checkpoint = new Checkpoint(CompressionSetting.of(0), header.getFileSize(),
+                new File(bookPath, "test/DATA/HONMON"), index, 3);
+        byte[] partial = Arrays.copyOf(expected, (int) checkpoint.getEndPosition() + 100);
+        Arrays.fill(partial, 0, EBZipConstants.EBZIP_HEADER_SIZE, (byte) 0);
+        Arrays.fill(partial, (int) checkpoint.getEndPosition(), partial.length, (byte) 0x55);
+        Files.write(new File(ebz.getPath() + ".tmp").toPath(), partial);
+        checkpoint.write(new File(ebz.getPath() + ".ckpt"));
+        assertTrue(ebz.delete());
+
+        ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.resume = true;
+        ebZip.exec();
+        String expectedOut = "==> compress " + bookPath + "/test/DATA/HONMON <==\n"
+                + "output to " + ebz + "\n"
+                + "resume from slice 3 / 5\n";
+        assertTrue(outContent.toString("UTF-8").contains(expectedOut));
+        assertTrue(!new File(ebz.getPath() + ".tmp").exists());
+        assertTrue(!new File(ebz.getPath() + ".ckpt").exists());
+        byte[] actual = Files.readAllBytes(ebz.toPath());
+        assertEquals(Arrays.copyOfRange(actual, EBZipConstants.EBZIP_HEADER_SIZE, actual.length),
+                Arrays.copyOfRange(expected, EBZipConstants.EBZIP_HEADER_SIZE, expected.length));
+        try (FileChannel channel = FileChannel.open(ebz.toPath())) {
+            assertEquals(EBZipHeader.read(channel).getCRC(), header.getCRC());
+        }
+    }
+
+    /**
+     * Test EBZip writes checkpoints while compressing and resumes from the last one.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_checkpoint() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String expectedPath = Files.createTempDirectory("testEBZip_compress_checkpoint_expected").toFile()
+                .getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = expectedPath;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.exec();
+        byte[] expected = Files.readAllBytes(new File(expectedPath, "test/DATA/HONMON.ebz").toPath());
+
+        // 完成したファイルを置き換えられないようにして、最後のチェックポイントを残す
+        String outPath = Files.createTempDirectory("testEBZip_compress_checkpoint").toFile().getAbsolutePath();
+        File ebz = new File(outPath, "test/DATA/HONMON.ebz");
+        assertTrue(new File(ebz, "file").mkdirs());
+        ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.overwrite = true;
+        ebZip.quiet = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.checkpointInterval = 1e-9;
+        ebZip.exec();
+        File checkpointFile = new File(ebz.getPath() + ".ckpt");
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+        assertTrue(checkpoint != null);
+        assertEquals(checkpoint.getSlices(), 4);
+        assertTrue(new File(ebz.getPath() + ".tmp").exists());
+
+        FileUtils.deleteDirectory(ebz);
+        ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.resume = true;
+        ebZip.exec();
+        assertTrue(outContent.toString("UTF-8").contains("resume from slice 4 / 5\n"));
+        assertTrue(!checkpointFile.exists());
+        assertTrue(!new File(ebz.getPath() + ".tmp").exists());
+        byte[] actual = Files.readAllBytes(ebz.toPath());
+        assertEquals(Arrays.copyOfRange(actual, EBZipConstants.EBZIP_HEADER_SIZE, actual.length),
+                Arrays.copyOfRange(expected, EBZipConstants.EBZIP_HEADER_SIZE, expected.length));
+        File checkPath = Files.createTempDirectory("testEBZip_compress_checkpoint_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/test/DATA/HONMON"),
+                new File(bookPath + "/test/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip ignores a checkpoint with a slice count beyond the file size.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_resume_brokenCheckpoint() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        File input = new File(bookPath, "test/DATA/HONMON");
+        String outPath = Files.createTempDirectory("testEBZip_compress_resume_brokenCheckpoint").toFile()
+                .getAbsolutePath();
+        File ebz = new File(outPath + "/test/DATA/HONMON.ebz");
+        assertTrue(ebz.getParentFile().mkdirs());
+        // スライス数を書き換えたチェックポイント
+        File checkpointFile = new File(ebz.getPath() + ".ckpt");
+        new Checkpoint(CompressionSetting.of(0), input.length(), input, new EBZipIndex(5), 0).write(checkpointFile);
+        byte[] b = Files.readAllBytes(checkpointFile.toPath());
+        ByteBuffer.wrap(b).putInt(44, Integer.MAX_VALUE);
+        Files.write(checkpointFile.toPath(), b);
+        assertTrue(Checkpoint.read(checkpointFile) == null);
+        // Deflaterの圧縮レベルと圧縮戦略を書き換えたチェックポイント
+        new Checkpoint(CompressionSetting.of(0), input.length(), input, new EBZipIndex(5), 0).write(checkpointFile);
+        assertTrue(Checkpoint.read(checkpointFile) != null);
+        byte[] valid = Files.readAllBytes(checkpointFile.toPath());
+        for (int level : new int[]{-2, 10}) {
+            b = valid.clone();
+            ByteBuffer.wrap(b).putInt(12, level);
+            Files.write(checkpointFile.toPath(), b);
+            assertTrue(Checkpoint.read(checkpointFile) == null);
+        }
+        for (int strategy : new int[]{-1, 3}) {
+            b = valid.clone();
+            ByteBuffer.wrap(b).putInt(16, strategy);
+            Files.write(checkpointFile.toPath(), b);
+            assertTrue(Checkpoint.read(checkpointFile) == null);
+        }
+        Files.write(new File(ebz.getPath() + ".tmp").toPath(), new byte[100]);
+
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.resume = true;
+        ebZip.exec();
+        assertTrue(!outContent.toString("UTF-8").contains("resume from slice"));
+        assertTrue(!checkpointFile.exists());
+        assertTrue(!new File(ebz.getPath() + ".tmp").exists());
+        File checkPath = Files.createTempDirectory("testEBZip_compress_resume_brokenCheckpoint_check").toFile()
+                .getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/test/DATA/HONMON"), input));
+    }
+
+    /**
+     * Test EBZip removes the temporary file when the checkpoint cannot be resumed.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_resume_failure() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        // 先頭スライスを壊した圧縮ファイルを入力にする
+        File zipped = Files.createTempDirectory("testEBZip_compress_resume_failure_in").toFile()
+                .getAbsoluteFile();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = zipped.getPath();
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.exec();
+        File input = new File(zipped, "test/DATA/HONMON.ebz");
+        EBZipHeader header;
+        EBZipIndex index;
+        try (FileChannel channel = FileChannel.open(input.toPath())) {
+            header = EBZipHeader.read(channel);
+            index = EBZipIndex.read(channel, header);
+        }
+        byte[] b = Files.readAllBytes(input.toPath());
+        Arrays.fill(b, (int) index.getSliceStart(0), (int) index.getSliceStart(0) + index.getSliceLength(0),
+                (byte) 0x55);
+        Files.write(input.toPath(), b);
+
+        String outPath = Files.createTempDirectory("testEBZip_compress_resume_failure").toFile().getAbsolutePath();
+        File ebz = new File(outPath + "/test/DATA/HONMON.ebz");
+        assertTrue(ebz.getParentFile().mkdirs());
+        Checkpoint checkpoint = new Checkpoint(CompressionSetting.of(0), header.getFileSize(), input, index, 2);
+        File checkpointFile = new File(ebz.getPath() + ".ckpt");
+        checkpoint.write(checkpointFile);
+        File tmp = new File(ebz.getPath() + ".tmp");
+        Files.write(tmp.toPath(), new byte[(int) checkpoint.getEndPosition()]);
+
+        ebZip = new EBZip();
+        ebZip.bookDir = zipped;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.resume = true;
+        ebZip.exec();
+        assertTrue(!checkpointFile.exists());
+        assertTrue(!tmp.exists());
+        assertTrue(!ebz.exists());
+        assertTrue(input.exists());
+    }
+
+    /**
+     * Test compressing and uncompressing between streams.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_stream() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        File zipped = new File(this.getClass().getResource("/data/epwing-zipped/test/DATA/HONMON.ebz").getFile());
+        byte[] data = Files.readAllBytes(new File(bookPath, "test/DATA/HONMON").toPath());
+        String outPath = Files.createTempDirectory("testEBZip_stream").toFile().getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = true;
+        ebZip.exec();
+        byte[] expected = Files.readAllBytes(new File(outPath, "test/DATA/HONMON.ebz").toPath());
+
+        // ファイルを圧縮した場合と同じデータになる
+        ebZip = new EBZip();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        assertEquals(ebZip.execStream(new ByteArrayInputStream(data), compressed), 0);
+        byte[] actual = compressed.toByteArray();
+        assertEquals(Arrays.copyOfRange(actual, EBZipConstants.EBZIP_HEADER_SIZE, actual.length),
+                Arrays.copyOfRange(expected, EBZipConstants.EBZIP_HEADER_SIZE, expected.length));
+        assertEquals(Arrays.copyOf(actual, 18), Arrays.copyOf(expected, 18));
+
+        // メモリの上限を超えた分は一時ファイルを経由する
+        ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+        EBZipStream.compress(new ByteArrayInputStream(data), spilled, CompressionSetting.of(0), 100);
+        assertEquals(Arrays.copyOfRange(spilled.toByteArray(), EBZipConstants.EBZIP_HEADER_SIZE, spilled.size()),
+                Arrays.copyOfRange(actual, EBZipConstants.EBZIP_HEADER_SIZE, actual.length));
+
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        assertEquals(ebZip.execStream(new ByteArrayInputStream(actual), uncompressed), 0);
+        assertEquals(uncompressed.toByteArray(), data);
+        byte[] original = Files.readAllBytes(zipped.toPath());
+        uncompressed.reset();
+        assertEquals(ebZip.execStream(new ByteArrayInputStream(original), uncompressed), 0);
+        assertEquals(uncompressed.toByteArray(), data);
+
+        // 壊れたデータ
+        original[original.length - 10] ^= 0x55;
+        assertEquals(ebZip.execStream(new ByteArrayInputStream(original), new ByteArrayOutputStream()), 1);
+    }
+
+    /**
+     * Test uncompressing a stream with a broken header.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_streamBrokenHeader() throws Exception {
+        // インデックスが上限を超えるファイルサイズ
+        byte[] header = EBZipHeader.create(0, (1L << 40) - 1, 0).toBytes();
+        assertStreamError(header, "broken ebzip header");
+
+        // 未対応の圧縮モード
+        header = EBZipHeader.create(0, 1024, 0).toBytes();
+        header[5] = (byte) 0xf0;
+        assertStreamError(header, "unsupported ebzip mode");
+
+        // インデックスの途中で終わるデータ
+        header = EBZipHeader.create(0, 100L << 20, 0).toBytes();
+        assertStreamError(Arrays.copyOf(header, header.length + 1000), "unexpected EOF in ebzip index");
+
+        EBZip ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        assertEquals(ebZip.execStream(new ByteArrayInputStream(header), new ByteArrayOutputStream()), 1);
+    }
+
+    private static void assertStreamError(final byte[] data, final String message) {
+        try {
+            EBZipStream.decompress(new ByteArrayInputStream(data), new ByteArrayOutputStream());
+            fail("broken header accepted.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(message), e.getMessage());
+        }
+    }
+
+    /**
+     * Test EBZip --transcode recompresses an ebzip book to the given level.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_transcode() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        File origPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_transcode").toFile().getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionTranscode = true;
+        ebZip.level = 2;
+        ebZip.exec();
+        String expected = "==> compress " + bookPath + "/test/DATA/HONMON.ebz <==\n"
+                + "output to " + outPath + "/test/DATA/HONMON.ebz\n"
+                + "completed (10240 / 10240 bytes)\n";
+        assertTrue(outContent.toString("UTF-8").startsWith(expected));
+        assertTrue(new File(outPath + "/CATALOGS").exists());
+        File checkPath = Files.createTempDirectory("testEBZip_transcode_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/test/DATA/HONMON"),
+                new File(origPath + "/test/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip --transcode removes the S-EBXA compression indexes from an S-EBXA text file.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_transcodeSEBXA() throws Exception {
+        File bookPath = Files.createTempDirectory("testEBZip_transcodeSEBXA").toFile().getAbsoluteFile();
+        File outPath = Files.createTempDirectory("testEBZip_transcodeSEBXA_out").toFile().getAbsoluteFile();
+        // 副本が1つのEB形式の書籍
+        byte[] catalog = new byte[16 + 40];
+        catalog[1] = 1;
+        byte[] title = "S-EBXA".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(title, 0, catalog, 16 + 2, title.length);
+        byte[] dir = "SEBXA   ".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(dir, 0, catalog, 16 + 32, dir.length);
+        Files.write(new File(bookPath, "CATALOG").toPath(), catalog);
+        // 先頭ページに圧縮情報を含む本文ファイル
+        byte[] data = new byte[BookInputStream.PAGE_SIZE * 3 + 100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (0x21 + i % 0x5e);
+        }
+        Arrays.fill(data, 0, BookInputStream.PAGE_SIZE, (byte) 0);
+        byte[] page = newIndexPage(0x01, 0x21, 0x22, 0x02).array();
+        System.arraycopy(page, 0, data, 0, page.length);
+        File text = new File(bookPath, "SEBXA/START");
+        assertTrue(text.getParentFile().mkdirs());
+        Files.write(text.toPath(), data);
+
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.outDir = outPath.getPath();
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionTranscode = true;
+        assertEquals((int) ebZip.call(), 0);
+
+        // 圧縮情報のインデックスだけが取り除かれている
+        byte[] expected = data.clone();
+        System.arraycopy(data, 16 * 4, expected, 16 * 2, 16);
+        Arrays.fill(expected, 16 * 3, 16 * 5, (byte) 0);
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        try (InputStream in = Files.newInputStream(new File(outPath, "SEBXA/START.ebz").toPath())) {
+            EBZipStream.decompress(in, uncompressed);
+        }
+        assertEquals(uncompressed.toByteArray(), expected);
+        assertEquals(Files.readAllBytes(new File(outPath, "CATALOG").toPath()), catalog);
+        assertEquals(Files.readAllBytes(text.toPath()), data);
+    }
+
+    /**
+     * Test removing the S-EBXA compression indexes from a synthetic index page.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testSEBXAIndexPage_removeCompressionIndex() {
+        ByteBuffer buf = newIndexPage(0x21, 0x01, 0x22, 0x02, 0x03);
+        byte[] tail = Arrays.copyOfRange(buf.array(), 16 * 6, buf.capacity());
+        SEBXAIndexPage.removeCompressionIndex(buf);
+        byte[] page = buf.array();
+        // 残りのインデックスは順に前に詰められ、空いた分は0で埋められる
+        assertEquals(Arrays.copyOfRange(page, 16, 16 * 4), Arrays.copyOfRange(newIndexPage(0x01, 0x02, 0x03).array(),
+                16, 16 * 4));
+        assertEquals(Arrays.copyOfRange(page, 16 * 4, 16 * 6), new byte[16 * 2]);
+        // インデックス数とインデックス以外の領域は変わらない
+        assertEquals(page[1], 5);
+        assertEquals(Arrays.copyOfRange(page, 16 * 6, page.length), tail);
+
+        // 圧縮情報を含まないページは変わらない
+        buf = newIndexPage(0x01, 0x02);
+        SEBXAIndexPage.removeCompressionIndex(buf);
+        assertEquals(buf.array(), newIndexPage(0x01, 0x02).array());
+    }
 
     /**
-     * Test EBZip results.
+     * 指定された種別のインデックスを持つインデックスページを作成します。
+     * 各インデックスは種別の後に種別とインデックス番号から決まる値を持ちます。
+     */
+    private static ByteBuffer newIndexPage(final int... types) {
+        byte[] page = new byte[BookInputStream.PAGE_SIZE];
+        page[1] = (byte) types.length;
+        for (int i = 0; i < types.length; i++) {
+            int off = 16 * (i + 1);
+            page[off] = (byte) types[i];
+            for (int j = 1; j < 16; j++) {
+                page[off + j] = (byte) (types[i] * 16 + j);
+            }
+        }
+        for (int i = 16 * (types.length + 1); i < page.length; i++) {
+            page[i] = (byte) (i * 7);
+        }
+        return ByteBuffer.wrap(page);
+    }
+
+    /**
+     * Test EBZip --verify accepts intact files and reports a corrupted slice.
      * @throws Exception when read error happened.
      */
     @Test
     @SuppressWarnings("checkstyle:methodname")
-    public void testEBZip_compress() throws Exception {
+    public void testEBZip_verify() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        String expected = "==> verify " + bookPath + "/test/DATA/HONMON.ebz <==\n"
+                + "verified (10240 bytes, 5 slices, ebzip level 0)\n"
+                + "\n"
+                + "==> verify " + bookPath + "/chimei/DATA/HONMON.ebz <==\n"
+                + "verified (10240 bytes, 5 slices, ebzip level 0)\n"
+                + "\n"
+                + "==> verify " + bookPath + "/CATALOGS <==\n"
+                + "not compressed with ebzip, skipped.\n\n";
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = bookPath;
+        ebZip.actionVerify = true;
+        ebZip.threads = 2;
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertEquals(outContent.toString("UTF-8"), expected);
+
+        // 圧縮データを壊したコピーを検査する
+        File brokenPath = Files.createTempDirectory("testEBZip_verify").toFile().getAbsoluteFile();
+        FileUtils.copyDirectory(bookPath, brokenPath);
+        File broken = new File(brokenPath, "test/DATA/HONMON.ebz");
+        byte[] b = Files.readAllBytes(broken.toPath());
+        b[b.length - 10] ^= 0x55;
+        Files.write(broken.toPath(), b);
+        outContent.reset();
+        ebZip = new EBZip();
+        ebZip.bookDir = brokenPath;
+        ebZip.actionVerify = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertTrue(outContent.toString("UTF-8").startsWith("==> verify " + broken + " <==\nfailed: "));
+    }
+
+    /**
+     * Test EBZip --verify counts files with a broken header as failures and checks the rest.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_verify_brokenHeader() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        File brokenPath = Files.createTempDirectory("testEBZip_verify_brokenHeader").toFile().getAbsoluteFile();
+        FileUtils.copyDirectory(bookPath, brokenPath);
+        // ファイルサイズが巨大なヘッダ
+        File test = new File(brokenPath, "test/DATA/HONMON.ebz");
+        byte[] b = Files.readAllBytes(test.toPath());
+        Arrays.fill(b, 9, 14, (byte) 0xff);
+        Files.write(test.toPath(), b);
+        // インデックスの途中で切れたファイル
+        File chimei = new File(brokenPath, "chimei/DATA/HONMON.ebz");
+        b = Files.readAllBytes(chimei.toPath());
+        Files.write(chimei.toPath(), Arrays.copyOf(b, EBZipConstants.EBZIP_HEADER_SIZE + 4));
+
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = brokenPath;
+        ebZip.actionVerify = true;
+        ebZip.threads = 2;
+        ebZip.skips = Collections.emptyList();
+        assertEquals((int) ebZip.call(), 1);
+        String out = outContent.toString("UTF-8");
+        assertTrue(out.startsWith("==> verify " + test + " <==\nfailed: broken ebzip header: "), out);
+        assertTrue(out.contains("==> verify " + chimei + " <==\nfailed: broken ebzip header: "), out);
+        assertTrue(out.contains("==> verify " + new File(brokenPath, "CATALOGS") + " <==\n"), out);
+    }
+
+    /**
+     * Test EBZip --level auto selects a level from samples and the output uncompresses to the original.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_auto() throws Exception {
         File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
                 .getAbsoluteFile();
-        String outPath = Files.createTempDirectory("testEBZip_compress").toFile().getAbsolutePath();
+        String outPath = Files.createTempDirectory("testEBZip_compress_auto").toFile().getAbsolutePath();
         String expected = "==> compress " + bookPath + "/test/DATA/HONMON <==\n"
                 + "output to " + outPath + "/test/DATA/HONMON.ebz\n"
-                + "completed (10240 / 10240 bytes)\n"
-                + "10240 -> 326 bytes (3.2%)\n\n"
-                + "==> compress " + bookPath + "/chimei/DATA/HONMON <==\n"
-                + "output to " + outPath + "/chimei/DATA/HONMON.ebz\n"
-                + "completed (10240 / 10240 bytes)\n"
-                + "10240 -> 377 bytes (3.7%)\n\n"
-                + "==> copy " + bookPath + "/CATALOGS <==\n"
-                + "output to " + outPath + "/CATALOGS\n"
-                + "completed (2048 / 2048 bytes)\n\n";
+                + "selected ebzip level 3 ";
         EBZip ebZip = new EBZip();
         ebZip.bookDir = bookPath;
         ebZip.outDir = outPath;
@@ -91,20 +944,111 @@ public class EBZipTest {
         ebZip.skips = Collections.emptyList();
         ebZip.actionZip = true;
         ebZip.quiet = false;
+        ebZip.level = EBZip.LEVEL_AUTO;
         ebZip.exec();
-        assertEquals(outContent.toString("UTF-8"), expected);
-        // Check whether go back as same as original
-        File checkPath = Files.createTempDirectory("testEBZip_compress_check").toFile().getAbsoluteFile();
+        assertTrue(outContent.toString("UTF-8").startsWith(expected));
+        assertEquals(new File(outPath + "/test/DATA/HONMON.ebz").length(), 237);
+        File checkPath = Files.createTempDirectory("testEBZip_compress_auto_check").toFile().getAbsoluteFile();
         ebZip = new EBZip();
         ebZip.actionUnzip = true;
         ebZip.keep = true;
-        ebZip.quiet = false;
+        ebZip.quiet = true;
         ebZip.bookDir = new File(outPath);
         ebZip.outDir = checkPath.toString();
         ebZip.skips = Collections.emptyList();
         ebZip.exec();
         assertTrue(FileUtils2.contentEquals(new File(checkPath + "/test/DATA/HONMON"),
                 new File(bookPath + "/test/DATA/HONMON")));
+        assertTrue(FileUtils2.contentEquals(new File(checkPath + "/chimei/DATA/HONMON"),
+                new File(bookPath + "/chimei/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip compresses every book found under a directory and prints a summary.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_batch() throws Exception {
+        File rootPath = new File(this.getClass().getResource("/data").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_compress_batch").toFile().getAbsolutePath();
+        String expected = "==> summary <==\n"
+                + "2 books, 6 files, 0 failed\n"
+                + "29299 -> 5502 bytes (18.8%)\n\n";
+        EBZip ebZip = new EBZip();
+        ebZip.bookPaths = Collections.singletonList(rootPath);
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.quiet = false;
+        ebZip.jobs = 2;
+        ebZip.exec();
+        assertTrue(outContent.toString("UTF-8").endsWith(expected));
+        assertEquals(new File(outPath + "/epwing/test/DATA/HONMON.ebz").length(), 326);
+        assertEquals(new File(outPath + "/epwing-zipped/test/DATA/HONMON.ebz").length(), 326);
+        assertEquals(new File(outPath + "/epwing-zipped/chimei/DATA/HONMON.ebz").length(), 377);
+    }
+
+    /**
+     * Test EBZip exits with an error when a book of a batch fails.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_uncompress_batch_exitCode() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        File tmpPath = Files.createTempDirectory("testEBZip_uncompress_batch_exitCode").toFile();
+        try {
+            File good = new File(tmpPath, "good");
+            File broken = new File(tmpPath, "broken");
+            FileUtils.copyDirectory(bookPath, good);
+            FileUtils.copyDirectory(bookPath, broken);
+            File honmon = new File(broken, "test/DATA/HONMON.ebz");
+            byte[] b = Files.readAllBytes(honmon.toPath());
+            b[b.length - 10] ^= 0x55;
+            Files.write(honmon.toPath(), b);
+            String outPath = new File(tmpPath, "out").getPath();
+            assertEquals(new CommandLine(new EBZip()).execute("-u", "-k", "-q", "-o", outPath,
+                    good.getPath(), broken.getPath()), 1);
+            assertTrue(new File(outPath, "good/test/DATA/HONMON").exists());
+            assertTrue(!new File(outPath, "broken/test/DATA/HONMON").exists());
+        } finally {
+            FileUtils.deleteDirectory(tmpPath);
+        }
+    }
+
+    /**
+     * Test EBZip writes books of the same directory name to different output directories.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_batch_sameName() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile()).getAbsoluteFile();
+        File tmpPath = Files.createTempDirectory("testEBZip_compress_batch_sameName").toFile();
+        try {
+            File book1 = new File(tmpPath, "a/epwing");
+            File book2 = new File(tmpPath, "b/epwing");
+            FileUtils.copyDirectory(bookPath, book1);
+            FileUtils.copyDirectory(bookPath, book2);
+            File outPath = new File(tmpPath, "out");
+            EBZip ebZip = new EBZip();
+            ebZip.bookPaths = Arrays.asList(book1, book2);
+            ebZip.outDir = outPath.getPath();
+            ebZip.keep = true;
+            ebZip.skips = Collections.emptyList();
+            ebZip.actionZip = true;
+            ebZip.quiet = true;
+            ebZip.exec();
+            assertEquals(new File(outPath, "epwing/test/DATA/HONMON.ebz").length(), 326);
+            assertEquals(new File(outPath, "epwing-2/test/DATA/HONMON.ebz").length(), 326);
+            assertTrue(new File(outPath, "epwing-2/CATALOGS").exists());
+        } finally {
+            FileUtils.deleteDirectory(tmpPath);
+        }
     }
 
      /**
@@ -143,6 +1087,456 @@ public class EBZipTest {
                 new File(expectedPath + "/test/DATA/HONMON")));
     }
 
+    /**
+     * Test EBZip parallel decompression.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_uncompress_threads() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        String outPath = Files.createTempDirectory("testEBZip_uncompress_threads").toFile().getAbsolutePath();
+        String expectedPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsolutePath();
+        String expected = "==> uncompress " + bookPath + "/test/DATA/HONMON.ebz <==\n"
+                + "output to " + outPath + "/test/DATA/HONMON\n"
+                + "completed (10240 / 10240 bytes)\n"
+                + "2337 -> 10240 bytes\n\n"
+                + "==> uncompress " + bookPath + "/chimei/DATA/HONMON.ebz <==\n"
+                + "output to " + outPath + "/chimei/DATA/HONMON\n"
+                + "completed (10240 / 10240 bytes)\n"
+                + "2386 -> 10240 bytes\n\n"
+                + "==> copy " + bookPath + "/CATALOGS <==\n"
+                + "output to " + outPath + "/CATALOGS\n"
+                + "completed (2048 / 2048 bytes)\n\n";
+        EBZip ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = false;
+        ebZip.threads = 4;
+        ebZip.outDir = outPath;
+        ebZip.bookDir = bookPath;
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertEquals(outContent.toString("UTF-8"), expected);
+        assertTrue(FileUtils2.contentEquals(new File(outPath + "/test/DATA/HONMON"),
+                new File(expectedPath + "/test/DATA/HONMON")));
+        assertTrue(FileUtils2.contentEquals(new File(outPath + "/chimei/DATA/HONMON"),
+                new File(expectedPath + "/chimei/DATA/HONMON")));
+    }
+
+    /**
+     * Test EBZip keeps the original file when the compressed file cannot replace the output file.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_renameFailed() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        File srcPath = Files.createTempDirectory("testEBZip_compress_renameFailed").toFile().getAbsoluteFile();
+        FileUtils.copyDirectory(bookPath, srcPath);
+        String outPath = Files.createTempDirectory("testEBZip_compress_renameFailed_out").toFile()
+                .getAbsolutePath();
+        // 空でないディレクトリには置き換えられない
+        File blocker = new File(outPath, "test/DATA/HONMON.ebz");
+        assertTrue(new File(blocker, "file").mkdirs());
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = srcPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = false;
+        ebZip.overwrite = true;
+        ebZip.quiet = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.exec();
+        assertTrue(new File(srcPath, "test/DATA/HONMON").exists());
+        assertTrue(blocker.isDirectory());
+        assertTrue(!new File(blocker.getPath() + ".tmp").exists());
+        // チェックポイントはデフォルトでは書き込まない
+        assertTrue(!new File(blocker.getPath() + ".ckpt").exists());
+        // 置き換えられたファイルのオリジナルは削除される
+        assertTrue(!new File(srcPath, "chimei/DATA/HONMON").exists());
+        assertTrue(new File(outPath, "chimei/DATA/HONMON.ebz").exists());
+    }
+
+    /**
+     * Test BufferPool hands out the same buffers again and EBZipWriter writes the index in one write.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZipWriter_bufferReuse() throws Exception {
+        BufferPool pool = new BufferPool(1, 16, false);
+        ByteBuffer buf = pool.take();
+        buf.put((byte) 1);
+        pool.release(buf);
+        ByteBuffer again = pool.take();
+        assertTrue(again == buf);
+        assertEquals(again.position(), 0);
+        assertEquals(again.remaining(), 16);
+        pool.release(again);
+
+        File dir = new File(this.getClass().getResource("/data/epwing/test/DATA").getFile()).getAbsoluteFile();
+        EBFile file = new EBFile(dir, "HONMON", EBFormat.FORMAT_PLAIN);
+        File out = Files.createTempFile("eb4j", ".ebz").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (ExecutorService service : new ExecutorService[] {null, executor}) {
+                List<Long> positions;
+                try (CountingChannel channel = new CountingChannel(FileChannel.open(out.toPath(),
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+                     BookInputStream bis = file.getInputStream()) {
+                    long fileSize = bis.getFileSize();
+                    EBZipWriter writer = new EBZipWriter(channel, file, CompressionSetting.of(0), fileSize);
+                    writer.setExecutor(service, 2, 2);
+                    writer.write(bis);
+                    positions = channel.positions;
+                }
+                // スライス5つ、インデックス1回、ヘッダ1回
+                assertEquals(positions.size(), 7, positions.toString());
+                assertEquals(Collections.frequency(positions, (long) EBZipConstants.EBZIP_HEADER_SIZE), 1);
+                assertEquals(Collections.frequency(positions, 0L), 1);
+                assertEquals(out.length(), 326);
+            }
+        } finally {
+            executor.shutdownNow();
+            Files.delete(out.toPath());
+        }
+    }
+
+    /**
+     * File channel recording the positions of positional writes.
+     */
+    private static final class CountingChannel extends FileChannel {
+        private final FileChannel channel;
+        private final List<Long> positions = Collections.synchronizedList(new ArrayList<>());
+
+        CountingChannel(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(final ByteBuffer src, final long position) throws IOException {
+            positions.add(position);
+            return channel.write(src, position);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            positions.add(channel.position());
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+            positions.add(channel.position());
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(final long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(final long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(final boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(final long position, final long count, final WritableByteChannel target)
+                throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel src, final long position, final long count)
+                throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst, final long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(final MapMode mode, final long position, final long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(final long position, final long size, final boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(final long position, final long size, final boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Test SliceCompressor reuses results for all-zero and repeated slices with the same bytes as deflating them.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testSliceCompressor_fastPath() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        byte[] text = Files.readAllBytes(new File(bookPath, "chimei/DATA/HONMON").toPath());
+        for (int level : new int[] {0, 2}) {
+            CompressionSetting setting = CompressionSetting.of(level);
+            int sliceSize = setting.getSliceSize();
+            byte[] a = new byte[sliceSize];
+            byte[] b = new byte[sliceSize];
+            System.arraycopy(text, 0, a, 0, Math.min(text.length, sliceSize));
+            Arrays.fill(b, (byte) 0x20);
+            byte[] zeros = new byte[sliceSize];
+            byte[][] slices = {zeros, a, a, zeros, b, b, a, zeros};
+            SliceCompressor compressor = setting.newCompressor();
+            SliceInflater inflater = new SliceInflater(sliceSize);
+            ByteBuffer out = ByteBuffer.allocate(sliceSize);
+            ByteBuffer plainOut = ByteBuffer.allocate(sliceSize);
+            for (byte[] slice : slices) {
+                ByteBuffer in = ByteBuffer.wrap(slice);
+                int len = compressor.compress(in, out);
+                assertEquals(in.remaining(), 0);
+                // 新しい圧縮器は必ずDeflaterで圧縮する
+                SliceCompressor plain = setting.newCompressor();
+                int plainLen = plain.compress(ByteBuffer.wrap(slice), plainOut);
+                plain.end();
+                assertEquals(len, plainLen);
+                assertEquals(out.remaining(), len);
+                assertEquals(out, plainOut);
+                byte[] compressed = new byte[len];
+                out.get(compressed);
+                inflater.inflate(compressed, len);
+                assertEquals(inflater.getOutput(), slice);
+            }
+            compressor.end();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Test EBZip writes all-zero and repeated slices as deflated ones and uncompresses them to the original.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_compress_repeated() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing").getFile())
+                .getAbsoluteFile();
+        File srcPath = Files.createTempDirectory("testEBZip_compress_repeated").toFile().getAbsoluteFile();
+        FileUtils.copyDirectory(bookPath, srcPath);
+        File honmon = new File(srcPath, "test/DATA/HONMON");
+        int sliceSize = CompressionSetting.of(0).getSliceSize();
+        byte[] page = Arrays.copyOfRange(Files.readAllBytes(honmon.toPath()), sliceSize, sliceSize * 2);
+        byte[] data = new byte[sliceSize * 5];
+        System.arraycopy(page, 0, data, 0, sliceSize);
+        System.arraycopy(page, 0, data, sliceSize * 3, sliceSize);
+        System.arraycopy(page, 0, data, sliceSize * 4, sliceSize);
+        Files.write(honmon.toPath(), data);
+        String outPath = Files.createTempDirectory("testEBZip_compress_repeated_out").toFile().getAbsolutePath();
+        EBZip ebZip = new EBZip();
+        ebZip.bookDir = srcPath;
+        ebZip.outDir = outPath;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.skips = Collections.emptyList();
+        ebZip.actionZip = true;
+        ebZip.exec();
+
+        // スライスごとにDeflaterで圧縮した結果と一致する
+        File ebz = new File(outPath, "test/DATA/HONMON.ebz");
+        byte[] actual = Files.readAllBytes(ebz.toPath());
+        EBZipIndex index;
+        try (FileChannel channel = FileChannel.open(ebz.toPath())) {
+            index = EBZipIndex.read(channel, EBZipHeader.read(channel));
+        }
+        assertEquals(index.getSliceCount(), 5);
+        ByteBuffer out = ByteBuffer.allocate(sliceSize);
+        for (int i = 0; i < 5; i++) {
+            SliceCompressor plain = CompressionSetting.of(0).newCompressor();
+            int len = plain.compress(ByteBuffer.wrap(data, i * sliceSize, sliceSize), out);
+            plain.end();
+            int start = (int) index.getSliceStart(i);
+            assertEquals(index.getSliceLength(i), len);
+            assertEquals(ByteBuffer.wrap(actual, start, len), out);
+        }
+
+        File checkPath = Files.createTempDirectory("testEBZip_compress_repeated_check").toFile().getAbsoluteFile();
+        ebZip = new EBZip();
+        ebZip.actionUnzip = true;
+        ebZip.keep = true;
+        ebZip.quiet = true;
+        ebZip.bookDir = new File(outPath);
+        ebZip.outDir = checkPath.toString();
+        ebZip.skips = Collections.emptyList();
+        ebZip.exec();
+        assertEquals(Files.readAllBytes(new File(checkPath, "test/DATA/HONMON").toPath()), data);
+    }
+
+    /**
+     * Test EBZip keeps the original file and leaves no output when uncompression of a broken file fails.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_uncompress_broken() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        for (int threads : new int[] {1, 2}) {
+            File brokenPath = Files.createTempDirectory("testEBZip_uncompress_broken").toFile().getAbsoluteFile();
+            FileUtils.copyDirectory(bookPath, brokenPath);
+            File broken = new File(brokenPath, "test/DATA/HONMON.ebz");
+            byte[] b = Files.readAllBytes(broken.toPath());
+            b[b.length - 10] ^= 0x55;
+            Files.write(broken.toPath(), b);
+            String outPath = Files.createTempDirectory("testEBZip_uncompress_broken_out").toFile()
+                    .getAbsolutePath();
+            EBZip ebZip = new EBZip();
+            ebZip.actionUnzip = true;
+            ebZip.keep = false;
+            ebZip.quiet = true;
+            ebZip.threads = threads;
+            ebZip.outDir = outPath;
+            ebZip.bookDir = brokenPath;
+            ebZip.skips = Collections.emptyList();
+            ebZip.exec();
+            assertTrue(broken.exists());
+            assertEquals(Files.readAllBytes(broken.toPath()), b);
+            // 解凍に失敗したファイルは出力しない
+            assertTrue(!new File(outPath, "test/DATA/HONMON").exists());
+            assertTrue(!new File(outPath, "test/DATA/HONMON.tmp").exists());
+            // 正常に解凍できたファイルは削除される
+            assertTrue(!new File(brokenPath, "chimei/DATA/HONMON.ebz").exists());
+        }
+    }
+
+    /**
+     * Test ParallelInflater waits for the running slices before it returns on a broken slice.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testParallelInflater_broken() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        File brokenPath = Files.createTempDirectory("testParallelInflater_broken").toFile().getAbsoluteFile();
+        File broken = new File(brokenPath, "HONMON.ebz");
+        Files.copy(new File(bookPath, "test/DATA/HONMON.ebz").toPath(), broken.toPath());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicInteger running = new AtomicInteger();
+        ParallelInflater.SliceSink sink = (inflater, pos, len) -> {
+            running.incrementAndGet();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        try {
+            EBZipHeader header;
+            EBZipIndex index;
+            try (FileChannel in = FileChannel.open(broken.toPath(), StandardOpenOption.READ)) {
+                header = EBZipHeader.read(in);
+                index = EBZipIndex.read(in, header);
+                assertTrue(index.getSliceCount() > 2);
+                long crc = new ParallelInflater(executor, 2).inflate(in, header, index, sink, null);
+                assertEquals(crc, header.getCRC());
+            }
+            // 先頭スライスを壊す
+            byte[] b = Files.readAllBytes(broken.toPath());
+            Arrays.fill(b, (int) index.getSliceStart(0), (int) index.getSliceStart(0) + index.getSliceLength(0),
+                    (byte) 0x55);
+            Files.write(broken.toPath(), b);
+            try (FileChannel in = FileChannel.open(broken.toPath(), StandardOpenOption.READ)) {
+                new ParallelInflater(executor, 2).inflate(in, header, index, sink, null);
+                fail("broken slice is inflated");
+            } catch (IOException expected) {
+                // 実行中のスライスの出力が終わってから戻る
+                assertEquals(running.get(), 0);
+            }
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteDirectory(brokenPath);
+        }
+    }
+
+    /**
+     * Test EBZip fails cleanly on a broken header before creating the output file.
+     * @throws Exception when read error happened.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:methodname")
+    public void testEBZip_uncompress_brokenHeader() throws Exception {
+        File bookPath = new File(this.getClass().getResource("/data/epwing-zipped").getFile())
+                .getAbsoluteFile();
+        for (int threads : new int[] {1, 2}) {
+            File brokenPath = Files.createTempDirectory("testEBZip_uncompress_brokenHeader").toFile()
+                    .getAbsoluteFile();
+            FileUtils.copyDirectory(bookPath, brokenPath);
+            // ファイルサイズが巨大なヘッダ
+            File broken = new File(brokenPath, "test/DATA/HONMON.ebz");
+            byte[] b = Files.readAllBytes(broken.toPath());
+            Arrays.fill(b, 9, 14, (byte) 0xff);
+            Files.write(broken.toPath(), b);
+            String outPath = Files.createTempDirectory("testEBZip_uncompress_brokenHeader_out").toFile()
+                    .getAbsolutePath();
+            EBZip ebZip = new EBZip();
+            ebZip.actionUnzip = true;
+            ebZip.keep = false;
+            ebZip.quiet = true;
+            ebZip.threads = threads;
+            ebZip.outDir = outPath;
+            ebZip.bookDir = brokenPath;
+            ebZip.skips = Collections.emptyList();
+            ebZip.exec();
+            assertEquals(Files.readAllBytes(broken.toPath()), b);
+            assertTrue(!new File(outPath, "test/DATA/HONMON").exists());
+            assertTrue(new File(outPath, "chimei/DATA/HONMON").exists());
+        }
+    }
+
     /**
      * Clean up.
      */